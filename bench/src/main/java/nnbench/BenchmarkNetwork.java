@@ -0,0 +1,257 @@
+package nnbench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * This class builds a Network of a given shape for the benchmarks and gives them access to it. JMH benchmarks
+ * cannot live in, or import from, the default package that holds the network, so every method and field the benchmarks
+ * use is reached through a method handle. The handles are static finals adapted to take the network as an Object, which
+ * the JIT inlines like direct calls.
+ *
+ * create() writes a config file, a truth table, an inputs file and one .in file per input set into a fresh temporary
+ * directory and constructs the network from them with random initial weights, exactly as execute.sh would. The input
+ * values and truth table are drawn from a fixed seed so that every fork sees the same data.
+ *
+ * Methods contained in file:
+ *
+ * public static BenchmarkNetwork create(String shape, int numSets) throws Throwable
+ * public void delete() throws IOException
+ * static void writeInputFile(Path file, double[] values) throws IOException
+ * static MethodHandle method(String name, Class<?> returnType, Class<?>... parameterTypes)
+ * static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameterTypes)
+ * static MethodHandle getter(String name, Class<?> type)
+ * static MethodHandle setter(String name, Class<?> type)
+ * static Class<?> networkClass(String name)
+ */
+public class BenchmarkNetwork
+{
+   static final Class<?> NETWORK = networkClass("Network");
+   static final Class<?> WEIGHT_MATRIX_ARRAY = networkClass("[LWeightMatrix;");
+
+   static final MethodHandle EXECUTE_NETWORK = method("executeNetwork", void.class, double[].class);
+   static final MethodHandle RUN_NETWORK = method("runNetwork", void.class, double[].class);
+   static final MethodHandle UPDATE_WEIGHTS = method("updateWeights", void.class);
+   static final MethodHandle TRAIN_EPOCH = method("trainEpoch", double.class);
+   static final MethodHandle SAVE_WEIGHTS = method("saveWeights", void.class, String.class);
+   static final MethodHandle PARSE_WEIGHTS_FILE = method("parseWeightsFile", void.class, String.class);
+   static final MethodHandle PARSE_INPUT_FILE = method("parseInputFile", double[].class, String.class);
+   static final MethodHandle GET_WEIGHT_MATRICES = method("getWeightMatrices", WEIGHT_MATRIX_ARRAY);
+   static final MethodHandle SAVE_BINARY_WEIGHTS = staticMethod("BinaryWeights", "save", void.class, String.class,
+         WEIGHT_MATRIX_ARRAY);
+   static final MethodHandle LOAD_BINARY_WEIGHTS = staticMethod("BinaryWeights", "load", void.class, String.class,
+         WEIGHT_MATRIX_ARRAY);
+   static final MethodHandle GET_POSSIBLE_INPUTS = getter("possibleInputs", double[][].class);
+   static final MethodHandle GET_TRUTH_TABLE = getter("truthTable", double[][].class);
+   static final MethodHandle SET_T = setter("t", double[].class);
+
+   final Path directory;
+   final Object network;
+   final double[][] inputs;
+   final double[][] targets;
+   final String[] inputFileNames;
+
+   BenchmarkNetwork(Path directory, Object network, String[] inputFileNames) throws Throwable
+   {
+      this.directory = directory;
+      this.network = network;
+      this.inputFileNames = inputFileNames;
+      inputs = (double[][]) GET_POSSIBLE_INPUTS.invokeExact(network);
+      targets = (double[][]) GET_TRUTH_TABLE.invokeExact(network);
+   }
+
+/**
+ * writes the files for a training network of the given shape and constructs it
+ * @param shape layer sizes separated by dashes, for example "2-20-5-3", with any number of hidden layers
+ * @param numSets number of input sets (and truth table rows) to generate
+ */
+   public static BenchmarkNetwork create(String shape, int numSets) throws Throwable
+   {
+      String[] sizes = shape.split("-");
+      int numInputs = Integer.parseInt(sizes[0]);
+      int numOutputs = Integer.parseInt(sizes[sizes.length - 1]);
+      Path directory = Files.createTempDirectory("nnbench");
+      String[] inputFileNames = new String[numSets];
+      Random random = new Random(42);
+      StringBuilder inputsJson = new StringBuilder("{\"possibleInputs\": [");
+      StringBuilder truthJson = new StringBuilder("{\"truthTable\": [");
+      double[] values = new double[numInputs];
+      Constructor<?> constructor;
+      int set;
+      int i;
+
+      for (set = 0; set < numSets; set++)
+      {
+         for (i = 0; i < numInputs; i++)
+         {
+            values[i] = random.nextDouble();
+         }
+         inputFileNames[set] = directory.resolve("input" + set + ".in").toString();
+         writeInputFile(Path.of(inputFileNames[set]), values);
+         inputsJson.append(set == 0 ? "\"" : ", \"").append(inputFileNames[set].replace("\\", "\\\\")).append("\"");
+
+         truthJson.append(set == 0 ? "[" : ", [");
+         for (i = 0; i < numOutputs; i++)
+         {
+            truthJson.append(i == 0 ? "" : ", ").append(random.nextInt(2)).append(".0");
+         }
+         truthJson.append("]");
+      } // for (set = 0; set < numSets; set++)
+      Files.writeString(directory.resolve("inputs.json"), inputsJson.append("]}").toString());
+      Files.writeString(directory.resolve("truthTable.json"), truthJson.append("]}").toString());
+
+      Files.writeString(directory.resolve("config.json"), "{\"runOnly\": false, \"preLoadedWeights\": false, "
+            + "\"layerSizes\": [" + String.join(", ", sizes) + "], \"numPossibleInputs\": " + numSets
+            + ", \"minRandomWeight\": -0.5, \"maxRandomWeight\": 0.5, \"maxIterations\": 1, \"errorThreshold\": 0.0001, "
+            + "\"lambda\": 0.01, \"outputWeightsFileName\": \"" + directory.resolve("out.json").toString().replace("\\", "\\\\")
+            + "\", \"truthTableFileName\": \"" + directory.resolve("truthTable.json").toString().replace("\\", "\\\\")
+            + "\", \"inputFileName\": \"" + directory.resolve("inputs.json").toString().replace("\\", "\\\\") + "\"}");
+
+      constructor = NETWORK.getDeclaredConstructor(String.class);
+      constructor.setAccessible(true);
+      return new BenchmarkNetwork(directory, constructor.newInstance(directory.resolve("config.json").toString()),
+            inputFileNames);
+   } // public static BenchmarkNetwork create(String shape, int numSets) throws Throwable
+
+/**
+ * deletes the temporary directory and every file written into it
+ */
+   public void delete() throws IOException
+   {
+      try (Stream<Path> files = Files.walk(directory))
+      {
+         files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+      }
+   }
+
+/**
+ * writes one value per line, the format parseInputFile reads
+ */
+   static void writeInputFile(Path file, double[] values) throws IOException
+   {
+      int i;
+
+      try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file)))
+      {
+         for (i = 0; i < values.length; i++)
+         {
+            writer.println(values[i]);
+         }
+      }
+   }
+
+/**
+ * returns a handle to an instance method of Network, adapted to take the network as an Object
+ */
+   static MethodHandle method(String name, Class<?> returnType, Class<?>... parameterTypes)
+   {
+      Method method;
+
+      try
+      {
+         method = NETWORK.getDeclaredMethod(name, parameterTypes);
+         method.setAccessible(true);
+         return MethodHandles.lookup().unreflect(method)
+               .asType(MethodType.methodType(returnType == WEIGHT_MATRIX_ARRAY ? Object.class : returnType, Object.class,
+               parameterTypes));
+      }
+      catch (ReflectiveOperationException e)
+      {
+         throw new IllegalStateException("Network." + name + " is missing", e);
+      }
+   } // static MethodHandle method(String name, Class<?> returnType, Class<?>... parameterTypes)
+
+/**
+ * returns a handle to a static method of one of the network classes, with network class parameters adapted to Object
+ */
+   static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameterTypes)
+   {
+      Class<?>[] erased = parameterTypes.clone();
+      Method method;
+      int i;
+
+      for (i = 0; i < erased.length; i++)
+      {
+         if (erased[i] == WEIGHT_MATRIX_ARRAY)
+         {
+            erased[i] = Object.class;
+         }
+      }
+
+      try
+      {
+         method = networkClass(className).getDeclaredMethod(name, parameterTypes);
+         method.setAccessible(true);
+         return MethodHandles.lookup().unreflect(method).asType(MethodType.methodType(returnType, erased));
+      }
+      catch (ReflectiveOperationException e)
+      {
+         throw new IllegalStateException(className + "." + name + " is missing", e);
+      }
+   } // static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameterTypes)
+
+/**
+ * returns a handle reading a field of Network, adapted to take the network as an Object
+ */
+   static MethodHandle getter(String name, Class<?> type)
+   {
+      Field field;
+
+      try
+      {
+         field = NETWORK.getDeclaredField(name);
+         field.setAccessible(true);
+         return MethodHandles.lookup().unreflectGetter(field).asType(MethodType.methodType(type, Object.class));
+      }
+      catch (ReflectiveOperationException e)
+      {
+         throw new IllegalStateException("Network." + name + " is missing", e);
+      }
+   }
+
+/**
+ * returns a handle writing a field of Network, adapted to take the network as an Object
+ */
+   static MethodHandle setter(String name, Class<?> type)
+   {
+      Field field;
+
+      try
+      {
+         field = NETWORK.getDeclaredField(name);
+         field.setAccessible(true);
+         return MethodHandles.lookup().unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, type));
+      }
+      catch (ReflectiveOperationException e)
+      {
+         throw new IllegalStateException("Network." + name + " is missing", e);
+      }
+   }
+
+/**
+ * loads one of the network classes, which are in the default package
+ */
+   static Class<?> networkClass(String name)
+   {
+      try
+      {
+         return Class.forName(name);
+      }
+      catch (ClassNotFoundException e)
+      {
+         throw new IllegalStateException("The network classes are not on the class path", e);
+      }
+   }
+
+} // public class BenchmarkNetwork
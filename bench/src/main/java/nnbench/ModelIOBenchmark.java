@@ -0,0 +1,106 @@
+package nnbench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks model and dataset I/O: writing and parsing a JSON weights file (saveWeights, parseWeightsFile),
+ * the same for the binary weights format (BinaryWeights.save, BinaryWeights.load) and parsing one .in input file
+ * (parseInputFile). The files read are written once during setup; the files written go to the same temporary directory.
+ *
+ * The shapes are the XOR network (2-20-5-3) and the image network (10000-1000-100-5). A JSON weights file of the image
+ * network holds about ten million weights, so each of its invocations takes seconds.
+ *
+ * Methods contained in file:
+ *
+ * public void setUp() throws Throwable
+ * public void tearDown() throws Exception
+ * public void saveWeights() throws Throwable
+ * public void parseWeightsFile() throws Throwable
+ * public void saveBinaryWeights() throws Throwable
+ * public void loadBinaryWeights() throws Throwable
+ * public double[] parseInputFile() throws Throwable
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class ModelIOBenchmark
+{
+   @Param({"2-20-5-3", "10000-1000-100-5"})
+   public String shape;
+
+   BenchmarkNetwork bench;
+   Object weights;
+   String jsonFileName;
+   String binaryFileName;
+   String savedJsonFileName;
+   String savedBinaryFileName;
+
+/**
+ * builds the network with a single input set and writes the weights files the parsing benchmarks read
+ */
+   @Setup(Level.Trial)
+   public void setUp() throws Throwable
+   {
+      bench = BenchmarkNetwork.create(shape, 1);
+      weights = BenchmarkNetwork.GET_WEIGHT_MATRICES.invokeExact(bench.network);
+      jsonFileName = bench.directory.resolve("weights.json").toString();
+      binaryFileName = bench.directory.resolve("weights.bin").toString();
+      savedJsonFileName = bench.directory.resolve("saved.json").toString();
+      savedBinaryFileName = bench.directory.resolve("saved.bin").toString();
+      BenchmarkNetwork.SAVE_WEIGHTS.invokeExact(bench.network, jsonFileName);
+      BenchmarkNetwork.SAVE_BINARY_WEIGHTS.invokeExact(binaryFileName, weights);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception
+   {
+      bench.delete();
+   }
+
+   @Benchmark
+   public void saveWeights() throws Throwable
+   {
+      BenchmarkNetwork.SAVE_WEIGHTS.invokeExact(bench.network, savedJsonFileName);
+   }
+
+   @Benchmark
+   public void parseWeightsFile() throws Throwable
+   {
+      BenchmarkNetwork.PARSE_WEIGHTS_FILE.invokeExact(bench.network, jsonFileName);
+   }
+
+   @Benchmark
+   public void saveBinaryWeights() throws Throwable
+   {
+      BenchmarkNetwork.SAVE_BINARY_WEIGHTS.invokeExact(savedBinaryFileName, weights);
+   }
+
+   @Benchmark
+   public void loadBinaryWeights() throws Throwable
+   {
+      BenchmarkNetwork.LOAD_BINARY_WEIGHTS.invokeExact(binaryFileName, weights);
+   }
+
+   @Benchmark
+   public double[] parseInputFile() throws Throwable
+   {
+      return (double[]) BenchmarkNetwork.PARSE_INPUT_FILE.invokeExact(bench.network, bench.inputFileNames[0]);
+   }
+
+} // public class ModelIOBenchmark
@@ -0,0 +1,94 @@
+package nnbench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks the compute paths of the network: the forward pass used when running (executeNetwork), one
+ * training step (runNetwork followed by updateWeights) and a full epoch of train() over every input set (trainEpoch).
+ * Each benchmark cycles through the input sets so that consecutive calls do not see the same input.
+ *
+ * The shapes are the XOR network (2-20-5-3, 4 input sets) and the image network (10000-1000-100-5, 25 input sets).
+ *
+ * Methods contained in file:
+ *
+ * public void setUp() throws Throwable
+ * public void tearDown() throws Exception
+ * public void executeNetwork() throws Throwable
+ * public void trainStep() throws Throwable
+ * public double trainEpoch() throws Throwable
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class NetworkBenchmark
+{
+   @Param({"2-20-5-3", "10000-1000-100-5"})
+   public String shape;
+
+   BenchmarkNetwork bench;
+   int pattern;
+
+/**
+ * builds the network, with 25 input sets for the image shape and 4 for the XOR shape
+ */
+   @Setup(Level.Trial)
+   public void setUp() throws Throwable
+   {
+      bench = BenchmarkNetwork.create(shape, shape.startsWith("2-") ? 4 : 25);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception
+   {
+      bench.delete();
+   }
+
+/**
+ * runs one input set through the network
+ */
+   @Benchmark
+   public void executeNetwork() throws Throwable
+   {
+      BenchmarkNetwork.EXECUTE_NETWORK.invokeExact(bench.network, bench.inputs[pattern]);
+      pattern = (pattern + 1) % bench.inputs.length;
+   }
+
+/**
+ * trains on one input set: the forward pass storing the values backpropagation needs, then the weight update
+ */
+   @Benchmark
+   public void trainStep() throws Throwable
+   {
+      BenchmarkNetwork.SET_T.invokeExact(bench.network, bench.targets[pattern]);
+      BenchmarkNetwork.RUN_NETWORK.invokeExact(bench.network, bench.inputs[pattern]);
+      BenchmarkNetwork.UPDATE_WEIGHTS.invokeExact(bench.network);
+      pattern = (pattern + 1) % bench.inputs.length;
+   }
+
+/**
+ * trains on every input set once, one iteration of train()
+ * @return the error of the epoch
+ */
+   @Benchmark
+   public double trainEpoch() throws Throwable
+   {
+      return (double) BenchmarkNetwork.TRAIN_EPOCH.invokeExact(bench.network);
+   }
+
+} // public class NetworkBenchmark
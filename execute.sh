@@ -4,6 +4,6 @@ then
 else
     mkdir bin
 fi
-javac -cp ./lib/json-simple-1.1.1.jar -s ./bin/Network ./src/Network.java -Xlint:non
+javac --add-modules jdk.incubator.vector -cp ./lib/json-simple-1.1.1.jar -s ./bin/Network ./src/*.java -Xlint:non
 mv ./src/*.class ./bin
-java -cp ./bin:./lib/json-simple-1.1.1.jar Network $1
+java --add-modules jdk.incubator.vector -cp ./bin:./lib/json-simple-1.1.1.jar Network $1
@@ -0,0 +1,298 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class creates randomized variants of the possible inputs on background producer threads while the network trains,
+ * so that a small set of images is enlarged without copying, storing or parsing any extra files. Every input set is
+ * treated as an image of width x height pixels, row by row. A variant of it is rotated about the image center by up to
+ * maxRotation degrees and shifted by up to maxShift pixels in each direction, sampling the source image bilinearly and
+ * repeating its edge pixels outside of it. Its contrast about its mean is then scaled by a factor between 1 - contrast
+ * and 1 + contrast, Gaussian noise with standard deviation noise is added, and every value is clamped to [0, 1]. A
+ * variant keeps the truth table row of the input set it was made from.
+ *
+ * Variants are made in chunks of up to chunkSize input sets. Each epoch trains setsPerEpoch variants, cycling through the
+ * possible inputs as sources, so its last chunk may be shorter. Producer p makes chunks p, p + numProducers,
+ * p + 2 * numProducers, ... and owns depth chunk buffers, handed back and forth through two bounded queues of its own as
+ * in StreamingDataset: a producer that is depth chunks ahead waits for one to be handed back. The training thread takes
+ * the chunks in order, from one producer after the other, so augmentation overlaps with training and the time training
+ * still has to wait for a chunk is measured.
+ *
+ * The random numbers of every chunk come from a generator seeded by seed and the number of the chunk, so the variants and
+ * the order they are trained in depend only on the seed and the chunk size, never on the number of producers or on
+ * scheduling.
+ *
+ * Methods contained in file:
+ *
+ * public Augmenter(double[][] inputs, double[][] targets, int width, int height, int setsPerEpoch, int chunkSize,
+ *       int numProducers, int depth, double maxShift, double maxRotation, double contrast, double noise, long seed)
+ * public StreamingDataset.Chunk next() throws InterruptedException
+ * public void release(StreamingDataset.Chunk chunk)
+ * public int chunksPerEpoch()
+ * public void close()
+ * public void produce(int producer)
+ * public void fill(StreamingDataset.Chunk chunk, long number)
+ * public void augment(double[] source, double[] variant, SplittableRandom random)
+ */
+public class Augmenter
+{
+
+/**
+ * the two queues through which the chunk buffers of one producer are handed back and forth, and its thread
+ */
+   static final class Producer
+   {
+      final BlockingQueue<StreamingDataset.Chunk> emptyChunks;
+      final BlockingQueue<StreamingDataset.Chunk> fullChunks;
+      Thread thread;
+
+      Producer(int depth)
+      {
+         emptyChunks = new ArrayBlockingQueue<StreamingDataset.Chunk>(depth);
+         fullChunks = new ArrayBlockingQueue<StreamingDataset.Chunk>(depth);
+      }
+   } // static final class Producer
+
+   final double[][] inputs;
+   final double[][] targets;
+   final int width;
+   final int height;
+   final int setsPerEpoch;
+   final int chunkSize;
+   final int numProducers;
+   final double maxShift;
+   final double maxRotation;
+   final double contrast;
+   final double noise;
+   final long seed;
+   final Producer[] producers;
+   long numTaken;
+   long numSetsTaken;
+   long numReleased;
+   long waitNanos;
+
+/**
+ * creates the augmenter and starts its producer threads
+ * @param inputs possible inputs the variants are made from, never written
+ * @param targets truth table rows of the possible inputs
+ * @param width number of pixels per row of an input set
+ * @param height number of rows of an input set
+ * @param setsPerEpoch number of variants trained per epoch
+ * @param chunkSize largest number of variants per chunk
+ * @param numProducers number of producer threads
+ * @param depth number of chunks each producer can make ahead of training
+ * @param maxShift largest shift in pixels, in each direction
+ * @param maxRotation largest rotation in degrees, in each direction
+ * @param contrast largest relative change of the contrast
+ * @param noise standard deviation of the Gaussian noise added to every value
+ * @param seed seed of the random numbers
+ */
+   public Augmenter(double[][] inputs, double[][] targets, int width, int height, int setsPerEpoch, int chunkSize,
+         int numProducers, int depth, double maxShift, double maxRotation, double contrast, double noise, long seed)
+   {
+      int producer;
+      int k;
+
+      this.inputs = inputs;
+      this.targets = targets;
+      this.width = width;
+      this.height = height;
+      this.setsPerEpoch = setsPerEpoch;
+      this.chunkSize = Math.min(chunkSize, setsPerEpoch);
+      this.numProducers = numProducers;
+      this.maxShift = maxShift;
+      this.maxRotation = maxRotation;
+      this.contrast = contrast;
+      this.noise = noise;
+      this.seed = seed;
+      producers = new Producer[numProducers];
+
+      for (producer = 0; producer < numProducers; producer++)
+      {
+         producers[producer] = new Producer(depth);
+         for (k = 0; k < depth; k++)
+         {
+            producers[producer].emptyChunks.add(new StreamingDataset.Chunk(this.chunkSize, width * height,
+                  targets[0].length));
+         }
+      }
+
+      for (producer = 0; producer < numProducers; producer++)
+      {
+         final int p = producer;
+         producers[producer].thread = new Thread(() -> produce(p), "augmentation-" + producer);
+         producers[producer].thread.setDaemon(true);
+         producers[producer].thread.start();
+      }
+   } // public Augmenter(...)
+
+/**
+ * waits for the next chunk of variants and returns it; the time spent waiting is added to waitNanos and the variants to
+ * numSetsTaken
+ */
+   public StreamingDataset.Chunk next() throws InterruptedException
+   {
+      long time = System.nanoTime();
+      StreamingDataset.Chunk chunk = producers[(int) (numTaken % numProducers)].fullChunks.take();
+
+      waitNanos += System.nanoTime() - time;
+      numTaken++;
+      numSetsTaken += chunk.count;
+      return chunk;
+   }
+
+/**
+ * hands a chunk that has been trained on back to its producer. Chunks must be released in the order they were taken
+ */
+   public void release(StreamingDataset.Chunk chunk)
+   {
+      producers[(int) (numReleased % numProducers)].emptyChunks.add(chunk);
+      numReleased++;
+   }
+
+/**
+ * returns the number of chunks of variants trained per epoch
+ */
+   public int chunksPerEpoch()
+   {
+      return (setsPerEpoch + chunkSize - 1) / chunkSize;
+   }
+
+/**
+ * stops the producer threads
+ */
+   public void close()
+   {
+      int producer;
+
+      for (producer = 0; producer < numProducers; producer++)
+      {
+         producers[producer].thread.interrupt();
+      }
+      try
+      {
+         for (producer = 0; producer < numProducers; producer++)
+         {
+            producers[producer].thread.join();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         e.printStackTrace();
+      }
+   } // public void close()
+
+/**
+ * body of a producer thread, fills every chunk of its own until the augmenter is closed
+ * @param producer number of the producer, from 0 to numProducers - 1
+ */
+   public void produce(int producer)
+   {
+      long number = producer;
+      StreamingDataset.Chunk chunk;
+
+      try
+      {
+         while (!Thread.currentThread().isInterrupted())
+         {
+            chunk = producers[producer].emptyChunks.take();
+            fill(chunk, number);
+            producers[producer].fullChunks.put(chunk);
+            number += numProducers;
+         }
+      } // try
+      catch (InterruptedException e)
+      {
+         // the augmenter was closed
+      }
+   } // public void produce(int producer)
+
+/**
+ * fills a chunk with the variants of one chunk number. Chunk number n is chunk n % chunksPerEpoch() of epoch
+ * n / chunksPerEpoch(), and its variants are made from consecutive possible inputs, continuing where the chunk before
+ * it stopped
+ * @param chunk chunk to be filled
+ * @param number number of the chunk, counting every chunk of every epoch
+ */
+   public void fill(StreamingDataset.Chunk chunk, long number)
+   {
+      SplittableRandom random = new SplittableRandom(seed + number * 0x9E3779B97F4A7C15L);
+      long first;
+      int source;
+      int index;
+
+      chunk.count = (int) Math.min(chunkSize, setsPerEpoch - number % chunksPerEpoch() * chunkSize);
+      first = number / chunksPerEpoch() * setsPerEpoch + number % chunksPerEpoch() * chunkSize;
+      chunk.start = (int) (first % inputs.length);
+      for (index = 0; index < chunk.count; index++)
+      {
+         source = (int) ((first + index) % inputs.length);
+         augment(inputs[source], chunk.inputs[index], random);
+         System.arraycopy(targets[source], 0, chunk.targets[index], 0, targets[source].length);
+      }
+   } // public void fill(StreamingDataset.Chunk chunk, long number)
+
+/**
+ * makes one random variant of an input set
+ * @param source input set, width * height values row by row
+ * @param variant receives the variant
+ * @param random random numbers of the chunk
+ */
+   public void augment(double[] source, double[] variant, SplittableRandom random)
+   {
+      double angle = Math.toRadians((2.0 * random.nextDouble() - 1.0) * maxRotation);
+      double shiftX = (2.0 * random.nextDouble() - 1.0) * maxShift;
+      double shiftY = (2.0 * random.nextDouble() - 1.0) * maxShift;
+      double factor = 1.0 + (2.0 * random.nextDouble() - 1.0) * contrast;
+      double cos = Math.cos(angle);
+      double sin = Math.sin(angle);
+      double centerX = 0.5 * (width - 1);
+      double centerY = 0.5 * (height - 1);
+      double mean = 0.0;
+      double dx;
+      double dy;
+      double fromX;
+      double fromY;
+      double fx;
+      double fy;
+      int x0;
+      int y0;
+      int x1;
+      int y1;
+      int x;
+      int y;
+      int n;
+
+      for (y = 0; y < height; y++) // rotating and shifting, by mapping every pixel of the variant back into the source
+      {
+         for (x = 0; x < width; x++)
+         {
+            dx = x - centerX - shiftX;
+            dy = y - centerY - shiftY;
+            fromX = Math.min(Math.max(cos * dx + sin * dy + centerX, 0.0), width - 1);
+            fromY = Math.min(Math.max(-sin * dx + cos * dy + centerY, 0.0), height - 1);
+            x0 = (int) fromX;
+            y0 = (int) fromY;
+            x1 = Math.min(x0 + 1, width - 1);
+            y1 = Math.min(y0 + 1, height - 1);
+            fx = fromX - x0;
+            fy = fromY - y0;
+            variant[y * width + x] = (1.0 - fy) * ((1.0 - fx) * source[y0 * width + x0] + fx * source[y0 * width + x1])
+                  + fy * ((1.0 - fx) * source[y1 * width + x0] + fx * source[y1 * width + x1]);
+            mean += variant[y * width + x];
+         }
+      } // for (y = 0; y < height; y++)
+      mean /= variant.length;
+
+      for (n = 0; n < variant.length; n++) // changing the contrast and adding noise
+      {
+         variant[n] = mean + factor * (variant[n] - mean);
+         if (noise > 0.0)
+         {
+            variant[n] += noise * random.nextGaussian();
+         }
+         variant[n] = Math.min(Math.max(variant[n], 0.0), 1.0);
+      }
+   } // public void augment(double[] source, double[] variant, SplittableRandom random)
+
+} // public class Augmenter
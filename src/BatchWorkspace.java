@@ -0,0 +1,183 @@
+/**
+ * This class holds the buffers needed to push a batch of training patterns through the network at once, along with
+ * the batched forward pass, backpropagation and weight update built on the MatrixKernels.
+ *
+ * Every buffer is a flat row-major array sized for capacity patterns. Layer l of the network (the weights in
+ * weights[l]) reads activations[l] and writes its theta values into activations[l + 1], which are then replaced in place
+ * by their activations, indexed like the per-pattern activations, omegas and psis of Network: psis[l] holds the psi values
+ * of the nodes of layer l + 1 and omegas[l] the omega values of the nodes feeding layer l + 1. Derivatives are taken from
+ * the stored activations, so no theta values are kept.
+ *
+ * When the workspace belongs to one worker of data-parallel training it also owns a private set of gradient matrices,
+ * shaped like the weights, into which the summed outer products of its batch are accumulated instead of being applied.
+ *
+ * Methods contained in file:
+ *
+ * public BatchWorkspace(Network network, WeightMatrix[] weights, int capacity)
+ * public double forward(double[][] inputs, double[][] targets, int start, int count)
+ * public void backward()
+ * public void updateWeights(double lambda)
+ * public void allocateGradients()
+ * public void accumulateGradients()
+ */
+public class BatchWorkspace
+{
+   final Network network;
+   final WeightMatrix[] weights;
+   final int capacity;
+   int count;
+
+   final double[][] activations;
+   final double[][] psis;
+   final double[][] omegas;
+   final double[] t;
+   WeightMatrix[] gradients;
+
+/**
+ * allocates the batch buffers for the given layers, sized for at most capacity patterns per batch
+ * @param network network supplying the activation functions
+ * @param weights weight matrices of the network, from the input layer to the output layer
+ * @param capacity maximum number of patterns in one batch
+ */
+   public BatchWorkspace(Network network, WeightMatrix[] weights, int capacity)
+   {
+      int l;
+      int numLayers = weights.length;
+
+      this.network = network;
+      this.weights = weights;
+      this.capacity = capacity;
+      activations = new double[numLayers + 1][];
+      psis = new double[numLayers][];
+      omegas = new double[numLayers - 1][];
+
+      activations[0] = new double[capacity * weights[0].numFrom];
+      for (l = 0; l < numLayers; l++)
+      {
+         activations[l + 1] = new double[capacity * weights[l].numTo];
+         psis[l] = new double[capacity * weights[l].numTo];
+         if (l < numLayers - 1)
+         {
+            omegas[l] = new double[capacity * weights[l].numTo];
+         }
+      }
+      t = new double[capacity * weights[numLayers - 1].numTo];
+   } // public BatchWorkspace(Network network, WeightMatrix[] weights, int capacity)
+
+/**
+ * copies count patterns starting at start into the batch and runs them through every layer, storing the activations of
+ * each layer and the psi values of the output layer
+ * @param inputs possible input sets
+ * @param targets truth table rows matching the input sets
+ * @param start index of the first pattern of the batch
+ * @param count number of patterns in the batch, at most capacity
+ * @return the summed error 0.5 * (t - f)^2 over every output of every pattern in the batch
+ */
+   public double forward(double[][] inputs, double[][] targets, int start, int count)
+   {
+      int numLayers = weights.length;
+      int numInputs = weights[0].numFrom;
+      int numOutputs = weights[numLayers - 1].numTo;
+      double[] f = activations[numLayers];
+      double[] psi = psis[numLayers - 1];
+      double[] h;
+      double error = 0.0;
+      double omega;
+      int b;
+      int l;
+      int n;
+      Activation output = network.activationFunctions[numLayers - 1];
+
+      this.count = count;
+      for (b = 0; b < count; b++)
+      {
+         System.arraycopy(inputs[start + b], 0, activations[0], b * numInputs, numInputs);
+         System.arraycopy(targets[start + b], 0, t, b * numOutputs, numOutputs);
+      }
+
+      for (l = 0; l < numLayers; l++)
+      {
+         h = activations[l + 1];
+         MatrixKernels.multiplyTransposed(activations[l], count, weights[l], h);
+         network.activationFunctions[l].applyInPlace(h, count * weights[l].numTo);
+      }
+
+      for (n = 0; n < count * numOutputs; n++)
+      {
+         omega = t[n] - f[n];
+         psi[n] = omega * output.derivative(f[n]);
+         error += 0.5 * omega * omega;
+      }
+      return error;
+   } // public double forward(double[][] inputs, double[][] targets, int start, int count)
+
+/**
+ * propagates the output psi values of the last forward pass back through the hidden layers, filling omegas and psis
+ * using the weights as they were during the forward pass
+ */
+   public void backward()
+   {
+      int l;
+
+      for (l = weights.length - 1; l > 0; l--)
+      {
+         MatrixKernels.multiply(psis[l], count, weights[l], omegas[l - 1]);
+         network.activationFunctions[l - 1].multiplyDerivative(activations[l], omegas[l - 1], psis[l - 1],
+               count * weights[l].numFrom);
+      }
+   } // public void backward()
+
+/**
+ * applies the summed weight changes of the whole batch to every layer, w(from, to) += lambda * sum of
+ * in[b][from] * psi[b][to], one update per batch rather than one per pattern
+ * @param lambda learning rate
+ */
+   public void updateWeights(double lambda)
+   {
+      int l;
+
+      for (l = 0; l < weights.length; l++)
+      {
+         MatrixKernels.accumulateOuterProducts(psis[l], activations[l], count, weights[l], lambda);
+      }
+   }
+
+/**
+ * allocates the private gradient matrices of this workspace, one per weight matrix
+ */
+   public void allocateGradients()
+   {
+      int l;
+
+      gradients = new WeightMatrix[weights.length];
+      for (l = 0; l < weights.length; l++)
+      {
+         gradients[l] = new WeightMatrix(weights[l].numFrom, weights[l].numTo);
+      }
+   }
+
+/**
+ * overwrites the gradient matrices with the summed outer products of the last batch, g(from, to) = sum of
+ * in[b][from] * psi[b][to], leaving the weights themselves untouched
+ */
+   public void accumulateGradients()
+   {
+      int l;
+      int n;
+      double[] g;
+
+      for (l = 0; l < weights.length; l++)
+      {
+         g = gradients[l].data;
+         for (n = 0; n < g.length; n++)
+         {
+            g[n] = 0.0;
+         }
+         if (count > 0)
+         {
+            MatrixKernels.accumulateOuterProducts(psis[l], activations[l], count, gradients[l], 1.0);
+         }
+      }
+   } // public void accumulateGradients()
+
+} // public class BatchWorkspace
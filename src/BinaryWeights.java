@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads and writes network weights in a compact binary format, an alternative to the JSON weights files that
+ * avoids tokenizing text and boxing every weight as a Double.
+ *
+ * The file starts with a header of little-endian values:
+ *
+ * int magic (MAGIC), int version (VERSION), int number of weight matrices L, L + 1 ints holding the number of nodes of
+ * every layer from the input layer to the output layer, a long CRC32 checksum of all weight bytes, and zero padding up
+ * to the next multiple of 8 bytes.
+ *
+ * The header is followed by one block per weight matrix, in order from the input layer to the output layer, holding the
+ * raw little-endian doubles of the matrix in WeightMatrix layout (all incoming weights of the first node of the later
+ * layer, then those of the second node, and so on). Files are loaded through a memory-mapped FileChannel and bulk copied
+ * straight into the flat WeightMatrix arrays. The header and blocks smaller than MAP_THRESHOLD bytes are read into a heap
+ * buffer instead, since a mapping is only released when its buffer is garbage collected and costs more to set up than
+ * a small block takes to copy, so loading small files repeatedly would otherwise pile up mappings until the process
+ * runs out of them.
+ *
+ * Methods contained in file:
+ *
+ * public static void save(String fileName, WeightMatrix[] weights) throws IOException
+ * public static void load(String fileName, WeightMatrix[] weights) throws Exception
+ * static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+ * public static int headerLength(int numMatrices)
+ * static int maxMatrixLength(WeightMatrix[] weights)
+ */
+public class BinaryWeights
+{
+   static final int MAGIC = 0x4E4E5754; // "NNWT"
+   static final int VERSION = 1;
+   static final int CHUNK_DOUBLES = 1 << 24; // doubles mapped or buffered at a time (128 MB)
+   static final int MAP_THRESHOLD = 1 << 20; // smallest block in bytes that is memory-mapped rather than read (1 MB)
+
+/**
+ * writes the weight matrices to a binary weights file, overwriting it if it exists
+ * @param fileName file to be saved to
+ * @param weights weight matrices from the input layer to the output layer
+ */
+   public static void save(String fileName, WeightMatrix[] weights) throws IOException
+   {
+      int header = headerLength(weights.length);
+      CRC32 crc = new CRC32();
+      ByteBuffer buffer;
+      ByteBuffer headerBuffer = ByteBuffer.allocate(header).order(ByteOrder.LITTLE_ENDIAN);
+      int l;
+      int offset;
+      int length;
+
+      try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         channel.position(header);
+         buffer = ByteBuffer.allocateDirect(Math.min(CHUNK_DOUBLES, maxMatrixLength(weights)) * Double.BYTES)
+               .order(ByteOrder.LITTLE_ENDIAN);
+
+         for (l = 0; l < weights.length; l++)
+         {
+            for (offset = 0; offset < weights[l].data.length; offset += length)
+            {
+               length = Math.min(CHUNK_DOUBLES, weights[l].data.length - offset);
+               buffer.clear();
+               buffer.asDoubleBuffer().put(weights[l].data, offset, length);
+               buffer.limit(length * Double.BYTES);
+               crc.update(buffer);
+               buffer.flip();
+               while (buffer.hasRemaining())
+               {
+                  channel.write(buffer);
+               }
+            }
+         } // for (l = 0; l < weights.length; l++)
+
+         headerBuffer.putInt(MAGIC);
+         headerBuffer.putInt(VERSION);
+         headerBuffer.putInt(weights.length);
+         headerBuffer.putInt(weights[0].numFrom);
+         for (l = 0; l < weights.length; l++)
+         {
+            headerBuffer.putInt(weights[l].numTo);
+         }
+         headerBuffer.putLong(crc.getValue());
+         headerBuffer.clear();
+         channel.position(0);
+         while (headerBuffer.hasRemaining())
+         {
+            channel.write(headerBuffer);
+         }
+      } // try (FileChannel channel = ...)
+   } // public static void save(String fileName, WeightMatrix[] weights) throws IOException
+
+/**
+ * memory-maps (or, for small blocks, reads) a binary weights file and copies its blocks into the given weight matrices,
+ * after checking that the dimensions in its header match the matrices and that its checksum matches its contents
+ * @param fileName binary weights file
+ * @param weights weight matrices to be filled, from the input layer to the output layer
+ */
+   public static void load(String fileName, WeightMatrix[] weights) throws Exception
+   {
+      int header = headerLength(weights.length);
+      CRC32 crc = new CRC32();
+      ByteBuffer block;
+      ByteBuffer readBuffer = null;
+      ByteBuffer headerBuffer = ByteBuffer.allocate(header).order(ByteOrder.LITTLE_ENDIAN);
+      long position;
+      long expectedChecksum;
+      int l;
+      int offset;
+      int length;
+
+      try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel())
+      {
+         if (channel.size() < header)
+         {
+            throw new Exception("Weights file does not match dimensionality in config file!");
+         }
+
+         readFully(channel, headerBuffer, 0);
+         if (headerBuffer.getInt() != MAGIC || headerBuffer.getInt() != VERSION)
+         {
+            throw new Exception("<" + fileName + "> is not a binary weights file!");
+         }
+         if (headerBuffer.getInt() != weights.length || headerBuffer.getInt() != weights[0].numFrom)
+         {
+            throw new Exception("Weights file does not match dimensionality in config file!");
+         }
+         for (l = 0; l < weights.length; l++)
+         {
+            if (headerBuffer.getInt() != weights[l].numTo)
+            {
+               throw new Exception("Weights file does not match dimensionality in config file!");
+            }
+         }
+         expectedChecksum = headerBuffer.getLong();
+
+         position = header;
+         for (l = 0; l < weights.length; l++)
+         {
+            for (offset = 0; offset < weights[l].data.length; offset += length)
+            {
+               length = Math.min(CHUNK_DOUBLES, weights[l].data.length - offset);
+               if (position + (long) length * Double.BYTES > channel.size())
+               {
+                  throw new Exception("Weights file does not match dimensionality in config file!");
+               }
+               if (length * Double.BYTES >= MAP_THRESHOLD)
+               {
+                  block = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) length * Double.BYTES);
+               }
+               else
+               {
+                  if (readBuffer == null)
+                  {
+                     readBuffer = ByteBuffer.allocate(MAP_THRESHOLD);
+                  }
+                  block = readBuffer.clear().limit(length * Double.BYTES);
+                  readFully(channel, block, position);
+               }
+               block.order(ByteOrder.LITTLE_ENDIAN);
+               block.asDoubleBuffer().get(weights[l].data, offset, length);
+               crc.update(block);
+               position += (long) length * Double.BYTES;
+            }
+         } // for (l = 0; l < weights.length; l++)
+      } // try (RandomAccessFile file = ...)
+
+      if (crc.getValue() != expectedChecksum)
+      {
+         throw new Exception("Weights file checksum does not match its contents!");
+      }
+   } // public static void load(String fileName, WeightMatrix[] weights) throws Exception
+
+/**
+ * fills a buffer from its position to its limit with the bytes of a file starting at the given file position, then
+ * rewinds it
+ * @throws IOException if the file ends first
+ */
+   static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      int read;
+
+      while (buffer.hasRemaining())
+      {
+         read = channel.read(buffer, position);
+         if (read < 0)
+         {
+            throw new IOException("Unexpected end of file!");
+         }
+         position += read;
+      }
+      buffer.rewind();
+   } // static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+
+/**
+ * returns the length in bytes of the header of a file holding numMatrices weight matrices, padded to a multiple of 8
+ */
+   public static int headerLength(int numMatrices)
+   {
+      int length = 3 * Integer.BYTES + (numMatrices + 1) * Integer.BYTES + Long.BYTES;
+      return (length + 7) / 8 * 8;
+   }
+
+/**
+ * returns the number of weights in the largest of the given matrices
+ */
+   static int maxMatrixLength(WeightMatrix[] weights)
+   {
+      int max = 1;
+      int l;
+
+      for (l = 0; l < weights.length; l++)
+      {
+         max = Math.max(max, weights[l].data.length);
+      }
+      return max;
+   }
+
+} // public class BinaryWeights
@@ -0,0 +1,353 @@
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * This class writes periodic checkpoints of a training run, from which a later run can resume after this one dies. A
+ * checkpoint is taken every interval epochs and/or every seconds seconds. It consists of the weights, written in the
+ * format of BinaryWeights to <fileName>-<numIterations>.bin, and a metadata file <fileName>.json holding the number of
+ * iterations completed, the error of the last epoch, the name of the weights file, the time it was saved and the config
+ * of the run. When training with an optimizer, its state arrays (Optimizer.stateArrays) are written in the same format to
+ * <fileName>-<numIterations>.state.bin, and the metadata also holds the optimizer, the name of that file and the number
+ * of updates made, so that a resumed run continues exactly as the interrupted one would have.
+ *
+ * The training thread only copies the weights into a snapshot; a background writer thread does all of the I/O. There is
+ * a single snapshot, handed back and forth through two queues as in StreamingDataset, so when a checkpoint is due while
+ * the previous one is still being written, training carries on and the checkpoint is taken after the first epoch that
+ * finds the writer idle. Training never waits for the disk. When training ends, close() waits for the write in progress
+ * and then writes a last checkpoint of the final weights, so no checkpoint held back that way is lost.
+ *
+ * The metadata file is what makes a checkpoint current: it is written under a temporary name and renamed over the old one
+ * only after the new weights and state files are complete, and the previous ones are deleted only after that, so a
+ * crash at any point leaves the last complete checkpoint readable.
+ *
+ * Methods contained in file:
+ *
+ * public Checkpointer(String fileName, int interval, int seconds, JSONObject config, Optimizer optimizer)
+ * public boolean exists()
+ * public int resume(WeightMatrix[] weights) throws Exception
+ * public void afterEpoch(WeightMatrix[] weights, int numIterations, double error)
+ * public void copy(Snapshot snapshot, WeightMatrix[] weights, int numIterations, double error)
+ * public void close(WeightMatrix[] weights, int numIterations, double error)
+ * public void writeSnapshots()
+ * public void write(Snapshot snapshot) throws Exception
+ * public static WeightMatrix[] allocateState(int numArrays, WeightMatrix[] weights)
+ */
+public class Checkpointer
+{
+
+/**
+ * a copy of the weights, of the optimizer state and of the progress of training at the end of one epoch
+ */
+   static class Snapshot
+   {
+      WeightMatrix[] weights;
+      WeightMatrix[] state;
+      int numIterations;
+      double error;
+      long numSteps;
+   }
+
+   final String fileName;
+   final String metadataFileName;
+   final int interval;
+   final int seconds;
+   final JSONObject config;
+   final Optimizer optimizer;
+   final BlockingQueue<Snapshot> idleSnapshots;
+   final BlockingQueue<Snapshot> pendingSnapshots;
+   final Thread writer;
+   String lastWeightsFileName;
+   String lastStateFileName;
+   int lastNumIterations; // number of iterations of the latest checkpoint, 0 for none
+   boolean due;
+   long lastCheckpointTime;
+   double resumedError;
+
+/**
+ * creates the checkpointer of a training run and starts its writer thread
+ * @param fileName base name of the checkpoint files
+ * @param interval number of epochs between two checkpoints, 0 for none
+ * @param seconds number of seconds between two checkpoints, 0 for none
+ * @param config config of the run, stored with every checkpoint
+ * @param optimizer optimizer whose state is stored with every checkpoint, null for plain gradient descent
+ */
+   public Checkpointer(String fileName, int interval, int seconds, JSONObject config, Optimizer optimizer)
+   {
+      this.fileName = fileName;
+      this.interval = interval;
+      this.seconds = seconds;
+      this.config = config;
+      this.optimizer = optimizer;
+      metadataFileName = fileName + ".json";
+      idleSnapshots = new ArrayBlockingQueue<Snapshot>(1);
+      pendingSnapshots = new ArrayBlockingQueue<Snapshot>(1);
+      idleSnapshots.add(new Snapshot());
+      lastCheckpointTime = System.nanoTime();
+
+      writer = new Thread(this::writeSnapshots, "checkpoint-writer");
+      writer.setDaemon(true);
+      writer.start();
+   } // public Checkpointer(String fileName, int interval, int seconds, JSONObject config, Optimizer optimizer)
+
+/**
+ * returns whether a checkpoint has been written under this checkpointer's file name
+ */
+   public boolean exists()
+   {
+      return Files.exists(Paths.get(metadataFileName));
+   }
+
+/**
+ * loads the weights of the latest checkpoint and, with an optimizer, restores its state
+ * @param weights weight matrices to be filled, from the input layer to the output layer
+ * @return the number of iterations completed when the checkpoint was taken. The error of its last epoch is left in
+ *         resumedError
+ * @throws Exception if the checkpoint does not hold the state of the same kind of optimizer
+ */
+   public int resume(WeightMatrix[] weights) throws Exception
+   {
+      JSONObject metadata = (JSONObject) new JSONParser().parse(new FileReader(metadataFileName));
+      WeightMatrix[] state;
+      double[][] arrays;
+      int l;
+
+      if (!metadata.containsKey("weightsFileName") || !metadata.containsKey("numIterations"))
+      {
+         throw new Exception("<" + metadataFileName + "> is not a checkpoint!");
+      }
+      lastWeightsFileName = (String) metadata.get("weightsFileName");
+      BinaryWeights.load(lastWeightsFileName, weights);
+
+      if (optimizer != null)
+      {
+         if (!metadata.containsKey("optimizerStateFileName")
+               || !optimizer.type.name().toLowerCase().equals(metadata.get("optimizer")))
+         {
+            throw new Exception("<" + metadataFileName + "> holds no " + optimizer.type.name().toLowerCase()
+                  + " optimizer state to resume from!");
+         }
+         lastStateFileName = (String) metadata.get("optimizerStateFileName");
+         arrays = optimizer.stateArrays();
+         state = allocateState(arrays.length, weights);
+         BinaryWeights.load(lastStateFileName, state);
+         for (l = 0; l < arrays.length; l++)
+         {
+            System.arraycopy(state[l].data, 0, arrays[l], 0, arrays[l].length);
+         }
+         optimizer.resume((long) metadata.get("numSteps"));
+      } // if (optimizer != null)
+
+      resumedError = (double) metadata.get("error");
+      lastNumIterations = Math.toIntExact((long) metadata.get("numIterations"));
+      return lastNumIterations;
+   } // public int resume(WeightMatrix[] weights) throws Exception
+
+/**
+ * called after every epoch; when a checkpoint is due and the writer is idle, copies the weights into the snapshot and hands
+ * it to the writer thread
+ * @param weights current weight matrices
+ * @param numIterations number of epochs completed
+ * @param error summed error of the last epoch
+ */
+   public void afterEpoch(WeightMatrix[] weights, int numIterations, double error)
+   {
+      Snapshot snapshot;
+
+      if ((interval > 0 && numIterations % interval == 0)
+            || (seconds > 0 && System.nanoTime() - lastCheckpointTime >= seconds * 1000000000L))
+      {
+         due = true;
+      }
+
+      if (due && (snapshot = idleSnapshots.poll()) != null)
+      {
+         copy(snapshot, weights, numIterations, error);
+         pendingSnapshots.add(snapshot);
+         due = false;
+         lastCheckpointTime = System.nanoTime();
+      }
+   } // public void afterEpoch(WeightMatrix[] weights, int numIterations, double error)
+
+/**
+ * copies the weights, the optimizer state and the progress of training into a snapshot, allocating its matrices the
+ * first time
+ * @param snapshot snapshot to fill
+ * @param weights current weight matrices
+ * @param numIterations number of epochs completed
+ * @param error summed error of the last epoch
+ */
+   public void copy(Snapshot snapshot, WeightMatrix[] weights, int numIterations, double error)
+   {
+      double[][] arrays;
+      int l;
+
+      if (snapshot.weights == null)
+      {
+         snapshot.weights = new WeightMatrix[weights.length];
+         for (l = 0; l < weights.length; l++)
+         {
+            snapshot.weights[l] = new WeightMatrix(weights[l].numFrom, weights[l].numTo);
+         }
+      }
+      for (l = 0; l < weights.length; l++)
+      {
+         System.arraycopy(weights[l].data, 0, snapshot.weights[l].data, 0, weights[l].data.length);
+      }
+      snapshot.numIterations = numIterations;
+      snapshot.error = error;
+
+      if (optimizer != null)
+      {
+         arrays = optimizer.stateArrays();
+         if (snapshot.state == null)
+         {
+            snapshot.state = allocateState(arrays.length, weights);
+         }
+         for (l = 0; l < arrays.length; l++)
+         {
+            System.arraycopy(arrays[l], 0, snapshot.state[l].data, 0, arrays[l].length);
+         }
+         snapshot.numSteps = optimizer.numSteps;
+      }
+   } // public void copy(Snapshot snapshot, WeightMatrix[] weights, int numIterations, double error)
+
+/**
+ * waits for the checkpoint being written, if any, to be complete, then writes a last checkpoint of the final weights on
+ * the calling thread unless the latest checkpoint already holds them, and stops the writer thread
+ * @param weights final weight matrices, null if training was cut short in the middle of an epoch, in which case only
+ *        the checkpoints taken so far are kept
+ * @param numIterations number of epochs completed
+ * @param error summed error of the last epoch
+ */
+   public void close(WeightMatrix[] weights, int numIterations, double error)
+   {
+      Snapshot snapshot;
+
+      try
+      {
+         snapshot = idleSnapshots.take();
+         if (weights != null && numIterations != lastNumIterations)
+         {
+            copy(snapshot, weights, numIterations, error);
+            try
+            {
+               write(snapshot);
+            }
+            catch (Exception e)
+            {
+               e.printStackTrace();
+            }
+         } // if (weights != null && numIterations != lastNumIterations)
+         writer.interrupt();
+         writer.join();
+      } // try
+      catch (InterruptedException e)
+      {
+         e.printStackTrace();
+      }
+   } // public void close(WeightMatrix[] weights, int numIterations, double error)
+
+/**
+ * body of the writer thread, writes every snapshot it is handed until the checkpointer is closed. A checkpoint that cannot
+ * be written is reported and training goes on
+ */
+   public void writeSnapshots()
+   {
+      Snapshot snapshot;
+
+      try
+      {
+         while (!Thread.currentThread().isInterrupted())
+         {
+            snapshot = pendingSnapshots.take();
+            try
+            {
+               write(snapshot);
+            }
+            catch (Exception e)
+            {
+               e.printStackTrace();
+            }
+            idleSnapshots.put(snapshot);
+         }
+      } // try
+      catch (InterruptedException e)
+      {
+         // the checkpointer was closed
+      }
+   } // public void writeSnapshots()
+
+/**
+ * writes the weights and optimizer state files of a snapshot, then makes it the current checkpoint by replacing the
+ * metadata file, and finally deletes the files of the previous checkpoint
+ */
+   public void write(Snapshot snapshot) throws Exception
+   {
+      String weightsFileName = fileName + "-" + snapshot.numIterations + ".bin";
+      String stateFileName = fileName + "-" + snapshot.numIterations + ".state.bin";
+      Path temporary = Paths.get(metadataFileName + ".tmp");
+      HashMap<String, Object> metadata = new HashMap<String, Object>();
+
+      BinaryWeights.save(weightsFileName, snapshot.weights);
+      if (snapshot.state != null)
+      {
+         BinaryWeights.save(stateFileName, snapshot.state);
+         metadata.put("optimizer", optimizer.type.name().toLowerCase());
+         metadata.put("optimizerStateFileName", stateFileName);
+         metadata.put("numSteps", snapshot.numSteps);
+      }
+
+      metadata.put("numIterations", snapshot.numIterations);
+      metadata.put("error", snapshot.error);
+      metadata.put("weightsFileName", weightsFileName);
+      metadata.put("savedAt", System.currentTimeMillis());
+      metadata.put("config", config);
+      try (PrintWriter pw = new PrintWriter(temporary.toFile()))
+      {
+         pw.write(Sweep.copyWith(new JSONObject(), metadata).toJSONString());
+      }
+      Files.move(temporary, Paths.get(metadataFileName), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+
+      if (lastWeightsFileName != null && !lastWeightsFileName.equals(weightsFileName))
+      {
+         Files.deleteIfExists(Paths.get(lastWeightsFileName));
+      }
+      lastWeightsFileName = weightsFileName;
+      if (snapshot.state != null)
+      {
+         if (lastStateFileName != null && !lastStateFileName.equals(stateFileName))
+         {
+            Files.deleteIfExists(Paths.get(lastStateFileName));
+         }
+         lastStateFileName = stateFileName;
+      }
+      lastNumIterations = snapshot.numIterations;
+   } // public void write(Snapshot snapshot) throws Exception
+
+/**
+ * returns new matrices for the state arrays of an optimizer, numArrays / weights.length arrays per layer shaped like the
+ * weight matrices of the layers
+ */
+   public static WeightMatrix[] allocateState(int numArrays, WeightMatrix[] weights)
+   {
+      WeightMatrix[] state = new WeightMatrix[numArrays];
+      int l;
+
+      for (l = 0; l < numArrays; l++)
+      {
+         state[l] = new WeightMatrix(weights[l % weights.length].numFrom, weights[l % weights.length].numTo);
+      }
+      return state;
+   } // public static WeightMatrix[] allocateState(int numArrays, WeightMatrix[] weights)
+
+} // public class Checkpointer
@@ -0,0 +1,222 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class packs a whole dataset (every possible input set along with its truth table row) into one binary file so that
+ * later runs can memory-map it instead of parsing one text file per input set line by line.
+ *
+ * The file starts with a header of little-endian ints: magic (MAGIC), version (VERSION), number of input sets, number of
+ * inputs and number of outputs, padded with zeros to HEADER_LENGTH bytes. It is followed by one record per input set, each
+ * holding the numInputs input values followed by the numOutputs truth table values as raw little-endian doubles. Records
+ * are fixed length, so any consecutive run of them can be read without touching the rest of the file.
+ *
+ * A cache is only used while it is newer than every file it was built from; otherwise the text sources are parsed again
+ * and the cache is rewritten.
+ *
+ * Methods contained in file:
+ *
+ * public static boolean isFresh(String cacheFileName, String[] sourceFileNames)
+ * public static void write(String cacheFileName, int numSets, int numInputs, int numOutputs, PatternSource source)
+ * public static void load(String cacheFileName, double[][] inputs, double[][] targets) throws Exception
+ * public static void load(String cacheFileName, double[][] inputs, double[][] targets, int first, int numSets)
+ *       throws Exception
+ * public static int[] readHeader(FileChannel channel, String cacheFileName) throws Exception
+ * public static long recordOffset(int index, int numInputs, int numOutputs)
+ */
+public class DatasetCache
+{
+   static final int MAGIC = 0x4E4E4453; // "NNDS"
+   static final int VERSION = 1;
+   static final int HEADER_LENGTH = 24;
+   static final int CHUNK_BYTES = 1 << 27; // bytes mapped or buffered at a time (128 MB)
+
+/**
+ * supplies the input values and truth table row of one input set while a cache is being written
+ */
+   public interface PatternSource
+   {
+      void read(int index, double[] input, double[] target) throws IOException;
+   }
+
+/**
+ * checks whether a cache file exists and was written after every one of its source files was last modified
+ * @param cacheFileName packed dataset file
+ * @param sourceFileNames files the dataset was parsed from
+ * @return true if the cache can be used in place of its sources
+ */
+   public static boolean isFresh(String cacheFileName, String[] sourceFileNames)
+   {
+      File cache = new File(cacheFileName);
+      long cacheTime;
+      int i;
+
+      if (!cache.isFile())
+      {
+         return false;
+      }
+
+      cacheTime = cache.lastModified();
+      for (i = 0; i < sourceFileNames.length; i++)
+      {
+         if (new File(sourceFileNames[i]).lastModified() > cacheTime)
+         {
+            return false;
+         }
+      }
+      return true;
+   } // public static boolean isFresh(String cacheFileName, String[] sourceFileNames)
+
+/**
+ * writes a packed dataset file record by record, so that only one input set needs to be held in memory at a time
+ * @param cacheFileName file to be written
+ * @param numSets number of input sets
+ * @param numInputs number of inputs in each set
+ * @param numOutputs number of truth table values in each set
+ * @param source supplies every input set and truth table row in order
+ */
+   public static void write(String cacheFileName, int numSets, int numInputs, int numOutputs, PatternSource source)
+         throws IOException
+   {
+      int recordBytes = (numInputs + numOutputs) * Double.BYTES;
+      int recordsPerChunk = Math.max(1, CHUNK_BYTES / recordBytes);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(1, Math.min(recordsPerChunk, numSets)) * recordBytes)
+            .order(ByteOrder.LITTLE_ENDIAN);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+      DoubleBuffer doubles;
+      double[] input = new double[numInputs];
+      double[] target = new double[numOutputs];
+      int index;
+
+      try (FileChannel channel = FileChannel.open(Paths.get(cacheFileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         header.putInt(MAGIC);
+         header.putInt(VERSION);
+         header.putInt(numSets);
+         header.putInt(numInputs);
+         header.putInt(numOutputs);
+         header.clear();
+         while (header.hasRemaining())
+         {
+            channel.write(header);
+         }
+
+         buffer.clear();
+         doubles = buffer.asDoubleBuffer();
+         for (index = 0; index < numSets; index++)
+         {
+            source.read(index, input, target);
+            doubles.put(input);
+            doubles.put(target);
+            if (doubles.remaining() < numInputs + numOutputs || index == numSets - 1) // buffer full or last record
+            {
+               buffer.limit(doubles.position() * Double.BYTES);
+               while (buffer.hasRemaining())
+               {
+                  channel.write(buffer);
+               }
+               buffer.clear();
+               doubles = buffer.asDoubleBuffer();
+            }
+         } // for (index = 0; index < numSets; index++)
+      } // try (FileChannel channel = ...)
+   } // public static void write(String cacheFileName, int numSets, int numInputs, int numOutputs, PatternSource source)
+
+/**
+ * memory-maps a packed dataset file and copies every record into the input and truth table matrices, after checking that
+ * its dimensions match them
+ * @param cacheFileName packed dataset file
+ * @param inputs receives the input sets, one row per set
+ * @param targets receives the truth table, one row per set
+ */
+   public static void load(String cacheFileName, double[][] inputs, double[][] targets) throws Exception
+   {
+      load(cacheFileName, inputs, targets, 0, inputs.length);
+   }
+
+/**
+ * memory-maps a packed dataset file and copies the consecutive records first to first + inputs.length - 1 into the input
+ * and truth table matrices, after checking that the dimensions of the file match them and numSets
+ * @param cacheFileName packed dataset file
+ * @param inputs receives the input sets, one row per set
+ * @param targets receives the truth table, one row per set
+ * @param first index of the first record to copy
+ * @param numSets number of records the file must hold
+ */
+   public static void load(String cacheFileName, double[][] inputs, double[][] targets, int first, int numSets)
+         throws Exception
+   {
+      int numInputs = inputs[0].length;
+      int numOutputs = targets[0].length;
+      int recordBytes = (numInputs + numOutputs) * Double.BYTES;
+      int recordsPerChunk = Math.max(1, CHUNK_BYTES / recordBytes);
+      DoubleBuffer doubles;
+      int[] dimensions;
+      int start;
+      int count;
+      int index;
+
+      try (RandomAccessFile file = new RandomAccessFile(cacheFileName, "r"); FileChannel channel = file.getChannel())
+      {
+         dimensions = readHeader(channel, cacheFileName);
+         if (dimensions[0] != numSets || dimensions[1] != numInputs || dimensions[2] != numOutputs)
+         {
+            throw new Exception("Dataset cache does not match dimensionality in config file!");
+         }
+
+         for (start = 0; start < inputs.length; start += count)
+         {
+            count = Math.min(recordsPerChunk, inputs.length - start);
+            doubles = channel.map(FileChannel.MapMode.READ_ONLY, recordOffset(first + start, numInputs, numOutputs),
+                  (long) count * recordBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            for (index = start; index < start + count; index++)
+            {
+               doubles.get(inputs[index]);
+               doubles.get(targets[index]);
+            }
+         }
+      } // try (RandomAccessFile file = ...)
+   } // public static void load(String cacheFileName, double[][] inputs, double[][] targets, int first, int numSets)
+
+/**
+ * reads and checks the header of a packed dataset file
+ * @return array holding the number of input sets, the number of inputs and the number of outputs
+ */
+   public static int[] readHeader(FileChannel channel, String cacheFileName) throws Exception
+   {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+      int[] dimensions = new int[3];
+
+      channel.read(header, 0);
+      header.flip();
+      if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION)
+      {
+         throw new Exception("<" + cacheFileName + "> is not a dataset cache file!");
+      }
+      dimensions[0] = header.getInt();
+      dimensions[1] = header.getInt();
+      dimensions[2] = header.getInt();
+
+      if (channel.size() < recordOffset(dimensions[0], dimensions[1], dimensions[2]))
+      {
+         throw new Exception("Dataset cache <" + cacheFileName + "> is truncated!");
+      }
+      return dimensions;
+   } // public static int[] readHeader(FileChannel channel, String cacheFileName) throws Exception
+
+/**
+ * returns the position in the file of the record of the given input set
+ */
+   public static long recordOffset(int index, int numInputs, int numOutputs)
+   {
+      return HEADER_LENGTH + (long) index * (numInputs + numOutputs) * Double.BYTES;
+   }
+
+} // public class DatasetCache
@@ -0,0 +1,347 @@
+/**
+ * This class runs and trains the network in single precision. It holds float copies of the weights (in the same flat
+ * row-per-node layout as WeightMatrix), of the activation, psi and omega buffers of every layer and of the input and
+ * truth table matrices, halving the memory and memory bandwidth used by the forward and backward passes. Each layer uses
+ * the same Activation as in double precision, rounded to float.
+ *
+ * In "mixed" precision the double weights are kept as the master copy: the passes read the float weights, but every weight
+ * change is applied to the double master weight and the float weight is then refreshed from it, so small updates are not
+ * lost to float rounding over a long training run.
+ *
+ * Training is pattern by pattern, exactly like Network.runNetwork followed by Network.updateWeights.
+ *
+ * Methods contained in file:
+ *
+ * public FloatEngine(WeightMatrix[] source, Activation[] activationFunctions, boolean keepMasterWeights)
+ * public static float[] toFloat(double[] values)
+ * public static double[] toDouble(float[] values)
+ * public float[] forward(float[] input)
+ * public double trainPattern(float[] input, float[] target, float lambda)
+ * static float flushToZero(float x)
+ * static float dot(float[] in, float[] w, int base, int length)
+ * static void accumulateRow(float[] omega, float[] w, int base, int length, float psi)
+ * static void updateRow(float[] w, int base, float[] in, int length, float lambda, float psi)
+ * static void updateMasterRow(double[] master, float[] w, int base, float[] in, int length, float lambda, float psi)
+ * public double trainEpoch(float lambda)
+ * public void run()
+ * public WeightMatrix[] toWeightMatrices()
+ */
+public class FloatEngine
+{
+   final int numLayers;
+   final int[] numFrom;
+   final int[] numTo;
+   final float[][] weights;
+   final WeightMatrix[] masterWeights;
+   final Activation[] activationFunctions;
+   final float[][] activations;
+   final float[][] psis;
+   final float[][] omegas;
+   float[][] inputs;
+   float[][] targets;
+   TrainingTelemetry telemetry = new TrainingTelemetry(null, "csv", 1, false); // the network's telemetry when training
+
+/**
+ * creates the float copies of the given weights and allocates the float buffers of every layer
+ * @param source weight matrices from the input layer to the output layer
+ * @param activationFunctions activation function of every layer
+ * @param keepMasterWeights true to keep source as the double master weights (mixed precision)
+ */
+   public FloatEngine(WeightMatrix[] source, Activation[] activationFunctions, boolean keepMasterWeights)
+   {
+      int l;
+
+      numLayers = source.length;
+      numFrom = new int[numLayers];
+      numTo = new int[numLayers];
+      weights = new float[numLayers][];
+      masterWeights = keepMasterWeights ? source : null;
+      this.activationFunctions = activationFunctions;
+      activations = new float[numLayers + 1][];
+      psis = new float[numLayers][];
+      omegas = new float[numLayers][];
+
+      activations[0] = new float[source[0].numFrom];
+      for (l = 0; l < numLayers; l++)
+      {
+         numFrom[l] = source[l].numFrom;
+         numTo[l] = source[l].numTo;
+         weights[l] = toFloat(source[l].data);
+         activations[l + 1] = new float[numTo[l]];
+         psis[l] = new float[numTo[l]];
+         omegas[l] = new float[numFrom[l]];
+      }
+   } // public FloatEngine(WeightMatrix[] source, Activation[] activationFunctions, boolean keepMasterWeights)
+
+/**
+ * returns a float copy of an array of doubles, rounding every value to the nearest float
+ */
+   public static float[] toFloat(double[] values)
+   {
+      float[] ret = new float[values.length];
+      int i;
+
+      for (i = 0; i < values.length; i++)
+      {
+         ret[i] = (float) values[i];
+      }
+      return ret;
+   }
+
+/**
+ * returns a double copy of an array of floats, every value is represented exactly
+ */
+   public static double[] toDouble(float[] values)
+   {
+      double[] ret = new double[values.length];
+      int i;
+
+      for (i = 0; i < values.length; i++)
+      {
+         ret[i] = values[i];
+      }
+      return ret;
+   }
+
+/**
+ * runs an input through every layer in single precision, storing the activations of every layer
+ * @param input input values, length numFrom[0]
+ * @return the output activations (f), owned by the engine and overwritten by the next call
+ */
+   public float[] forward(float[] input)
+   {
+      float[] w;
+      float[] in;
+      float[] h;
+      Activation activation;
+      int l;
+      int to;
+      int fanIn;
+
+      activations[0] = input;
+      for (l = 0; l < numLayers; l++)
+      {
+         w = weights[l];
+         in = activations[l];
+         h = activations[l + 1];
+         activation = activationFunctions[l];
+         fanIn = numFrom[l];
+         for (to = 0; to < numTo[l]; to++)
+         {
+            h[to] = (float) activation.apply(dot(in, w, to * fanIn, fanIn));
+         }
+      } // for (l = 0; l < numLayers; l++)
+      return activations[numLayers];
+   } // public float[] forward(float[] input)
+
+/**
+ * runs one pattern forward and backpropagates its error, updating the weights right away
+ * @param input input values of the pattern
+ * @param target truth table row of the pattern
+ * @param lambda learning rate
+ * @return the error 0.5 * (t - f)^2 summed over the outputs, computed before the update
+ */
+   public double trainPattern(float[] input, float[] target, float lambda)
+   {
+      long time = telemetry.now();
+      float[] f = forward(input);
+      float[] psi = psis[numLayers - 1];
+      float[] w;
+      float[] in;
+      float[] omega;
+      double[] master;
+      float psiTo;
+      float omegaOut;
+      double error = 0.0;
+      int l;
+      int to;
+      int from;
+      int base;
+      int fanIn;
+
+      time = telemetry.record(TrainingTelemetry.FORWARD, time);
+      for (to = 0; to < numTo[numLayers - 1]; to++)
+      {
+         omegaOut = target[to] - f[to];
+         psi[to] = flushToZero(omegaOut * (float) activationFunctions[numLayers - 1].derivative(f[to]));
+         error += 0.5 * omegaOut * omegaOut;
+      }
+
+      for (l = numLayers - 1; l >= 0; l--)
+      {
+         w = weights[l];
+         in = activations[l];
+         psi = psis[l];
+         omega = omegas[l];
+         master = masterWeights == null ? null : masterWeights[l].data;
+         fanIn = numFrom[l];
+
+         for (from = 0; from < fanIn; from++)
+         {
+            omega[from] = 0.0f;
+         }
+
+         for (to = 0; to < numTo[l]; to++)
+         {
+            base = to * fanIn;
+            psiTo = psi[to];
+            if (l > 0) // the omega values of the input layer are never used
+            {
+               accumulateRow(omega, w, base, fanIn, psiTo);
+            }
+
+            if (master == null)
+            {
+               updateRow(w, base, in, fanIn, lambda, psiTo);
+            }
+            else
+            {
+               updateMasterRow(master, w, base, in, fanIn, lambda, psiTo);
+            }
+         } // for (to = 0; to < numTo[l]; to++)
+
+         if (l > 0)
+         {
+            for (from = 0; from < fanIn; from++) // in holds the activations of layer l - 1
+            {
+               psis[l - 1][from] = flushToZero(omega[from] * (float) activationFunctions[l - 1].derivative(in[from]));
+            }
+         }
+      } // for (l = numLayers - 1; l >= 0; l--)
+      telemetry.record(TrainingTelemetry.BACKWARD, time); // the weights are changed during backpropagation
+      return error;
+   } // public double trainPattern(float[] input, float[] target, float lambda)
+
+/**
+ * returns x, or zero if x is a subnormal float. Saturated sigmoids drive psi values into the subnormal range far sooner in
+ * float than in double, and every multiplication by a subnormal is many times slower than a normal one, so such values
+ * (whose weight changes would be lost to rounding anyway) are flushed to zero
+ */
+   static float flushToZero(float x)
+   {
+      return Math.abs(x) < Float.MIN_NORMAL ? 0.0f : x;
+   }
+
+/**
+ * returns the dot product of in with the row of w starting at base. Four independent partial sums are kept so that the
+ * loop is limited by memory bandwidth, which float halves, rather than by the latency of one long chain of additions
+ */
+   static float dot(float[] in, float[] w, int base, int length)
+   {
+      float sum0 = 0.0f;
+      float sum1 = 0.0f;
+      float sum2 = 0.0f;
+      float sum3 = 0.0f;
+      int i;
+
+      for (i = 0; i + 3 < length; i += 4)
+      {
+         sum0 += in[i] * w[base + i];
+         sum1 += in[i + 1] * w[base + i + 1];
+         sum2 += in[i + 2] * w[base + i + 2];
+         sum3 += in[i + 3] * w[base + i + 3];
+      }
+      for (; i < length; i++)
+      {
+         sum0 += in[i] * w[base + i];
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   } // static float dot(float[] in, float[] w, int base, int length)
+
+/**
+ * adds psi times the row of w starting at base to omega
+ */
+   static void accumulateRow(float[] omega, float[] w, int base, int length, float psi)
+   {
+      int i;
+
+      for (i = 0; i < length; i++)
+      {
+         omega[i] += psi * w[base + i];
+      }
+   }
+
+/**
+ * changes every weight of the row of w starting at base by lambda * in[i] * psi
+ */
+   static void updateRow(float[] w, int base, float[] in, int length, float lambda, float psi)
+   {
+      int i;
+
+      for (i = 0; i < length; i++)
+      {
+         w[base + i] += lambda * in[i] * psi;
+      }
+   }
+
+/**
+ * changes every double master weight of the row starting at base by lambda * in[i] * psi and refreshes the float weights
+ */
+   static void updateMasterRow(double[] master, float[] w, int base, float[] in, int length, float lambda, float psi)
+   {
+      int i;
+
+      for (i = 0; i < length; i++)
+      {
+         master[base + i] += (double) lambda * in[i] * psi;
+         w[base + i] = (float) master[base + i];
+      }
+   }
+
+/**
+ * trains on every input set once, in order
+ * @param lambda learning rate
+ * @return the summed error over every pattern of the epoch
+ */
+   public double trainEpoch(float lambda)
+   {
+      double totalError = 0.0;
+      int i;
+
+      for (i = 0; i < inputs.length; i++)
+      {
+         totalError += trainPattern(inputs[i], targets[i], lambda);
+      }
+      return totalError;
+   }
+
+/**
+ * runs the network over every input set using the current weights
+ */
+   public void run()
+   {
+      int i;
+
+      for (i = 0; i < inputs.length; i++)
+      {
+         forward(inputs[i]);
+      }
+   }
+
+/**
+ * returns double weight matrices holding the current weights, the master weights themselves in mixed precision
+ */
+   public WeightMatrix[] toWeightMatrices()
+   {
+      WeightMatrix[] ret;
+      int l;
+      int n;
+
+      if (masterWeights != null)
+      {
+         return masterWeights;
+      }
+
+      ret = new WeightMatrix[numLayers];
+      for (l = 0; l < numLayers; l++)
+      {
+         ret[l] = new WeightMatrix(numFrom[l], numTo[l]);
+         for (n = 0; n < weights[l].length; n++)
+         {
+            ret[l].data[n] = weights[l][n];
+         }
+      }
+      return ret;
+   } // public WeightMatrix[] toWeightMatrices()
+
+} // public class FloatEngine
@@ -0,0 +1,208 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+/**
+ * This class turns image files (BMP, PNG, JPEG or GIF) straight into input sets, replacing the text .in files they used to
+ * be converted into. Each image is decoded with ImageIO, converted to 8 bit grayscale by the luma weights
+ * (299 R + 587 G + 114 B) / 1000, rounded, resized to width x height by averaging the source pixels each target pixel
+ * covers, and normalized to [0, 1] by dividing by 255. The values are laid out row by row from the top left pixel.
+ *
+ * With invert set, the normalized value is 1 - gray / 255, so dark pixels become large inputs. This is how the .in
+ * files of training_files and testing_files were made from images/photos_cleaned, and an image of the same size loads to
+ * exactly the same values as its .in file.
+ *
+ * A loader holds no state besides its settings, so any number of threads can load images with it at the same time.
+ *
+ * Methods contained in file:
+ *
+ * public ImageLoader(int width, int height, boolean invert)
+ * public static boolean isImage(String fileName)
+ * public static String[] listImages(String directory) throws IOException
+ * public double[] load(String fileName) throws IOException
+ * public static int[] grayscale(BufferedImage image)
+ * public static double[] resize(int[] gray, int fromWidth, int fromHeight, int toWidth, int toHeight)
+ */
+public class ImageLoader
+{
+   static final String[] EXTENSIONS = {".bmp", ".png", ".jpg", ".jpeg", ".gif"};
+
+   final int width;
+   final int height;
+   final boolean invert;
+
+/**
+ * creates a loader producing input sets of width x height values
+ * @param width number of pixels per row of the input sets, 0 if unknown
+ * @param height number of rows of the input sets, 0 if unknown
+ * @param invert true to map black to 1 and white to 0 instead of the other way around
+ */
+   public ImageLoader(int width, int height, boolean invert)
+   {
+      this.width = width;
+      this.height = height;
+      this.invert = invert;
+   }
+
+/**
+ * returns whether a file name has the extension of an image format the loader reads
+ */
+   public static boolean isImage(String fileName)
+   {
+      String name = fileName.toLowerCase();
+      int i;
+
+      for (i = 0; i < EXTENSIONS.length; i++)
+      {
+         if (name.endsWith(EXTENSIONS[i]))
+         {
+            return true;
+         }
+      }
+      return false;
+   } // public static boolean isImage(String fileName)
+
+/**
+ * returns the paths of the image files in a directory, sorted by name
+ */
+   public static String[] listImages(String directory) throws IOException
+   {
+      File[] files = new File(directory).listFiles();
+      String[] names;
+      int count = 0;
+      int i;
+
+      if (files == null)
+      {
+         throw new IOException("<" + directory + "> is not a directory!");
+      }
+
+      names = new String[files.length];
+      for (i = 0; i < files.length; i++)
+      {
+         if (files[i].isFile() && isImage(files[i].getName()))
+         {
+            names[count] = files[i].getPath();
+            count++;
+         }
+      }
+      names = Arrays.copyOf(names, count);
+      Arrays.sort(names);
+      return names;
+   } // public static String[] listImages(String directory) throws IOException
+
+/**
+ * decodes one image into an input set
+ * @param fileName image file
+ * @return width * height input values between 0 and 1, row by row
+ */
+   public double[] load(String fileName) throws IOException
+   {
+      BufferedImage image = ImageIO.read(new File(fileName));
+      double[] values;
+      int n;
+
+      if (image == null)
+      {
+         throw new IOException("<" + fileName + "> is not an image ImageIO can read!");
+      }
+      if (width <= 0 || height <= 0)
+      {
+         throw new IOException("numInputs is not a square number, imageWidth and imageHeight are needed to load <"
+               + fileName + ">!");
+      }
+
+      values = resize(grayscale(image), image.getWidth(), image.getHeight(), width, height);
+      for (n = 0; n < values.length; n++)
+      {
+         values[n] = Math.min(Math.max(invert ? 1.0 - values[n] / 255.0 : values[n] / 255.0, 0.0), 1.0); // resizing rounds
+      }
+      return values;
+   } // public double[] load(String fileName) throws IOException
+
+/**
+ * converts an image to 8 bit grayscale
+ * @return the gray value of every pixel, row by row from the top left pixel
+ */
+   public static int[] grayscale(BufferedImage image)
+   {
+      int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+      int n;
+      int rgb;
+
+      for (n = 0; n < pixels.length; n++)
+      {
+         rgb = pixels[n];
+         pixels[n] = (299 * ((rgb >> 16) & 0xFF) + 587 * ((rgb >> 8) & 0xFF) + 114 * (rgb & 0xFF) + 500) / 1000;
+      }
+      return pixels;
+   } // public static int[] grayscale(BufferedImage image)
+
+/**
+ * resizes a grayscale image by area averaging: every target pixel is the mean of the source area it covers, each source
+ * pixel weighted by the fraction of it inside that area. An image that already has the target size is copied unchanged
+ * @param gray gray values of the source image, row by row
+ * @param fromWidth width of the source image
+ * @param fromHeight height of the source image
+ * @param toWidth width of the resized image
+ * @param toHeight height of the resized image
+ * @return gray values of the resized image, row by row
+ */
+   public static double[] resize(int[] gray, int fromWidth, int fromHeight, int toWidth, int toHeight)
+   {
+      double[] rows = new double[fromHeight * toWidth];
+      double[] resized = new double[toHeight * toWidth];
+      double scale;
+      double start;
+      double end;
+      double sum;
+      int x;
+      int y;
+      int i;
+
+      if (fromWidth == toWidth && fromHeight == toHeight)
+      {
+         for (i = 0; i < gray.length; i++)
+         {
+            resized[i] = gray[i];
+         }
+         return resized;
+      }
+
+      scale = (double) fromWidth / toWidth; // first average along every row
+      for (x = 0; x < toWidth; x++)
+      {
+         start = x * scale;
+         end = (x + 1) * scale;
+         for (y = 0; y < fromHeight; y++)
+         {
+            sum = 0.0;
+            for (i = (int) start; i < end && i < fromWidth; i++)
+            {
+               sum += gray[y * fromWidth + i] * (Math.min(end, i + 1) - Math.max(start, i));
+            }
+            rows[y * toWidth + x] = sum / scale;
+         }
+      } // for (x = 0; x < toWidth; x++)
+
+      scale = (double) fromHeight / toHeight; // then along every column
+      for (y = 0; y < toHeight; y++)
+      {
+         start = y * scale;
+         end = (y + 1) * scale;
+         for (x = 0; x < toWidth; x++)
+         {
+            sum = 0.0;
+            for (i = (int) start; i < end && i < fromHeight; i++)
+            {
+               sum += rows[i * toWidth + x] * (Math.min(end, i + 1) - Math.max(start, i));
+            }
+            resized[y * toWidth + x] = sum / scale;
+         }
+      } // for (y = 0; y < toHeight; y++)
+      return resized;
+   } // public static double[] resize(int[] gray, int fromWidth, int fromHeight, int toWidth, int toHeight)
+
+} // public class ImageLoader
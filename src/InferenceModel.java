@@ -0,0 +1,334 @@
+/**
+ * This class is an immutable, thread-safe view of a trained network for inference. It holds its own copy of the weights
+ * and activation functions, which are never written after construction, so any number of threads can run inputs through
+ * one InferenceModel at the same time without locks, and a service needs only one copy of the weights however many
+ * requests it serves concurrently.
+ *
+ * All per-call state lives in a Scratch object holding one activation buffer per hidden layer. predict(input, output)
+ * uses a Scratch kept per thread (allocated the first time a thread calls it) and writes the outputs into an array owned
+ * by the caller, so once a thread has warmed up no call allocates anything. Callers managing their own threads can
+ * instead create a Scratch per worker with newScratch() and pass it in.
+ *
+ * predictBatch scores many input sets at once. It cuts them into tiles of TILE_SIZE input sets and pushes each tile through
+ * every layer with MatrixKernels.multiplyTransposed, so every block of weights read from memory is used for a whole tile
+ * of inputs instead of a single one. Its tile buffers are also kept per thread.
+ *
+ * Running this class directly checks a model built from a config file against Network.executeNetwork and measures its
+ * throughput on several threads:
+ *
+ * java InferenceModel configFile.json numThreads repeats
+ *
+ * Methods contained in file:
+ *
+ * public InferenceModel(WeightMatrix[] weights, Activation[] activationFunctions, boolean simd)
+ * InferenceModel(WeightMatrix[] weights, Activation[] activationFunctions, boolean simd, boolean copyWeights)
+ * public static InferenceModel share(WeightMatrix[] weights, Activation[] activationFunctions, boolean simd)
+ * public int getNumInputs()
+ * public int getNumOutputs()
+ * public Scratch newScratch()
+ * public double[] predict(double[] input, double[] output)
+ * public double[] predict(double[] input, double[] output, Scratch scratch)
+ * public double[][] predictBatch(double[][] inputs)
+ * public double[][] predictBatch(double[][] inputs, int count, double[][] outputs)
+ * public static void main(String[] args) throws Exception
+ */
+public final class InferenceModel
+{
+
+/**
+ * the activation buffers one inference needs, one per hidden layer. A Scratch must only be used by one thread at a time
+ */
+   public static final class Scratch
+   {
+      final double[][] hidden;
+
+      Scratch(WeightMatrix[] weights)
+      {
+         int l;
+
+         hidden = new double[weights.length - 1][];
+         for (l = 0; l < hidden.length; l++)
+         {
+            hidden[l] = new double[weights[l].numTo];
+         }
+      }
+   } // public static final class Scratch
+
+/**
+ * the flat row-major buffers one tile of predictBatch needs: the tile's inputs and the activations of every layer
+ */
+   static final class Tile
+   {
+      final double[][] activations;
+
+      Tile(WeightMatrix[] weights)
+      {
+         int l;
+
+         activations = new double[weights.length + 1][];
+         activations[0] = new double[TILE_SIZE * weights[0].numFrom];
+         for (l = 0; l < weights.length; l++)
+         {
+            activations[l + 1] = new double[TILE_SIZE * weights[l].numTo];
+         }
+      }
+   } // static final class Tile
+
+   static final int TILE_SIZE = 64; // input sets pushed through the layers together by predictBatch
+
+   private final WeightMatrix[] weights;
+   private final Activation[] activationFunctions;
+   private final boolean simd;
+   private final ThreadLocal<Scratch> threadScratch;
+   private final ThreadLocal<Tile> threadTile;
+
+/**
+ * creates a model from a copy of the given weights, so later changes to them (for example further training) do not
+ * affect it
+ * @param weights weight matrices from the input layer to the output layer
+ * @param activationFunctions activation function of every layer
+ * @param simd true to compute the layers with VectorKernels
+ */
+   public InferenceModel(WeightMatrix[] weights, Activation[] activationFunctions, boolean simd)
+   {
+      this(weights, activationFunctions, simd, true);
+   }
+
+/**
+ * creates a model from the given weights, either copying them or using them as they are
+ */
+   InferenceModel(WeightMatrix[] weights, Activation[] activationFunctions, boolean simd, boolean copyWeights)
+   {
+      int l;
+
+      this.weights = weights.clone();
+      if (copyWeights)
+      {
+         for (l = 0; l < weights.length; l++)
+         {
+            this.weights[l] = new WeightMatrix(weights[l].numFrom, weights[l].numTo);
+            System.arraycopy(weights[l].data, 0, this.weights[l].data, 0, weights[l].data.length);
+         }
+      }
+      this.activationFunctions = activationFunctions.clone();
+      this.simd = simd;
+      threadScratch = ThreadLocal.withInitial(this::newScratch);
+      threadTile = ThreadLocal.withInitial(() -> new Tile(this.weights));
+   } // InferenceModel(WeightMatrix[] weights, Activation[] activationFunctions, boolean simd, boolean copyWeights)
+
+/**
+ * creates a model that uses the given weights without copying them, for callers that will not change the weights while
+ * the model is in use and cannot afford a second copy of them
+ */
+   public static InferenceModel share(WeightMatrix[] weights, Activation[] activationFunctions, boolean simd)
+   {
+      return new InferenceModel(weights, activationFunctions, simd, false);
+   }
+
+/**
+ * returns the number of input values the model expects
+ */
+   public int getNumInputs()
+   {
+      return weights[0].numFrom;
+   }
+
+/**
+ * returns the number of output values the model produces
+ */
+   public int getNumOutputs()
+   {
+      return weights[weights.length - 1].numTo;
+   }
+
+/**
+ * allocates a new set of activation buffers for one thread
+ */
+   public Scratch newScratch()
+   {
+      return new Scratch(weights);
+   }
+
+/**
+ * runs one input set through the model using the calling thread's scratch buffers
+ * @param input input values, length getNumInputs()
+ * @param output receives the output values, length getNumOutputs()
+ * @return output
+ */
+   public double[] predict(double[] input, double[] output)
+   {
+      return predict(input, output, threadScratch.get());
+   }
+
+/**
+ * runs one input set through the model using the given scratch buffers
+ * @param input input values, length getNumInputs()
+ * @param output receives the output values, length getNumOutputs()
+ * @param scratch buffers not in use by any other thread
+ * @return output
+ */
+   public double[] predict(double[] input, double[] output, Scratch scratch)
+   {
+      double[] in = input;
+      double[] out;
+      WeightMatrix w;
+      int l;
+
+      for (l = 0; l < weights.length; l++)
+      {
+         w = weights[l];
+         out = l == weights.length - 1 ? output : scratch.hidden[l];
+         if (simd)
+         {
+            VectorKernels.multiplyRows(w, in, out, 0, w.numTo);
+         }
+         else
+         {
+            w.multiply(in, out);
+         }
+         activationFunctions[l].applyInPlace(out, w.numTo);
+         in = out;
+      } // for (l = 0; l < weights.length; l++)
+      return output;
+   } // public double[] predict(double[] input, double[] output, Scratch scratch)
+
+/**
+ * runs every row of an N x getNumInputs() matrix through the model
+ * @return a new N x getNumOutputs() matrix of outputs
+ */
+   public double[][] predictBatch(double[][] inputs)
+   {
+      return predictBatch(inputs, inputs.length, new double[inputs.length][getNumOutputs()]);
+   }
+
+/**
+ * runs the first count input sets through the model one tile of TILE_SIZE input sets at a time, using the calling thread's
+ * tile buffers
+ * @param inputs input sets, at least count rows of getNumInputs() values
+ * @param count number of input sets to score
+ * @param outputs receives the outputs, at least count rows of getNumOutputs() values
+ * @return outputs
+ */
+   public double[][] predictBatch(double[][] inputs, int count, double[][] outputs)
+   {
+      Tile tile = threadTile.get();
+      int numInputs = getNumInputs();
+      int numOutputs = getNumOutputs();
+      double[] out = tile.activations[weights.length];
+      int start;
+      int size;
+      int b;
+      int l;
+
+      for (start = 0; start < count; start += size)
+      {
+         size = Math.min(TILE_SIZE, count - start);
+         for (b = 0; b < size; b++)
+         {
+            System.arraycopy(inputs[start + b], 0, tile.activations[0], b * numInputs, numInputs);
+         }
+
+         for (l = 0; l < weights.length; l++)
+         {
+            MatrixKernels.multiplyTransposed(tile.activations[l], size, weights[l], tile.activations[l + 1]);
+            activationFunctions[l].applyInPlace(tile.activations[l + 1], size * weights[l].numTo);
+         }
+
+         for (b = 0; b < size; b++)
+         {
+            System.arraycopy(out, b * numOutputs, outputs[start + b], 0, numOutputs);
+         }
+      } // for (start = 0; start < count; start += size)
+      return outputs;
+   } // public double[][] predictBatch(double[][] inputs, int count, double[][] outputs)
+
+/**
+ * builds a model from the network described by a config file, checks the outputs of predict and predictBatch against
+ * executeNetwork over every possible input, times both on one thread and then runs every possible input repeats times on
+ * each of numThreads threads sharing the model
+ * @param args config file, number of threads (default 4) and number of repeats (default 100)
+ */
+   public static void main(String[] args) throws Exception
+   {
+      Network network = new Network(args[0]);
+      int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+      int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+      InferenceModel model = network.createInferenceModel();
+      double[][] inputs = network.possibleInputs;
+      double[] output = new double[model.getNumOutputs()];
+      double[][] batchOutputs = new double[inputs.length][model.getNumOutputs()];
+      Thread[] threads = new Thread[numThreads];
+      double maxDifference = 0.0;
+      double maxBatchDifference = 0.0;
+      long startTime;
+      long endTime;
+      int inputNum;
+      int i;
+
+      model.predictBatch(inputs, inputs.length, batchOutputs);
+      for (inputNum = 0; inputNum < inputs.length; inputNum++)
+      {
+         network.executeNetwork(inputs[inputNum]);
+         model.predict(inputs[inputNum], output);
+         for (i = 0; i < output.length; i++)
+         {
+            maxDifference = Math.max(maxDifference, Math.abs(output[i] - network.f[i]));
+            maxBatchDifference = Math.max(maxBatchDifference, Math.abs(batchOutputs[inputNum][i] - network.f[i]));
+         }
+      }
+      System.out.println("Maximum difference from executeNetwork: " + maxDifference + " (predict), " + maxBatchDifference
+            + " (predictBatch)");
+
+      startTime = System.nanoTime();
+      for (i = 0; i < repeats; i++)
+      {
+         for (inputNum = 0; inputNum < inputs.length; inputNum++)
+         {
+            model.predict(inputs[inputNum], output);
+         }
+      }
+      endTime = System.nanoTime();
+      System.out.println("1 thread, one input at a time: " + (endTime - startTime) / 1e6 + "ms");
+      startTime = System.nanoTime();
+      for (i = 0; i < repeats; i++)
+      {
+         model.predictBatch(inputs, inputs.length, batchOutputs);
+      }
+      endTime = System.nanoTime();
+      System.out.println("1 thread, tiles of " + TILE_SIZE + " inputs: " + (endTime - startTime) / 1e6 + "ms");
+
+      for (i = 0; i < numThreads; i++)
+      {
+         threads[i] = new Thread(() ->
+         {
+            double[] result = new double[model.getNumOutputs()];
+            int r;
+            int n;
+
+            for (r = 0; r < repeats; r++)
+            {
+               for (n = 0; n < inputs.length; n++)
+               {
+                  model.predict(inputs[n], result);
+               }
+            }
+         });
+      } // for (i = 0; i < numThreads; i++)
+
+      startTime = System.nanoTime();
+      for (i = 0; i < numThreads; i++)
+      {
+         threads[i].start();
+      }
+      for (i = 0; i < numThreads; i++)
+      {
+         threads[i].join();
+      }
+      endTime = System.nanoTime();
+
+      System.out.println(numThreads + " threads ran " + (long) numThreads * repeats * inputs.length + " inferences in "
+            + (endTime - startTime) / 1e6 + "ms (" + (long) numThreads * repeats * inputs.length * 1e9 / (endTime - startTime)
+            + " inferences per second)");
+   } // public static void main(String[] args) throws Exception
+
+} // public final class InferenceModel
@@ -0,0 +1,413 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a long-running local HTTP inference server. It builds the network described by a config file once, keeps
+ * it as an InferenceModel and answers requests until it is stopped. Only the weights are loaded, never the possible
+ * inputs or truth table of the config, so startup does not depend on the size of the dataset:
+ *
+ * POST /predict  body holding the numInputs input values separated by whitespace or commas (a .in file can be posted as
+ *                is), answered with the outputs as a JSON array
+ * GET  /stats    JSON object with the number of requests and batches, the mean batch size and the 50th, 90th and 99th
+ *                percentile and maximum latencies in milliseconds over the last LATENCY_SAMPLES requests
+ *
+ * Every request is handled on its own virtual thread when the JVM has them (Java 21 and later) and on a cached pool of
+ * platform threads otherwise. Handlers do not run the network themselves: they queue their input and wait, while a single
+ * batching thread gathers queued requests into micro-batches of at most maxBatchSize inputs, waiting at most maxWaitMicros
+ * after the first one arrives, and scores each micro-batch with one InferenceModel.predictBatch call.
+ *
+ * The server reads these optional keys from the config file, next to the usual network keys:
+ *
+ * "serverPort"           port to listen on, defaults to 8080
+ * "serverMaxBatchSize"   most requests merged into one micro-batch, defaults to 32
+ * "serverMaxWaitMicros"  longest a request waits for others to join its micro-batch, defaults to 1000
+ *
+ * java InferenceServer configFile.json
+ *
+ * Methods contained in file:
+ *
+ * public InferenceServer(InferenceModel model, int port, int maxBatchSize, long maxWaitMicros) throws IOException
+ * public static ExecutorService newRequestExecutor()
+ * public void start()
+ * public void stop()
+ * public void batchRequests()
+ * public void handlePredict(HttpExchange exchange) throws IOException
+ * public void handleStats(HttpExchange exchange) throws IOException
+ * public String statsJson()
+ * public static double[] parseValues(String text)
+ * public static void respond(HttpExchange exchange, int status, String body) throws IOException
+ * public static void main(String[] args) throws Exception
+ */
+public class InferenceServer
+{
+   static final int LATENCY_SAMPLES = 100000;
+
+/**
+ * one queued inference, completed by the batching thread
+ */
+   static class Request
+   {
+      final double[] input;
+      final CompletableFuture<double[]> result = new CompletableFuture<double[]>();
+
+      Request(double[] input)
+      {
+         this.input = input;
+      }
+   } // static class Request
+
+/**
+ * keeps the most recent latencies in a ring buffer and computes percentiles over them
+ */
+   static class LatencyRecorder
+   {
+      final long[] samples;
+      long count;
+
+      LatencyRecorder(int numSamples)
+      {
+         samples = new long[numSamples];
+      }
+
+/**
+ * records one latency in nanoseconds
+ */
+      synchronized void record(long nanos)
+      {
+         samples[(int) (count % samples.length)] = nanos;
+         count++;
+      }
+
+/**
+ * returns the latencies at the given percentiles (0 to 100) in milliseconds, all zero if nothing was recorded
+ */
+      double[] percentilesMillis(double[] percentiles)
+      {
+         double[] ret = new double[percentiles.length];
+         long[] sorted;
+         int i;
+
+         synchronized (this)
+         {
+            sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+         }
+         Arrays.sort(sorted);
+         for (i = 0; i < percentiles.length && sorted.length > 0; i++)
+         {
+            ret[i] = sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentiles[i] / 100.0 * sorted.length) - 1)] / 1e6;
+         }
+         return ret;
+      } // double[] percentilesMillis(double[] percentiles)
+   } // static class LatencyRecorder
+
+   final InferenceModel model;
+   final int maxBatchSize;
+   final long maxWaitNanos;
+   final BlockingQueue<Request> queue;
+   final LatencyRecorder latencies;
+   final HttpServer server;
+   final ExecutorService requestExecutor;
+   final Thread batcher;
+   long numBatches;
+   long numBatchedRequests;
+
+/**
+ * creates a server for the given model, bound to the loopback interface on the given port but not yet started
+ * @param model model used to answer every request
+ * @param port port to listen on
+ * @param maxBatchSize most requests scored together
+ * @param maxWaitMicros longest the first request of a micro-batch waits for others to join it
+ */
+   public InferenceServer(InferenceModel model, int port, int maxBatchSize, long maxWaitMicros) throws IOException
+   {
+      this.model = model;
+      this.maxBatchSize = maxBatchSize;
+      maxWaitNanos = maxWaitMicros * 1000;
+      queue = new LinkedBlockingQueue<Request>();
+      latencies = new LatencyRecorder(LATENCY_SAMPLES);
+      requestExecutor = newRequestExecutor();
+
+      // without TCP_NODELAY the response body is held back until the client acknowledges the headers, which delayed
+      // acknowledgements turn into about 40ms of extra latency per request
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+      server.createContext("/predict", this::handlePredict);
+      server.createContext("/stats", this::handleStats);
+      server.setExecutor(requestExecutor);
+
+      batcher = new Thread(this::batchRequests, "micro-batcher");
+      batcher.setDaemon(true);
+   } // public InferenceServer(InferenceModel model, int port, int maxBatchSize, long maxWaitMicros) throws IOException
+
+/**
+ * returns an executor starting one virtual thread per task if the JVM supports them, and a cached pool of platform
+ * threads otherwise. The virtual thread executor is looked up reflectively so that the code also compiles and runs on
+ * Java versions without it
+ */
+   public static ExecutorService newRequestExecutor()
+   {
+      try
+      {
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+      catch (ReflectiveOperationException e)
+      {
+         return Executors.newCachedThreadPool();
+      }
+   } // public static ExecutorService newRequestExecutor()
+
+/**
+ * starts the batching thread and begins accepting requests
+ */
+   public void start()
+   {
+      batcher.start();
+      server.start();
+   }
+
+/**
+ * stops accepting requests and stops the batching thread
+ */
+   public void stop()
+   {
+      server.stop(0);
+      batcher.interrupt();
+      requestExecutor.shutdown();
+   }
+
+/**
+ * body of the batching thread: takes the first waiting request, gathers more until maxBatchSize requests are collected or
+ * maxWaitNanos have passed, scores them in one predictBatch call and completes each request with its row of outputs
+ */
+   public void batchRequests()
+   {
+      Request[] batch = new Request[maxBatchSize];
+      double[][] inputs = new double[maxBatchSize][];
+      double[][] outputs = new double[maxBatchSize][model.getNumOutputs()];
+      Request request;
+      long deadline;
+      long remaining;
+      int count;
+      int i;
+
+      try
+      {
+         while (!Thread.currentThread().isInterrupted())
+         {
+            batch[0] = queue.take();
+            count = 1;
+            deadline = System.nanoTime() + maxWaitNanos;
+            while (count < maxBatchSize)
+            {
+               remaining = deadline - System.nanoTime();
+               request = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+               if (request == null)
+               {
+                  break;
+               }
+               batch[count] = request;
+               count++;
+            } // while (count < maxBatchSize)
+
+            for (i = 0; i < count; i++)
+            {
+               inputs[i] = batch[i].input;
+            }
+            try
+            {
+               model.predictBatch(inputs, count, outputs);
+               for (i = 0; i < count; i++)
+               {
+                  batch[i].result.complete(outputs[i].clone());
+               }
+            }
+            catch (RuntimeException e)
+            {
+               for (i = 0; i < count; i++)
+               {
+                  batch[i].result.completeExceptionally(e);
+               }
+            }
+
+            synchronized (this)
+            {
+               numBatches++;
+               numBatchedRequests += count;
+            }
+            Arrays.fill(batch, 0, count, null);
+            Arrays.fill(inputs, 0, count, null);
+         } // while (!Thread.currentThread().isInterrupted())
+      } // try
+      catch (InterruptedException e)
+      {
+         // the server was stopped
+      }
+   } // public void batchRequests()
+
+/**
+ * answers POST /predict: parses the input values, queues them for the next micro-batch and waits for the outputs
+ */
+   public void handlePredict(HttpExchange exchange) throws IOException
+   {
+      long startTime = System.nanoTime();
+      StringBuilder body = new StringBuilder("[");
+      Request request;
+      double[] input;
+      double[] output;
+      int i;
+
+      if (!exchange.getRequestMethod().equals("POST"))
+      {
+         respond(exchange, 405, "Use POST with the input values as the body\n");
+         return;
+      }
+
+      try
+      {
+         input = parseValues(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.US_ASCII));
+      }
+      catch (NumberFormatException e)
+      {
+         respond(exchange, 400, "Input values must be numbers: " + e.getMessage() + "\n");
+         return;
+      }
+      if (input.length != model.getNumInputs())
+      {
+         respond(exchange, 400, "Expected " + model.getNumInputs() + " input values but received " + input.length + "\n");
+         return;
+      }
+
+      request = new Request(input);
+      queue.add(request);
+      try
+      {
+         output = request.result.get();
+      }
+      catch (Exception e)
+      {
+         respond(exchange, 500, "Inference failed: " + e + "\n");
+         return;
+      }
+
+      for (i = 0; i < output.length; i++)
+      {
+         body.append(i == 0 ? "" : ", ").append(output[i]);
+      }
+      respond(exchange, 200, body.append("]\n").toString());
+      latencies.record(System.nanoTime() - startTime);
+   } // public void handlePredict(HttpExchange exchange) throws IOException
+
+/**
+ * answers GET /stats with the request, batch and latency statistics
+ */
+   public void handleStats(HttpExchange exchange) throws IOException
+   {
+      respond(exchange, 200, statsJson() + "\n");
+   }
+
+/**
+ * returns the request, batch and latency statistics as a JSON object
+ */
+   public String statsJson()
+   {
+      double[] millis = latencies.percentilesMillis(new double[] {50.0, 90.0, 99.0, 100.0});
+      long batches;
+      long requests;
+
+      synchronized (this)
+      {
+         batches = numBatches;
+         requests = numBatchedRequests;
+      }
+      return "{\"requests\": " + requests + ", \"batches\": " + batches + ", \"meanBatchSize\": "
+            + (batches == 0 ? 0.0 : (double) requests / batches) + ", \"p50Millis\": " + millis[0] + ", \"p90Millis\": "
+            + millis[1] + ", \"p99Millis\": " + millis[2] + ", \"maxMillis\": " + millis[3] + "}";
+   } // public String statsJson()
+
+/**
+ * parses numbers separated by whitespace, commas or square brackets, so both .in files and JSON arrays are accepted
+ */
+   public static double[] parseValues(String text)
+   {
+      double[] values = new double[16];
+      int count = 0;
+      int start;
+      int end = 0;
+      char c;
+
+      while (end < text.length())
+      {
+         start = end;
+         while (end < text.length() && !Character.isWhitespace(c = text.charAt(end)) && c != ',' && c != '[' && c != ']')
+         {
+            end++;
+         }
+         if (end > start)
+         {
+            if (count == values.length)
+            {
+               values = Arrays.copyOf(values, 2 * count);
+            }
+            values[count] = Double.parseDouble(text.substring(start, end));
+            count++;
+         }
+         else
+         {
+            end++;
+         }
+      } // while (end < text.length())
+      return Arrays.copyOf(values, count);
+   } // public static double[] parseValues(String text)
+
+/**
+ * sends a complete plain response with the given status
+ */
+   public static void respond(HttpExchange exchange, int status, String body) throws IOException
+   {
+      byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+
+      exchange.sendResponseHeaders(status, bytes.length);
+      try (OutputStream out = exchange.getResponseBody())
+      {
+         out.write(bytes);
+      }
+   }
+
+/**
+ * loads the weights of the network of a config file once, without its dataset, and serves them until the process is
+ * stopped
+ */
+   public static void main(String[] args) throws Exception
+   {
+      String fileName = args.length == 0 ? "configFile.json" : args[0];
+      JSONObject json = (JSONObject) new JSONParser().parse(new FileReader(fileName));
+      int port = json.containsKey("serverPort") ? Math.toIntExact((long) json.get("serverPort")) : 8080;
+      int maxBatchSize = json.containsKey("serverMaxBatchSize") ? Math.toIntExact((long) json.get("serverMaxBatchSize")) : 32;
+      long maxWaitMicros = json.containsKey("serverMaxWaitMicros") ? (long) json.get("serverMaxWaitMicros") : 1000;
+      InferenceServer server = new InferenceServer(new Network(json).createInferenceModel(), port, maxBatchSize,
+            maxWaitMicros);
+
+      server.start();
+      System.out.println("Serving on http://127.0.0.1:" + port + "/predict (micro-batches of up to " + maxBatchSize
+            + " requests, waiting at most " + maxWaitMicros + " microseconds, "
+            + (server.requestExecutor instanceof ThreadPoolExecutor ? "platform" : "virtual")
+            + " request threads)");
+   } // public static void main(String[] args) throws Exception
+
+} // public class InferenceServer
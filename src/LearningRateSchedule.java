@@ -0,0 +1,83 @@
+/**
+ * This class changes the learning rate lambda from epoch to epoch. During the first warmupEpochs epochs lambda rises in
+ * equal steps to baseLambda; after that it follows the schedule, counting epochs e from the end of the warm up:
+ *
+ *    constant      baseLambda
+ *    step          baseLambda * decay^floor(e / stepEpochs)
+ *    exponential   baseLambda * decay^e
+ *    cosine        minLambda + (baseLambda - minLambda) * (1 + cos(pi * e / (maxIterations - warmupEpochs))) / 2
+ *
+ * Step and exponential decay never go below minLambda, and cosine decay reaches it at maxIterations.
+ *
+ * Methods contained in file:
+ *
+ * public LearningRateSchedule(Type type, double baseLambda, double minLambda, double decay, int stepEpochs,
+ *       int warmupEpochs, int maxIterations)
+ * public double lambda(int epoch)
+ */
+public class LearningRateSchedule
+{
+   enum Type {CONSTANT, STEP, EXPONENTIAL, COSINE};
+
+   final Type type;
+   final double baseLambda;
+   final double minLambda;
+   final double decay;
+   final int stepEpochs;
+   final int warmupEpochs;
+   final int maxIterations;
+
+/**
+ * creates a learning rate schedule
+ * @param type shape of the schedule after the warm up
+ * @param baseLambda learning rate at the end of the warm up
+ * @param minLambda lowest learning rate of step, exponential and cosine decay
+ * @param decay factor lambda is multiplied by every stepEpochs epochs (step) or every epoch (exponential)
+ * @param stepEpochs number of epochs between two steps of step decay
+ * @param warmupEpochs number of epochs over which lambda rises to baseLambda, 0 for none
+ * @param maxIterations maximum number of epochs of training, at which cosine decay reaches minLambda
+ */
+   public LearningRateSchedule(Type type, double baseLambda, double minLambda, double decay, int stepEpochs,
+         int warmupEpochs, int maxIterations)
+   {
+      this.type = type;
+      this.baseLambda = baseLambda;
+      this.minLambda = minLambda;
+      this.decay = decay;
+      this.stepEpochs = stepEpochs;
+      this.warmupEpochs = warmupEpochs;
+      this.maxIterations = maxIterations;
+   }
+
+/**
+ * returns the learning rate of an epoch
+ * @param epoch number of epochs completed before it
+ */
+   public double lambda(int epoch)
+   {
+      int e = epoch - warmupEpochs;
+      int decayEpochs = Math.max(maxIterations - warmupEpochs, 1);
+
+      if (e < 0)
+      {
+         return baseLambda * (epoch + 1) / warmupEpochs;
+      }
+
+      switch (type)
+      {
+         case STEP:
+            return Math.max(minLambda, baseLambda * Math.pow(decay, e / stepEpochs));
+
+         case EXPONENTIAL:
+            return Math.max(minLambda, baseLambda * Math.pow(decay, e));
+
+         case COSINE:
+            return minLambda + (baseLambda - minLambda) * 0.5
+                  * (1.0 + Math.cos(Math.PI * Math.min(e, decayEpochs) / decayEpochs));
+
+         default:
+            return baseLambda;
+      }
+   } // public double lambda(int epoch)
+
+} // public class LearningRateSchedule
@@ -0,0 +1,168 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a local load generator for InferenceServer. It starts numClients concurrent clients, each of which sends
+ * requestsPerClient requests one after the other, cycling through the given input files (for example testing_files/*.in),
+ * and then reports the throughput and the client-side latency percentiles along with the server's own statistics.
+ *
+ * Every client keeps one HTTP/1.1 connection open and writes each request in a single write with TCP_NODELAY set, so
+ * the generator adds as little as possible to the latencies it measures.
+ *
+ * java LoadGenerator 127.0.0.1 8080 numClients requestsPerClient inputFile.in ...
+ *
+ * Methods contained in file:
+ *
+ * public static String send(Socket socket, String method, String path, byte[] body) throws IOException
+ * public static void main(String[] args) throws Exception
+ */
+public class LoadGenerator
+{
+
+/**
+ * sends one request over an open connection and reads the whole response
+ * @param socket connection to the server, left open for the next request
+ * @param method HTTP method
+ * @param path request path
+ * @param body request body, empty for none
+ * @return the response body, or null if the status was not 200
+ */
+   public static String send(Socket socket, String method, String path, byte[] body) throws IOException
+   {
+      ByteArrayOutputStream request = new ByteArrayOutputStream(body.length + 128);
+      InputStream in = socket.getInputStream();
+      OutputStream out = socket.getOutputStream();
+      StringBuilder line = new StringBuilder();
+      byte[] responseBody;
+      int contentLength = 0;
+      int status = 0;
+      int read;
+      int c;
+
+      request.write((method + " " + path + " HTTP/1.1\r\nHost: " + socket.getInetAddress().getHostAddress()
+            + "\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+      request.write(body);
+      request.writeTo(out);
+      out.flush();
+
+      while (true) // status line and headers
+      {
+         c = in.read();
+         if (c < 0)
+         {
+            throw new IOException("Connection closed by the server");
+         }
+         if (c != '\n')
+         {
+            line.append((char) c);
+            continue;
+         }
+
+         if (line.length() <= 1) // blank line (only the '\r') ends the headers
+         {
+            break;
+         }
+         if (status == 0)
+         {
+            status = Integer.parseInt(line.toString().split(" ")[1]);
+         }
+         else if (line.toString().toLowerCase().startsWith("content-length:"))
+         {
+            contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+         }
+         line.setLength(0);
+      } // while (true)
+
+      responseBody = new byte[contentLength];
+      for (read = 0; read < contentLength; read += c)
+      {
+         c = in.read(responseBody, read, contentLength - read);
+         if (c < 0)
+         {
+            throw new IOException("Connection closed by the server");
+         }
+      }
+      return status == 200 ? new String(responseBody, StandardCharsets.US_ASCII) : null;
+   } // public static String send(Socket socket, String method, String path, byte[] body) throws IOException
+
+/**
+ * runs the clients against the server and prints the results
+ * @param args server host, server port, number of clients, requests per client and one or more input files
+ */
+   public static void main(String[] args) throws Exception
+   {
+      String host = args[0];
+      int port = Integer.parseInt(args[1]);
+      int numClients = Integer.parseInt(args[2]);
+      int requestsPerClient = Integer.parseInt(args[3]);
+      byte[][] bodies = new byte[args.length - 4][];
+      InferenceServer.LatencyRecorder latencies = new InferenceServer.LatencyRecorder(numClients * requestsPerClient);
+      ExecutorService clients = InferenceServer.newRequestExecutor();
+      AtomicLong failures = new AtomicLong();
+      double[] millis;
+      long startTime;
+      long endTime;
+      int c;
+      int i;
+
+      for (i = 0; i < bodies.length; i++)
+      {
+         bodies[i] = Files.readAllBytes(Paths.get(args[i + 4]));
+      }
+
+      startTime = System.nanoTime();
+      for (c = 0; c < numClients; c++)
+      {
+         final int clientNum = c;
+
+         clients.execute(() ->
+         {
+            long requestStart;
+            int r;
+
+            try (Socket socket = new Socket(host, port))
+            {
+               socket.setTcpNoDelay(true);
+               for (r = 0; r < requestsPerClient; r++)
+               {
+                  requestStart = System.nanoTime();
+                  if (send(socket, "POST", "/predict", bodies[(clientNum + r) % bodies.length]) == null)
+                  {
+                     failures.incrementAndGet();
+                  }
+                  latencies.record(System.nanoTime() - requestStart);
+               }
+            } // try (Socket socket = new Socket(host, port))
+            catch (IOException e)
+            {
+               e.printStackTrace();
+               failures.incrementAndGet();
+            }
+         });
+      } // for (c = 0; c < numClients; c++)
+      clients.shutdown();
+      clients.awaitTermination(1, TimeUnit.DAYS);
+      endTime = System.nanoTime();
+
+      millis = latencies.percentilesMillis(new double[] {50.0, 90.0, 99.0, 100.0});
+      System.out.println(numClients + " clients sent " + (long) numClients * requestsPerClient + " requests in "
+            + (endTime - startTime) / 1e6 + "ms (" + (long) numClients * requestsPerClient * 1e9 / (endTime - startTime)
+            + " requests per second), " + failures.get() + " failed");
+      System.out.println("Client latency: p50 " + millis[0] + "ms, p90 " + millis[1] + "ms, p99 " + millis[2] + "ms, max "
+            + millis[3] + "ms");
+      try (Socket socket = new Socket(host, port))
+      {
+         System.out.println("Server statistics: " + send(socket, "GET", "/stats", new byte[0]).trim());
+      }
+   } // public static void main(String[] args) throws Exception
+
+} // public class LoadGenerator
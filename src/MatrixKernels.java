@@ -0,0 +1,245 @@
+/**
+ * This class contains the cache-blocked matrix-matrix kernels used when a whole batch of patterns is pushed through a
+ * layer at once. Batches are stored as flat row-major arrays, so pattern b of a layer with n nodes occupies
+ * [b * n, (b + 1) * n). Weights are stored in WeightMatrix form, one contiguous row of incoming weights per node.
+ *
+ * Each kernel walks its operands in tiles of at most BLOCK_ROWS weight rows by BLOCK_DEPTH columns, so a tile of
+ * weights is loaded from memory once and then reused for every pattern of the batch while it is still in cache.
+ * The innermost loops additionally work on two rows or two patterns at a time to reuse every value loaded into a register.
+ *
+ * Methods contained in file:
+ *
+ * public static void multiplyTransposed(double[] x, int count, WeightMatrix w, double[] out)
+ * public static void multiply(double[] psi, int count, WeightMatrix w, double[] omega)
+ * public static void accumulateOuterProducts(double[] psi, double[] x, int count, WeightMatrix w, double scale)
+ */
+public class MatrixKernels
+{
+   static final int BLOCK_ROWS = 32;
+   static final int BLOCK_DEPTH = 256;
+
+/**
+ * computes the theta values of a batch, out[b][to] = sum over from of x[b][from] * w(from, to)
+ * @param x batch of activations of the earlier layer, count rows of w.numFrom values
+ * @param count number of patterns in the batch
+ * @param w weights between the two layers
+ * @param out receives count rows of w.numTo theta values
+ */
+   public static void multiplyTransposed(double[] x, int count, WeightMatrix w, double[] out)
+   {
+      int numFrom = w.numFrom;
+      int numTo = w.numTo;
+      double[] data = w.data;
+      int from0;
+      int fromEnd;
+      int to0;
+      int toEnd;
+      int b;
+      int to;
+      int from;
+      int x0;
+      int x1;
+      int w0;
+      int w1;
+      double s00;
+      double s01;
+      double s10;
+      double s11;
+
+      for (b = 0; b < count * numTo; b++)
+      {
+         out[b] = 0.0;
+      }
+
+      for (from0 = 0; from0 < numFrom; from0 += BLOCK_DEPTH)
+      {
+         fromEnd = Math.min(from0 + BLOCK_DEPTH, numFrom);
+         for (to0 = 0; to0 < numTo; to0 += BLOCK_ROWS)
+         {
+            toEnd = Math.min(to0 + BLOCK_ROWS, numTo);
+            for (b = 0; b + 1 < count; b += 2) // two patterns against two weight rows per step
+            {
+               x0 = b * numFrom;
+               x1 = x0 + numFrom;
+               for (to = to0; to + 1 < toEnd; to += 2)
+               {
+                  w0 = to * numFrom;
+                  w1 = w0 + numFrom;
+                  s00 = 0.0;
+                  s01 = 0.0;
+                  s10 = 0.0;
+                  s11 = 0.0;
+                  for (from = from0; from < fromEnd; from++)
+                  {
+                     s00 += x[x0 + from] * data[w0 + from];
+                     s01 += x[x0 + from] * data[w1 + from];
+                     s10 += x[x1 + from] * data[w0 + from];
+                     s11 += x[x1 + from] * data[w1 + from];
+                  }
+                  out[b * numTo + to] += s00;
+                  out[b * numTo + to + 1] += s01;
+                  out[(b + 1) * numTo + to] += s10;
+                  out[(b + 1) * numTo + to + 1] += s11;
+               } // for (to = to0; to + 1 < toEnd; to += 2)
+
+               if (to < toEnd) // odd weight row left over
+               {
+                  w0 = to * numFrom;
+                  s00 = 0.0;
+                  s10 = 0.0;
+                  for (from = from0; from < fromEnd; from++)
+                  {
+                     s00 += x[x0 + from] * data[w0 + from];
+                     s10 += x[x1 + from] * data[w0 + from];
+                  }
+                  out[b * numTo + to] += s00;
+                  out[(b + 1) * numTo + to] += s10;
+               }
+            } // for (b = 0; b + 1 < count; b += 2)
+
+            if (b < count) // odd pattern left over
+            {
+               x0 = b * numFrom;
+               for (to = to0; to < toEnd; to++)
+               {
+                  w0 = to * numFrom;
+                  s00 = 0.0;
+                  for (from = from0; from < fromEnd; from++)
+                  {
+                     s00 += x[x0 + from] * data[w0 + from];
+                  }
+                  out[b * numTo + to] += s00;
+               }
+            } // if (b < count)
+         } // for (to0 = 0; to0 < numTo; to0 += BLOCK_ROWS)
+      } // for (from0 = 0; from0 < numFrom; from0 += BLOCK_DEPTH)
+   } // public static void multiplyTransposed(double[] x, int count, WeightMatrix w, double[] out)
+
+/**
+ * propagates the psi values of a batch back through the weights, omega[b][from] = sum over to of psi[b][to] * w(from, to)
+ * @param psi batch of psi values of the later layer, count rows of w.numTo values
+ * @param count number of patterns in the batch
+ * @param w weights between the two layers
+ * @param omega receives count rows of w.numFrom omega values
+ */
+   public static void multiply(double[] psi, int count, WeightMatrix w, double[] omega)
+   {
+      int numFrom = w.numFrom;
+      int numTo = w.numTo;
+      double[] data = w.data;
+      int from0;
+      int fromEnd;
+      int b;
+      int to;
+      int from;
+      int o0;
+      int o1;
+      int w0;
+      double p0;
+      double p1;
+
+      for (b = 0; b < count * numFrom; b++)
+      {
+         omega[b] = 0.0;
+      }
+
+      for (from0 = 0; from0 < numFrom; from0 += BLOCK_DEPTH)
+      {
+         fromEnd = Math.min(from0 + BLOCK_DEPTH, numFrom);
+         for (b = 0; b + 1 < count; b += 2) // each weight loaded once feeds two patterns
+         {
+            o0 = b * numFrom;
+            o1 = o0 + numFrom;
+            for (to = 0; to < numTo; to++)
+            {
+               w0 = to * numFrom;
+               p0 = psi[b * numTo + to];
+               p1 = psi[(b + 1) * numTo + to];
+               for (from = from0; from < fromEnd; from++)
+               {
+                  omega[o0 + from] += p0 * data[w0 + from];
+                  omega[o1 + from] += p1 * data[w0 + from];
+               }
+            }
+         } // for (b = 0; b + 1 < count; b += 2)
+
+         if (b < count)
+         {
+            o0 = b * numFrom;
+            for (to = 0; to < numTo; to++)
+            {
+               w0 = to * numFrom;
+               p0 = psi[b * numTo + to];
+               for (from = from0; from < fromEnd; from++)
+               {
+                  omega[o0 + from] += p0 * data[w0 + from];
+               }
+            }
+         } // if (b < count)
+      } // for (from0 = 0; from0 < numFrom; from0 += BLOCK_DEPTH)
+   } // public static void multiply(double[] psi, int count, WeightMatrix w, double[] omega)
+
+/**
+ * adds scale times the summed outer products of a batch to the weights, w(from, to) += scale * sum over b of
+ * psi[b][to] * x[b][from]. With scale equal to lambda this is the weight update of a whole batch, with scale 1.0
+ * and a zeroed w it accumulates the raw gradient of the batch
+ * @param psi batch of psi values of the later layer, count rows of w.numTo values
+ * @param x batch of activations of the earlier layer, count rows of w.numFrom values
+ * @param count number of patterns in the batch
+ * @param w weights (or gradient accumulator) to be updated
+ * @param scale factor applied to every outer product
+ */
+   public static void accumulateOuterProducts(double[] psi, double[] x, int count, WeightMatrix w, double scale)
+   {
+      int numFrom = w.numFrom;
+      int numTo = w.numTo;
+      double[] data = w.data;
+      int from0;
+      int fromEnd;
+      int to0;
+      int toEnd;
+      int b;
+      int to;
+      int from;
+      int x0;
+      int x1;
+      int w0;
+      double p0;
+      double p1;
+
+      for (to0 = 0; to0 < numTo; to0 += BLOCK_ROWS)
+      {
+         toEnd = Math.min(to0 + BLOCK_ROWS, numTo);
+         for (from0 = 0; from0 < numFrom; from0 += BLOCK_DEPTH)
+         {
+            fromEnd = Math.min(from0 + BLOCK_DEPTH, numFrom);
+            for (to = to0; to < toEnd; to++) // the row segment of w stays in cache for the whole batch
+            {
+               w0 = to * numFrom;
+               for (b = 0; b + 1 < count; b += 2)
+               {
+                  x0 = b * numFrom;
+                  x1 = x0 + numFrom;
+                  p0 = scale * psi[b * numTo + to];
+                  p1 = scale * psi[(b + 1) * numTo + to];
+                  for (from = from0; from < fromEnd; from++)
+                  {
+                     data[w0 + from] += p0 * x[x0 + from] + p1 * x[x1 + from];
+                  }
+               }
+
+               if (b < count)
+               {
+                  x0 = b * numFrom;
+                  p0 = scale * psi[b * numTo + to];
+                  for (from = from0; from < fromEnd; from++)
+                  {
+                     data[w0 + from] += p0 * x[x0 + from];
+                  }
+               }
+            } // for (to = to0; to < toEnd; to++)
+         } // for (from0 = 0; from0 < numFrom; from0 += BLOCK_DEPTH)
+      } // for (to0 = 0; to0 < numTo; to0 += BLOCK_ROWS)
+   } // public static void accumulateOuterProducts(double[] psi, double[] x, int count, WeightMatrix w, double scale)
+
+} // public class MatrixKernels
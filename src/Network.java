@@ -7,96 +7,296 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Pranav Varmaraja
  * 4/21/2022
  * 
- * This class creates, trains, and runs a basic four activation layer perceptron. The network takes any number of inputs, 
- * passes them through 2 activation layers consisting of any number of nodes, and outputs any number of values. The network
- * is thus an A-B-C-D network, with any number of inputs, hidden nodes in layer 1, hidden nodes in layer 2 and outputs.
- * Training is performed via gradient descent to fit the network to training data.
+ * This class creates, trains, and runs a multilayer perceptron. The network takes any number of inputs, passes them
+ * through any number of hidden activation layers consisting of any number of nodes, and outputs any number of values. By
+ * default it is an A-B-C-D network, with any number of inputs, hidden nodes in layer 1, hidden nodes in layer 2 and
+ * outputs; "layerSizes" gives it any other depth. Training is performed via gradient descent to fit the network to
+ * training data.
+ *
+ * Every layer keeps a preallocated activation array, and omega and psi arrays when training, so the forward pass and
+ * backpropagation are one loop over the layers that allocates nothing and runs the same per-layer kernels at every depth.
  * 
- * The network also implements backpropagation optimization.
+ * The network also implements backpropagation optimization. Training either updates the weights after every pattern or,
+ * when a batchSize greater than 1 is configured, pushes whole batches through each layer as matrix-matrix products
+ * (see BatchWorkspace and MatrixKernels) and applies one summed weight update per batch. With numThreads greater than 1
+ * each batch (the whole epoch if no batchSize is given) is split into one fixed shard per worker of a ForkJoinPool; the
+ * workers compute gradients into private buffers which are then summed in worker order, so that results are reproducible
+ * for a fixed thread count.
+ *
+ * Independently of that, a single pattern can be spread across cores: with layerThreads greater than 1, every layer holding
+ * at least parallelLayerThreshold weights is split into node ranges that run in parallel during both the forward pass and
+ * backpropagation, while smaller layers stay serial and pay no fork/join overhead.
+ * 
+ * Setting simd to true runs those per-pattern layer passes through VectorKernels, which use the Java Vector API when the
+ * jdk.incubator.vector module has been added to the JVM, and falls back to the scalar WeightMatrix kernels otherwise.
+ * 
+ * Instead of plain gradient descent, the weights can be changed by an Optimizer (momentum, Nesterov momentum, RMSProp or
+ * Adam), which keeps preallocated state for every weight, and lambda can follow a LearningRateSchedule from epoch to
+ * epoch. The time it took to reach the error threshold is reported next to the training time.
+ * 
+ * Every layer applies its own Activation (sigmoid by default, or a table-based fast sigmoid, tanh or ReLU), and
+ * backpropagation takes the derivative of each from the activations stored by the forward pass, so the theta values of a
+ * pattern are never kept and no activation function is evaluated twice.
+ * 
+ * executeNetwork keeps its activations in fields of the network, so a Network can only run one input at a time. For
+ * concurrent inference, createInferenceModel returns an immutable InferenceModel that any number of threads can share.
+ * With batchInference set, run and report score every group of input sets through InferenceModel.predictBatch, which
+ * pushes tiles of input sets through each layer together instead of streaming all of the weights once per input set.
+ * 
+ * The weights between each pair of layers are held in a WeightMatrix, a single flat array in which every node owns one
+ * contiguous row of its incoming weights, so the forward pass and backpropagation both read memory sequentially.
  * 
  * It is configured via various json files: a main config file, a truth table file, a file containing possible inputs, and potentially a
  * file with weights to be used.
  * 
+ * Input files are either text files with one input value per line or images, which an ImageLoader decodes, converts to
+ * grayscale, resizes to numInputs pixels and normalizes directly. An input list may name either kind, and imageDirectory
+ * takes every image of a directory instead. The input files are read in parallel, one range of them per core.
+ * 
+ * Weights files are JSON by default. Setting weightFormat to "binary" reads and writes them in the memory-mapped binary
+ * format of BinaryWeights instead, which loads large models far faster.
+ * 
+ * If a datasetCacheFileName is configured, the parsed inputs and truth table are also packed into a binary DatasetCache file,
+ * which later runs memory-map instead of parsing the text inputs again, for as long as it is newer than all of its sources.
+ * 
+ * With streamInputs set, the possible inputs are never held in memory as a whole. They are read from the dataset cache in
+ * chunks of streamChunkSize input sets by a StreamingDataset, whose background thread prefetches the next chunk while the
+ * current one is being trained on, run or reported, so memory use stays flat however many input sets there are.
+ * 
+ * With a checkpointFileName configured, a Checkpointer snapshots the weights and the progress of training every few epochs
+ * or seconds and writes them to disk on a background thread; resumeFromCheckpoint makes a later run continue from there.
+ * 
+ * With a validation set configured, a Validator checks snapshots of the weights against it on a background thread every
+ * few epochs, stops training once the validation error stops improving and hands back the weights that did best on it.
+ * 
+ * With augmentedSetsPerEpoch configured, an Augmenter makes that many randomly rotated, shifted, contrast changed and noisy
+ * variants of the possible inputs on producer threads and hands them over through bounded queues, so every epoch also
+ * trains on them while the next ones are being made.
+ * 
+ * With pruneThreshold or pruneSparsity configured, a Pruner zeroes the weights of smallest magnitude after training (or
+ * after loading the weights in run mode), and optionally every pruneInterval epochs while training. Pruned layers with few
+ * enough weights left are stored as a SparseMatrix in compressed sparse row form, which executeNetwork then runs instead
+ * of the dense weights, and the error, outputs and speed of the pruned network are reported against the dense network.
+ * 
+ * During training a TrainingTelemetry samples every telemetryInterval-th epoch, timing its forward pass, backpropagation and
+ * weight update, and streams the samples to a CSV or JSON lines file and to a JMX MBean while training is still running.
+ * 
+ * Setting precision to "int8" runs the network through a QuantizedModel, whose weights are quantized to bytes with one
+ * scale per row or per column and whose layers are integer dot products dequantized before the activation function; the
+ * quantized outputs are then compared against the double outputs. weightFormat "int8" reads and writes quantized weights
+ * files, and quantizedWeightsFileName exports the weights in that format after training or running.
+ * 
+ * Setting precision to "float" runs training or running in single precision through a FloatEngine, which holds the weights,
+ * activations and inputs as floats; "mixed" additionally keeps the double weights as master copies that receive every update.
+ * Once done the weights are turned back into doubles and the float outputs are compared against the double outputs.
+ * 
+ * With distributedWorkers configured, this process becomes the coordinator of multi-process training: a ParameterServer
+ * keeps the weights, and as many TrainingWorker processes, each holding one shard of the possible inputs, compute the
+ * gradients of their batches and exchange them with it over local sockets, in lockstep or with bounded staleness.
+ * 
+ * A config with a "sweep" object is handed to a Sweep, which trains many variations of it at once on a bounded thread pool.
+ * Those networks are created from the parsed config and share the possible inputs and truth table loaded by the first of
+ * them, which no network ever writes to.
+ * 
  * All JSON was parsed using JSON-simple, the jar can be found at: https://code.google.com/archive/p/json-simple/downloads
  * 
  * Methods contained in file:
  * 
  * public Network(String fileName)
+ * public Network(JSONObject json, double[][] sharedInputs, double[][] sharedTruthTable)
+ * public Network(JSONObject json, int shard, int numShards)
+ * public Network(JSONObject json)
+ * public static JSONObject readConfigFile(String fileName)
  * public void parseConfigFile(String fileName)
+ * public void parseConfig(JSONObject json)
+ * public void parseLayerSizes(JSONObject json)
+ * public void parseTelemetry(JSONObject json)
+ * public void parseCheckpoints(JSONObject json)
+ * public void parseValidation(JSONObject json)
+ * public void parsePruning(JSONObject json)
+ * public void parseOptimizer(JSONObject json)
+ * public void parseDistributed(JSONObject json)
+ * public void parseAugmentation(JSONObject json)
+ * public void parseActivations(JSONObject json)
  * public void parseWeightsFile(String fileName) throws Exception
  * public void parseTruthTable(String fileName)
- * public void parseInputs(String fileName)
+ * public void parseTruthTable(String fileName, double[][] table)
+ * public void parseImages(JSONObject json)
+ * public void parseInputs(String[] fileNames, double[][] inputs)
+ * public String[] inputFileNames()
+ * public String[] parseInputFileNames(String fileName)
+ * public double[] parseInputFile(String fileName)
+ * public void loadDataset()
+ * public void loadShard(String[] inputFiles)
+ * public String[] datasetSources(String[] inputFiles)
+ * public void openStreamingDataset()
+ * public double forEachInputChunk(InputSetsTask task) throws Exception
  * public void saveWeights(String fileName)
+ * public void loadWeights(String fileName) throws Exception
+ * public void storeWeights(String fileName)
  * public void inputMode()
  * public void setConfigValues()
  * public void echoConfigValues()
  * public void allocate()
+ * public void allocateWorkers()
+ * public int chunkCapacity()
  * public void populate()
+ * public void resume()
+ * public void loadValidationSet()
+ * public void startAugmentation()
+ * public void startParameterServer()
  * public double getRandWeight()
  * public void randomInitialization()
- * public double activationFunction(double x)
- * public double derivActivationFuncton(double x)
+ * public static boolean isVectorApiAvailable()
+ * public void multiplyLayer(WeightMatrix weights, double[] in, double[] out)
+ * public void multiplySparseLayer(SparseMatrix weights, double[] in, double[] out)
+ * public void multiplyRows(WeightMatrix weights, double[] in, double[] out, int start, int end)
+ * public void backpropagateLayer(int layer, double[] in, double[] psi, double[] omega)
+ * public void backpropagateColumns(int layer, double[] in, double[] psi, double[] omega, int start, int end)
  * public void runNetwork(double[] input)
  * public void executeNetwork(double[] input)
+ * public WeightMatrix[] getWeightMatrices()
+ * public InferenceModel createInferenceModel()
+ * public void startBatchInference()
  * public void train() throws Exception
+ * public double trainEpoch() throws Exception
+ * public void trainAugmented() throws Exception
+ * public double trainInputs(double[][] inputs, double[][] targets, int numSets)
+ * public double trainSequential(double[][] inputs, double[][] targets, int numSets)
+ * public double trainBatches(double[][] inputs, double[][] targets, int numSets)
+ * public double trainParallel(double[][] inputs, double[][] targets, int numSets)
+ * public void applyWorkerGradients()
  * public void updateWeights()
  * public void run()
  * public void report()
+ * public double reportInputs(double[][] inputs, double[][] targets, int numSets)
  * public void execute()
+ * public void reportQuantization() throws Exception
+ * public void prune() throws Exception
+ * public double scoreInputs(double[][] outputs) throws Exception
+ * public void startFloatEngine()
+ * public void stopFloatEngine()
+ * public void close()
  * public static void main(String[] args)
  */
 public class Network 
 {
 
-   double[][] weights0;
-   double[][] weights1;
-   double[][] weights2;
+   WeightMatrix[] weights;
+   double[][] activations;
    double[] a;
-   double[] h1;
-   double[] h2;
    double[] f;
    double[] t;
 
+   static final int PRUNING_TIMING_PASSES = 10; // passes over every possible input timed when reporting on pruning
+   static final String[] LEGACY_WEIGHT_KEYS = {"weightsmk", "weightskj", "weightsji"}; // json keys of A-B-C-D weights
+
    enum mode {RUN, TRAIN};
    mode runTrain;
 
+   int[] layerSizes;
+   int numLayers;
    int numInputs;
    int numOutputs;
-   int numHiddenNodes1;
-   int numHiddenNodes2;
    double maxErrorThreshold;
    double lambda;
    int maxIterations;
    double maxRandomWeight;
    double minRandomWeight;
    int numPossibleInputSets;
+   int numDatasetSets;
+   int shardStart;
    int numIterations;
    double error;
    double trainingTime;
+   double thresholdTime;
+   int thresholdIterations;
+   Optimizer optimizer;
+   LearningRateSchedule learningRateSchedule;
+   TrainingTelemetry telemetry;
+   Checkpointer checkpointer;
+   boolean resumeFromCheckpoint;
+   String validationInputFileName;
+   String validationTruthTableFileName;
+   int validationInterval;
+   int validationPatience;
+   Validator validator;
+   int augmentedSetsPerEpoch;
+   int augmentChunkSize;
+   int augmentThreads;
+   int augmentQueueDepth;
+   double augmentMaxShift;
+   double augmentMaxRotation;
+   double augmentContrast;
+   double augmentNoise;
+   long augmentSeed;
+   Augmenter augmenter;
+   int distributedWorkers;
+   int distributedPort;
+   int distributedStaleness;
+   boolean launchWorkers;
+   String[] workerJvmOptions;
+   ParameterServer parameterServer;
+   Pruner pruner;
+   double sparseDensity;
+   SparseMatrix[] sparseWeights;
+   int batchSize;
+   BatchWorkspace batchWorkspace;
+   int numThreads;
+   int parallelBatchSize;
+   ForkJoinPool pool;
+   BatchWorkspace[] workerWorkspaces;
+   int layerThreads;
+   int parallelLayerThreshold;
+   ForkJoinPool layerPool;
+   boolean simd;
+   Activation[] activationFunctions;
+   boolean batchInference;
+   InferenceModel batchModel;
+   double[][] batchOutputs;
 
    double[][] possibleInputs;
    double[][] truthTable;
+   boolean sharedDataset;
+   boolean weightsOnly;
+   boolean quiet;
 
-   double[] thetak;
-   double[] thetaj;
-   double[] thetai;
-   double[] omegak;
-   double[] omegaj;
-   double[] omegai;
-   double[] psik;
-   double[] psij;
-   double[] psii;
+   double[][] omegas;
+   double[][] psis;
 
+   String configFileName;
    String outputFileName;
    String weightFileName;
    String inputFileName;
+   String imageDirectory;
+   ImageLoader imageLoader;
    String truthTableFileName;
    boolean preLoadedWeights;
+   String weightFormat;
+   String datasetCacheFileName;
+   boolean streamInputs;
+   int streamChunkSize;
+   StreamingDataset streamingDataset;
+   String precision;
+   FloatEngine floatEngine;
+   QuantizedModel quantizedModel;
+   String quantizedWeightsFileName;
+   boolean quantizePerColumn;
+
+/**
+ * work done on a consecutive group of input sets, either all possible inputs or one streamed chunk of them
+ */
+   interface InputSetsTask
+   {
+      double run(double[][] inputs, double[][] targets, int numSets) throws Exception;
+   }
 
 
 /**
@@ -111,30 +311,111 @@ public class Network
    }
 
 /**
- * parses the json config file using simple-json, assigns config values from json to class variables
+ * constructor for a Network configured by an already parsed config, used by a Sweep to train many configurations at once.
+ * The config values are not echoed. Given shared possible inputs and truth table, the network trains on those arrays
+ * instead of loading its own; it only ever reads them, so any number of networks can share them
+ * @param json parsed config
+ * @param sharedInputs possible inputs loaded by another network, or null to load them from the config
+ * @param sharedTruthTable truth table matching sharedInputs, or null
  */
-   public void parseConfigFile(String fileName)
+   public Network(JSONObject json, double[][] sharedInputs, double[][] sharedTruthTable)
    {
-      Object obj = null;
-      boolean runOnly;
-      JSONObject json = null;
+      parseConfig(json);
+      if (sharedInputs != null)
+      {
+         if (streamInputs || sharedInputs.length != numPossibleInputSets || sharedInputs[0].length != numInputs
+               || sharedTruthTable[0].length != numOutputs)
+         {
+            System.out.println("A shared dataset needs in-memory inputs with the same numPossibleInputs, numInputs and "
+                  + "numOutputs!");
+            System.exit(0);
+         }
+         possibleInputs = sharedInputs;
+         truthTable = sharedTruthTable;
+         sharedDataset = true;
+      } // if (sharedInputs != null)
+      allocate();
+      populate();
+   } // public Network(JSONObject json, double[][] sharedInputs, double[][] sharedTruthTable)
+
+/**
+ * constructor for a Network holding only one shard of the possible inputs, used by a TrainingWorker. The possible inputs
+ * are divided into numShards contiguous shards as Parallel.rangeStart divides a range; numPossibleInputSets becomes the
+ * size of this shard and possibleInputs and truthTable hold only its input sets
+ * @param json parsed config
+ * @param shard number of the shard, from 0 to numShards - 1
+ * @param numShards number of shards
+ */
+   public Network(JSONObject json, int shard, int numShards)
+   {
+      parseConfig(json);
+      shardStart = Parallel.rangeStart(numDatasetSets, numShards, shard);
+      numPossibleInputSets = Parallel.rangeStart(numDatasetSets, numShards, shard + 1) - shardStart;
+      if (streamInputs || numPossibleInputSets == 0)
+      {
+         System.out.println("A shard needs in-memory inputs and at least one input set!");
+         System.exit(0);
+      }
+      allocate();
+      populate();
+   } // public Network(JSONObject json, int shard, int numShards)
+
+/**
+ * constructor for a Network holding only the weights of a config, used by an InferenceServer to serve them. The config is
+ * read as if runOnly were set, and the possible inputs and truth table are neither allocated nor loaded, so the network
+ * takes the same time and memory to build however large its dataset is. It can execute inputs and create an
+ * InferenceModel, but not run over, report on or train with the possible inputs
+ * @param json parsed config
+ */
+   @SuppressWarnings("unchecked")
+   public Network(JSONObject json)
+   {
+      JSONObject config = new JSONObject(json);
 
+      config.put("runOnly", true);
+      parseConfig(config);
+      weightsOnly = true;
+      allocate();
+      populate();
+   } // public Network(JSONObject json)
+
+/**
+ * reads a json config file using simple-json
+ * @return the parsed config, or null if it could not be read
+ */
+   public static JSONObject readConfigFile(String fileName)
+   {
       try
       {
-         obj = new JSONParser().parse(new FileReader(fileName));
-      } 
+         return (JSONObject) new JSONParser().parse(new FileReader(fileName));
+      }
       catch (Exception e)
       {
          e.printStackTrace();
+         return null;
       }
-      json = (JSONObject) obj;
+   } // public static JSONObject readConfigFile(String fileName)
+
+/**
+ * parses the json config file using simple-json, assigns config values from json to class variables
+ */
+   public void parseConfigFile(String fileName)
+   {
+      configFileName = fileName;
+      parseConfig(readConfigFile(fileName));
+   }
+
+/**
+ * assigns the config values of a parsed config to class variables
+ */
+   public void parseConfig(JSONObject json)
+   {
+      boolean runOnly;
+
       preLoadedWeights = (boolean) json.get("preLoadedWeights");
       runOnly = (boolean) json.get("runOnly");
 
-      numInputs = Math.toIntExact((long) json.get("numInputs"));
-      numHiddenNodes1 = Math.toIntExact((long) json.get("numHiddenNodes1"));
-      numHiddenNodes2 = Math.toIntExact((long) json.get("numHiddenNodes2"));
-      numOutputs = Math.toIntExact((long) json.get("numOutputs"));
+      parseLayerSizes(json);
 
       if (!preLoadedWeights)
       {
@@ -165,606 +446,2092 @@ public class Network
          outputFileName = (String) json.get("outputWeightsFileName");
          maxErrorThreshold = (double) json.get("errorThreshold");
          lambda = (double) json.get("lambda");         
+         batchSize = 1;
+         if (json.containsKey("batchSize"))
+         {
+            batchSize = Math.toIntExact((long) json.get("batchSize"));
+         }
+         parseOptimizer(json); // before the checkpointer, which stores the optimizer state
+         parseCheckpoints(json);
+         parseValidation(json);
+         parseDistributed(json);
       } //else
 
+      numThreads = 1;
+      if (json.containsKey("numThreads"))
+      {
+         numThreads = Math.toIntExact((long) json.get("numThreads"));
+      }
+
+      layerThreads = 1;
+      if (json.containsKey("layerThreads"))
+      {
+         layerThreads = Math.toIntExact((long) json.get("layerThreads"));
+      }
+
+      parallelLayerThreshold = 100000;
+      if (json.containsKey("parallelLayerThreshold"))
+      {
+         parallelLayerThreshold = Math.toIntExact((long) json.get("parallelLayerThreshold"));
+      }
+
+      parseActivations(json);
+      parseTelemetry(json);
+      parsePruning(json);
+      batchInference = json.containsKey("batchInference") && (boolean) json.get("batchInference");
+
+      simd = json.containsKey("simd") && (boolean) json.get("simd");
+      if (simd && !isVectorApiAvailable())
+      {
+         System.out.println("SIMD kernels need the jdk.incubator.vector module (--add-modules jdk.incubator.vector), "
+               + "using the scalar kernels instead.");
+         simd = false;
+      }
+
+      weightFormat = "json";
+      if (json.containsKey("weightFormat"))
+      {
+         weightFormat = (String) json.get("weightFormat");
+      }
+      if (!weightFormat.equals("json") && !weightFormat.equals("binary") && !weightFormat.equals("int8"))
+      {
+         System.out.println("\"weightFormat\" must be \"json\", \"binary\" or \"int8\"!");
+         System.exit(0);
+      }
+
+      precision = "double";
+      if (json.containsKey("precision"))
+      {
+         precision = (String) json.get("precision");
+      }
+      quantizedWeightsFileName = (String) json.get("quantizedWeightsFileName");
+      quantizePerColumn = json.containsKey("quantizationAxis") && ((String) json.get("quantizationAxis")).equals("column");
+
+      datasetCacheFileName = (String) json.get("datasetCacheFileName");
+      streamInputs = json.containsKey("streamInputs") && (boolean) json.get("streamInputs");
+      streamChunkSize = 64;
+      if (json.containsKey("streamChunkSize"))
+      {
+         streamChunkSize = Math.toIntExact((long) json.get("streamChunkSize"));
+      }
       truthTableFileName = (String) json.get("truthTableFileName");
       inputFileName = (String) json.get("inputFileName");
+      parseImages(json);
       outputFileName = (String) json.get("outputWeightsFileName");
       numPossibleInputSets = Math.toIntExact((long) json.get("numPossibleInputs"));
-      
-   } // public void parseConfigFile(String fileName)
+      numDatasetSets = numPossibleInputSets;
+      if (!runOnly)
+      {
+         parseAugmentation(json);
+      }
 
+      if (precision.equals("int8") && (!runOnly || batchInference))
+      {
+         System.out.println("Precision \"int8\" is only supported when running (runOnly) without batchInference!");
+         System.exit(0);
+      }
 
-/**
- * parses the json weights file using simple-json, assigns the arrays of weights
- */
-   public void parseWeightsFile(String fileName) throws Exception
-   {
-      Object obj = null;
-      JSONObject json = null;
-      JSONArray weightskj;
-      JSONArray weightsji;
-      JSONArray weightsmk;
-      int i;
-      int j;
-      int k;
-      int m;
+      if (!precision.equals("double") && (batchSize > 1 || numThreads > 1 || layerThreads > 1 || streamInputs))
+      {
+         System.out.println("Precision \"" + precision + "\" only supports pattern by pattern training on one thread with "
+               + "in-memory inputs (no batchSize, numThreads, layerThreads or streamInputs)!");
+         System.exit(0);
+      }
 
-      try
+      if (!precision.equals("double") && pruner != null)
       {
-         obj = new JSONParser().parse(new FileReader(fileName));
-      } catch (Exception e)
+         System.out.println("Pruning needs precision \"double\"!");
+         System.exit(0);
+      }
+
+      if (!precision.equals("double") && optimizer != null)
       {
-         e.printStackTrace();
+         System.out.println("Optimizers other than \"sgd\" need precision \"double\"!");
+         System.exit(0);
       }
-      json = (JSONObject) obj;
-      weightsmk = (JSONArray) json.get("weightsmk");
-      weightskj = (JSONArray) json.get("weightskj");
-      weightsji = (JSONArray) json.get("weightsji");
 
-      if (weightskj.size()!=weights1.length || weightsji.size()!=weights2.length || weightsmk.size()!=weights0.length || 
-      ((JSONArray) weightskj.get(0)).size()!=weights1[0].length || ((JSONArray) weightsji.get(0)).size()!=weights2[0].length 
-      || ((JSONArray) weightsmk.get(0)).size()!=weights0[0].length) //check if dimensions of weights file are accurate
+      if (!precision.equals("double") && augmentedSetsPerEpoch > 0)
       {
-         throw new Exception("Weights file does not match dimensionality in config file!");
+         System.out.println("Augmentation needs precision \"double\"!");
+         System.exit(0);
       }
-      
-      for (k = 0; k < weights1.length; k++) 
+
+      if (distributedWorkers > 0 && (!precision.equals("double") || streamInputs || augmentedSetsPerEpoch > 0
+            || numThreads > 1 || layerThreads > 1))
       {
-         for (j = 0; j < weights1[k].length; j++)
-         {
-            weights1[k][j] = (double) ((JSONArray) weightskj.get(k)).get(j);
-         }
+         System.out.println("Distributed training needs precision \"double\" and in-memory inputs, without augmentation, "
+               + "numThreads or layerThreads (the workers are the parallelism)!");
+         System.exit(0);
       }
 
-      for (j = 0; j < weights2.length; j++) 
+      if (precision.equals("float") && (checkpointer != null || validationInputFileName != null))
       {
-         for (i = 0; i < weights2[j].length; i++)
-         {
-            weights2[j][i] = (double) ((JSONArray) weightsji.get(j)).get(i);
-         }
+         System.out.println("Checkpoints and validation need double weights, use precision \"mixed\" with float training!");
+         System.exit(0);
       }
+      
+   } // public void parseConfig(JSONObject json)
+
+/**
+ * reads the number of nodes in every layer from the config: "layerSizes" lists them from the input layer to the output
+ * layer, for any number of layers. Without it the network has the A-B-C-D shape given by "numInputs", "numHiddenNodes1",
+ * "numHiddenNodes2" and "numOutputs"
+ */
+   public void parseLayerSizes(JSONObject json)
+   {
+      JSONArray sizes;
+      int l;
 
-      for (m = 0; m < weights0.length; m++) 
+      if (json.containsKey("layerSizes"))
       {
-         for (k = 0; k < weights0[m].length; k++)
+         sizes = (JSONArray) json.get("layerSizes");
+         layerSizes = new int[sizes.size()];
+         for (l = 0; l < layerSizes.length; l++)
          {
-            weights0[m][k] = (double) ((JSONArray) weightsmk.get(m)).get(k);
+            layerSizes[l] = Math.toIntExact((long) sizes.get(l));
          }
       }
-   } // public void parseWeightsFile(String fileName) throws Exception
+      else
+      {
+         layerSizes = new int[] {Math.toIntExact((long) json.get("numInputs")),
+               Math.toIntExact((long) json.get("numHiddenNodes1")), Math.toIntExact((long) json.get("numHiddenNodes2")),
+               Math.toIntExact((long) json.get("numOutputs"))};
+      }
+
+      if (layerSizes.length < 2)
+      {
+         System.out.println("\"layerSizes\" must list at least the input layer and the output layer!");
+         System.exit(0);
+      }
+      numLayers = layerSizes.length - 1;
+      numInputs = layerSizes[0];
+      numOutputs = layerSizes[numLayers];
+   } // public void parseLayerSizes(JSONObject json)
 
 /**
- * parses the truthTable json file using simple-json, assigns values to truthTable array
+ * creates the training telemetry from the config: "telemetryFileName" names the file samples are written to,
+ * "telemetryFormat" is "csv" (the default) or "jsonl", "telemetryInterval" is the number of epochs between two samples
+ * (default 1) and "telemetryMBean" exposes the samples through JMX. Without a file or the MBean nothing is sampled
  */
-   public void parseTruthTable(String fileName)
+   public void parseTelemetry(JSONObject json)
    {
-      
-      Object obj = null;
-      JSONObject json = null;
-      JSONArray truthTable;
-      int j;
-      int k;
+      String format = "csv";
+      int interval = 1;
 
-      try
+      if (json.containsKey("telemetryFormat"))
       {
-         obj = new JSONParser().parse(new FileReader(fileName));
-      } catch (Exception e)
+         format = (String) json.get("telemetryFormat");
+      }
+      if (!format.equals("csv") && !format.equals("jsonl"))
       {
-         e.printStackTrace();
+         System.out.println("Telemetry format \"" + format + "\" is neither \"csv\" nor \"jsonl\"!");
+         System.exit(0);
       }
 
-      json = (JSONObject) obj;
-      truthTable = (JSONArray) json.get("truthTable");
-
-      for (k = 0; k < truthTable.size(); k++) 
+      if (json.containsKey("telemetryInterval"))
       {
-         for (j = 0; j < ((JSONArray) truthTable.get(k)).size(); j++)
-         {
-            this.truthTable[k][j] =  (double) ((JSONArray) truthTable.get(k)).get(j);
-         }
+         interval = Math.toIntExact((long) json.get("telemetryInterval"));
       }
-   } // public void parseTruthTable(String fileName)
+      telemetry = new TrainingTelemetry((String) json.get("telemetryFileName"), format, interval,
+            json.containsKey("telemetryMBean") && (boolean) json.get("telemetryMBean"));
+   } // public void parseTelemetry(JSONObject json)
 
 /**
- * parses the possibleInputs json file using simple-json, assigns possibleInputSets array
+ * creates the checkpointer from the config: "checkpointFileName" is the base name of the checkpoint files, which are
+ * written every "checkpointInterval" epochs and/or every "checkpointSeconds" seconds, and "resumeFromCheckpoint" continues
+ * training from the latest checkpoint written under that name. Without a checkpointFileName no checkpoints are written
  */
-   public void parseInputs(String fileName)
+   public void parseCheckpoints(JSONObject json)
    {
-      Object obj = null;
-      JSONObject json = null;
-      JSONArray inputs;
-      int j;
-      int k;
+      int interval = 0;
+      int seconds = 0;
 
-      try
+      resumeFromCheckpoint = json.containsKey("resumeFromCheckpoint") && (boolean) json.get("resumeFromCheckpoint");
+      if (!json.containsKey("checkpointFileName"))
       {
-         obj = new JSONParser().parse(new FileReader(fileName));
-      } catch (Exception e)
+         if (resumeFromCheckpoint)
+         {
+            System.out.println("resumeFromCheckpoint needs the checkpointFileName of the checkpoints to resume from!");
+            System.exit(0);
+         }
+         return;
+      }
+
+      if (json.containsKey("checkpointInterval"))
       {
-         e.printStackTrace();
+         interval = Math.toIntExact((long) json.get("checkpointInterval"));
       }
-      json = (JSONObject) obj;
-      inputs = (JSONArray) json.get("possibleInputs");
+      if (json.containsKey("checkpointSeconds"))
+      {
+         seconds = Math.toIntExact((long) json.get("checkpointSeconds"));
+      }
+      checkpointer = new Checkpointer((String) json.get("checkpointFileName"), interval, seconds, json, optimizer);
+   } // public void parseCheckpoints(JSONObject json)
 
-      for (k = 0; k < inputs.size(); k++) 
+/**
+ * reads the validation settings from the config: "validationInputFileName" and "validationTruthTableFileName" name the
+ * input list and truth table of a held-out validation set in the formats of inputFileName and truthTableFileName, which is
+ * validated every "validationInterval" epochs (default 1). Training stops early after "validationPatience" validations in
+ * a row without an improvement (default 10, 0 for never). Without a validationInputFileName nothing is validated
+ */
+   public void parseValidation(JSONObject json)
+   {
+      validationInputFileName = (String) json.get("validationInputFileName");
+      validationTruthTableFileName = (String) json.get("validationTruthTableFileName");
+      if (validationInputFileName != null && validationTruthTableFileName == null)
       {
-         possibleInputs[k] = parseInputFile((String) inputs.get(k));
+         System.out.println("validationInputFileName needs a validationTruthTableFileName!");
+         System.exit(0);
       }
-   } // public void parseInputs(String fileName)
 
+      validationInterval = 1;
+      if (json.containsKey("validationInterval"))
+      {
+         validationInterval = Math.toIntExact((long) json.get("validationInterval"));
+      }
+      validationPatience = 10;
+      if (json.containsKey("validationPatience"))
+      {
+         validationPatience = Math.toIntExact((long) json.get("validationPatience"));
+      }
+   } // public void parseValidation(JSONObject json)
 
-   public double[] parseInputFile(String fileName)
+/**
+ * creates the pruner from the config: weights with an absolute value below "pruneThreshold", and the fraction
+ * "pruneSparsity" of the weights of each layer with the smallest absolute values, are pruned after training or, in run
+ * mode, after the weights are loaded. With "pruneInterval" they are also pruned every that many epochs while training.
+ * "pruneLayers" lists the layers of weights to prune, counting from 0 at the input layer, and defaults to all of them.
+ * Pruned layers with at most the fraction "sparseDensity" of their weights left are run in compressed form. Without a
+ * pruneThreshold or pruneSparsity nothing is pruned
+ */
+   public void parsePruning(JSONObject json)
    {
-      double[] ret = new double[numInputs];
-      int count = 0;
-      BufferedReader reader = null;
-      try
+      double threshold = 0.0;
+      double sparsity = 0.0;
+      int interval = 0;
+      boolean[] layers = new boolean[numLayers];
+      JSONArray selected;
+      int l;
+
+      if (json.containsKey("pruneThreshold"))
       {
-         reader = new BufferedReader(new FileReader(fileName));
+         threshold = (double) json.get("pruneThreshold");
       }
-      catch (Exception e)
+      if (json.containsKey("pruneSparsity"))
       {
-         e.printStackTrace();
+         sparsity = (double) json.get("pruneSparsity");
+      }
+      if (sparsity < 0.0 || sparsity >= 1.0)
+      {
+         System.out.println("\"pruneSparsity\" must be at least 0 and less than 1!");
+         System.exit(0);
+      }
+      sparseDensity = 0.3;
+      if (json.containsKey("sparseDensity"))
+      {
+         sparseDensity = (double) json.get("sparseDensity");
+      }
+      if (threshold <= 0.0 && sparsity == 0.0)
+      {
+         return;
       }
 
-      String line = null;
-      try {
-         line = reader.readLine();
-      } catch (IOException e) {
-         // TODO Auto-generated catch block
-         e.printStackTrace();
+      if (json.containsKey("pruneInterval"))
+      {
+         interval = Math.toIntExact((long) json.get("pruneInterval"));
       }
-      while (line != null)
+      if (json.containsKey("pruneLayers"))
       {
-         ret[count] = Double.parseDouble(line);
-         count++;
-         try {
-            line = reader.readLine();
-         } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+         selected = (JSONArray) json.get("pruneLayers");
+         for (l = 0; l < selected.size(); l++)
+         {
+            layers[Math.toIntExact((long) selected.get(l))] = true;
          }
       }
-      try {
-         reader.close();
-      } catch (IOException e) {
-         // TODO Auto-generated catch block
-         e.printStackTrace();
+      else
+      {
+         Arrays.fill(layers, true);
       }
-      return ret;
-
-
-   }
+      pruner = new Pruner(threshold, sparsity, interval, layers);
+   } // public void parsePruning(JSONObject json)
 
 /**
- * saves the weights to a given file in json format
- * @param fileName file to be saved to
+ * creates the optimizer and the learning rate schedule from the config: "optimizer" is "sgd" (the default), "momentum",
+ * "nesterov", "rmsprop" or "adam", tuned by "momentum" (default 0.9), "squareDecay" (default 0.9 for rmsprop, 0.999 for
+ * adam) and "epsilon" (default 1e-8). "learningRateSchedule" is "constant" (the default), "step", "exponential" or
+ * "cosine", decaying lambda by "learningRateDecay" (default 0.5 for step, 0.999 for exponential) every
+ * "learningRateStepEpochs" epochs (default 1000) or every epoch, down to "minLambda" (default 0), after "warmupEpochs"
+ * epochs (default 0) of warm up. Plain gradient descent with a constant lambda creates neither
  */
-   public void saveWeights(String fileName)
+   public void parseOptimizer(JSONObject json)
    {
-      JSONObject output = new JSONObject();
-      JSONArray weightsmk = new JSONArray();
-      JSONArray weightskj = new JSONArray();
-      JSONArray weightsji = new JSONArray();
-      JSONArray tempweights = new JSONArray();
-      PrintWriter pw = null;
-      int k;
-      int j;
-      int i;
-      int m;
+      Optimizer.Type type = null;
+      LearningRateSchedule.Type schedule = LearningRateSchedule.Type.CONSTANT;
+      double momentum = 0.9;
+      double squareDecay;
+      double epsilon = 1e-8;
+      double decay;
+      double minLambda = 0.0;
+      int stepEpochs = 1000;
+      int warmupEpochs = 0;
 
       try
       {
-         pw = new PrintWriter(fileName);
+         if (json.containsKey("optimizer"))
+         {
+            type = Optimizer.parseType((String) json.get("optimizer"));
+         }
+         if (json.containsKey("learningRateSchedule"))
+         {
+            schedule = LearningRateSchedule.Type.valueOf(((String) json.get("learningRateSchedule")).toUpperCase());
+         }
       }
-      catch(Exception e)
+      catch (IllegalArgumentException e)
       {
-         e.printStackTrace();
+         System.out.println("\"optimizer\" must be \"sgd\", \"momentum\", \"nesterov\", \"rmsprop\" or \"adam\" and "
+               + "\"learningRateSchedule\" must be \"constant\", \"step\", \"exponential\" or \"cosine\"!");
          System.exit(0);
       }
 
-      for (m = 0; m < weights0.length; m++)
+      if (type != null)
       {
-         tempweights = new JSONArray();
-         for (k = 0; k < weights0[m].length; k++)
+         squareDecay = type == Optimizer.Type.ADAM ? 0.999 : 0.9;
+         if (json.containsKey("momentum"))
+         {
+            momentum = (double) json.get("momentum");
+         }
+         if (json.containsKey("squareDecay"))
+         {
+            squareDecay = (double) json.get("squareDecay");
+         }
+         if (json.containsKey("epsilon"))
          {
-            tempweights.add(weights0[m][k]);
+            epsilon = (double) json.get("epsilon");
          }
-         weightsmk.add(tempweights);
+         optimizer = new Optimizer(type, momentum, squareDecay, epsilon, layerSizes);
       }
 
-      for (k = 0; k < weights1.length; k++)
+      decay = schedule == LearningRateSchedule.Type.EXPONENTIAL ? 0.999 : 0.5;
+      if (json.containsKey("learningRateDecay"))
       {
-         tempweights = new JSONArray();
-         for (j = 0; j < weights1[k].length; j++)
+         decay = (double) json.get("learningRateDecay");
+      }
+      if (json.containsKey("learningRateStepEpochs"))
+      {
+         stepEpochs = Math.toIntExact((long) json.get("learningRateStepEpochs"));
+      }
+      if (json.containsKey("minLambda"))
+      {
+         minLambda = (double) json.get("minLambda");
+      }
+      if (json.containsKey("warmupEpochs"))
+      {
+         warmupEpochs = Math.toIntExact((long) json.get("warmupEpochs"));
+      }
+      if (stepEpochs < 1 || warmupEpochs < 0)
+      {
+         System.out.println("\"learningRateStepEpochs\" must be at least 1 and \"warmupEpochs\" at least 0!");
+         System.exit(0);
+      }
+      if (schedule != LearningRateSchedule.Type.CONSTANT || warmupEpochs > 0)
+      {
+         learningRateSchedule = new LearningRateSchedule(schedule, lambda, minLambda, decay, stepEpochs, warmupEpochs,
+               maxIterations);
+      }
+   } // public void parseOptimizer(JSONObject json)
+
+/**
+ * reads the settings of multi-process training from the config: "distributedWorkers" worker processes each train on one
+ * shard of the possible inputs and exchange gradients with this process, the coordinator, which listens on
+ * "distributedPort" (default 0, any free port). "distributedStaleness" is the number of rounds a worker may run ahead of
+ * the slowest one (default 0, synchronous). The coordinator starts the workers itself unless "launchWorkers" is false,
+ * adding "workerJvmOptions" to their command lines. Without distributedWorkers training stays in this process
+ */
+   public void parseDistributed(JSONObject json)
+   {
+      JSONArray options;
+      int k;
+
+      if (!json.containsKey("distributedWorkers"))
+      {
+         return;
+      }
+      distributedWorkers = Math.toIntExact((long) json.get("distributedWorkers"));
+      distributedPort = 0;
+      if (json.containsKey("distributedPort"))
+      {
+         distributedPort = Math.toIntExact((long) json.get("distributedPort"));
+      }
+      distributedStaleness = 0;
+      if (json.containsKey("distributedStaleness"))
+      {
+         distributedStaleness = Math.toIntExact((long) json.get("distributedStaleness"));
+      }
+      launchWorkers = !json.containsKey("launchWorkers") || (boolean) json.get("launchWorkers");
+      options = (JSONArray) json.get("workerJvmOptions");
+      workerJvmOptions = new String[options == null ? 0 : options.size()];
+      for (k = 0; k < workerJvmOptions.length; k++)
+      {
+         workerJvmOptions[k] = (String) options.get(k);
+      }
+   } // public void parseDistributed(JSONObject json)
+
+/**
+ * reads the augmentation settings from the config: every epoch also trains "augmentedSetsPerEpoch" random variants of the
+ * possible inputs, made by "augmentThreads" producer threads (default 2) in chunks of "augmentChunkSize" input sets
+ * (default 64), each producer up to "augmentQueueDepth" chunks ahead (default 2). A variant is rotated by up to
+ * "augmentMaxRotation" degrees, shifted by up to "augmentMaxShift" pixels, has its contrast changed by up to the fraction
+ * "augmentContrast" and Gaussian noise of standard deviation "augmentNoise" added (all default 0). "augmentSeed" seeds
+ * the variants and defaults to a random seed. The input sets are taken to be images of imageWidth x imageHeight pixels.
+ * Without augmentedSetsPerEpoch nothing is augmented
+ */
+   public void parseAugmentation(JSONObject json)
+   {
+      if (!json.containsKey("augmentedSetsPerEpoch"))
+      {
+         return;
+      }
+      augmentedSetsPerEpoch = Math.toIntExact((long) json.get("augmentedSetsPerEpoch"));
+      if (imageLoader.width <= 0 || streamInputs)
+      {
+         System.out.println("Augmentation needs in-memory inputs (no streamInputs) that are images, give imageWidth and "
+               + "imageHeight if numInputs is not a square number!");
+         System.exit(0);
+      }
+
+      augmentChunkSize = 64;
+      if (json.containsKey("augmentChunkSize"))
+      {
+         augmentChunkSize = Math.toIntExact((long) json.get("augmentChunkSize"));
+      }
+      augmentChunkSize = Math.min(augmentChunkSize, augmentedSetsPerEpoch);
+      augmentThreads = 2;
+      if (json.containsKey("augmentThreads"))
+      {
+         augmentThreads = Math.toIntExact((long) json.get("augmentThreads"));
+      }
+      augmentQueueDepth = 2;
+      if (json.containsKey("augmentQueueDepth"))
+      {
+         augmentQueueDepth = Math.toIntExact((long) json.get("augmentQueueDepth"));
+      }
+      if (json.containsKey("augmentMaxShift"))
+      {
+         augmentMaxShift = (double) json.get("augmentMaxShift");
+      }
+      if (json.containsKey("augmentMaxRotation"))
+      {
+         augmentMaxRotation = (double) json.get("augmentMaxRotation");
+      }
+      if (json.containsKey("augmentContrast"))
+      {
+         augmentContrast = (double) json.get("augmentContrast");
+      }
+      if (json.containsKey("augmentNoise"))
+      {
+         augmentNoise = (double) json.get("augmentNoise");
+      }
+      augmentSeed = System.nanoTime();
+      if (json.containsKey("augmentSeed"))
+      {
+         augmentSeed = (long) json.get("augmentSeed");
+      }
+   } // public void parseAugmentation(JSONObject json)
+
+/**
+ * reads the activation function of every layer from the config: "activation" names one function for every layer, while
+ * "activations" lists one per layer of weights, from the first hidden layer to the output layer. The sigmoid is used when
+ * neither is given
+ */
+   public void parseActivations(JSONObject json)
+   {
+      JSONArray names;
+      int l;
+
+      activationFunctions = new Activation[numLayers];
+      try
+      {
+         for (l = 0; l < activationFunctions.length; l++)
+         {
+            activationFunctions[l] = Activation.SIGMOID;
+            if (json.containsKey("activation"))
+            {
+               activationFunctions[l] = Activation.forName((String) json.get("activation"));
+            }
+         }
+
+         if (json.containsKey("activations"))
+         {
+            names = (JSONArray) json.get("activations");
+            if (names.size() != activationFunctions.length)
+            {
+               throw new IllegalArgumentException("\"activations\" must name " + activationFunctions.length
+                     + " activation functions, one per layer!");
+            }
+            for (l = 0; l < activationFunctions.length; l++)
+            {
+               activationFunctions[l] = Activation.forName((String) names.get(l));
+            }
+         } // if (json.containsKey("activations"))
+      } // try
+      catch (Exception e)
+      {
+         e.printStackTrace();
+         System.exit(0);
+      }
+   } // public void parseActivations(JSONObject json)
+
+
+/**
+ * parses the json weights file using simple-json, assigns the arrays of weights. The weights of a network with three
+ * layers of weights are stored under "weightsmk", "weightskj" and "weightsji", and those of any other depth as one array
+ * "weights" with an entry per layer of weights. Each layer is an array holding, for every node of the earlier layer, the
+ * weights to every node of the later layer
+ */
+   public void parseWeightsFile(String fileName) throws Exception
+   {
+      Object obj = null;
+      JSONObject json = null;
+      JSONArray[] layers = new JSONArray[numLayers];
+      JSONArray row;
+      int l;
+      int from;
+      int to;
+
+      try
+      {
+         obj = new JSONParser().parse(new FileReader(fileName));
+      } catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+      json = (JSONObject) obj;
+
+      for (l = 0; l < numLayers; l++)
+      {
+         if (numLayers == LEGACY_WEIGHT_KEYS.length)
+         {
+            layers[l] = (JSONArray) json.get(LEGACY_WEIGHT_KEYS[l]);
+         }
+         else if (json.containsKey("weights") && ((JSONArray) json.get("weights")).size() == numLayers)
+         {
+            layers[l] = (JSONArray) ((JSONArray) json.get("weights")).get(l);
+         }
+
+         if (layers[l] == null || layers[l].size() != weights[l].numFrom
+               || ((JSONArray) layers[l].get(0)).size() != weights[l].numTo) //check if dimensions of weights file are accurate
+         {
+            throw new Exception("Weights file does not match dimensionality in config file!");
+         }
+      } // for (l = 0; l < numLayers; l++)
+
+      for (l = 0; l < numLayers; l++)
+      {
+         for (from = 0; from < weights[l].numFrom; from++) 
+         {
+            row = (JSONArray) layers[l].get(from);
+            for (to = 0; to < weights[l].numTo; to++)
+            {
+               weights[l].set(from, to, (double) row.get(to));
+            }
+         }
+      } // for (l = 0; l < numLayers; l++)
+   } // public void parseWeightsFile(String fileName) throws Exception
+
+/**
+ * parses the truthTable json file using simple-json, assigns values to truthTable array
+ */
+   public void parseTruthTable(String fileName)
+   {
+      parseTruthTable(fileName, truthTable);
+   }
+
+/**
+ * parses a truth table json file using simple-json into the rows of the given table
+ */
+   public void parseTruthTable(String fileName, double[][] table)
+   {
+      
+      Object obj = null;
+      JSONObject json = null;
+      JSONArray truthTable;
+      int j;
+      int k;
+
+      try
+      {
+         obj = new JSONParser().parse(new FileReader(fileName));
+      } catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+
+      json = (JSONObject) obj;
+      truthTable = (JSONArray) json.get("truthTable");
+
+      for (k = 0; k < truthTable.size(); k++) 
+      {
+         for (j = 0; j < ((JSONArray) truthTable.get(k)).size(); j++)
+         {
+            table[k][j] =  (double) ((JSONArray) truthTable.get(k)).get(j);
+         }
+      }
+   } // public void parseTruthTable(String fileName, double[][] table)
+
+/**
+ * reads the image settings from the config: "imageDirectory" names a directory whose images, sorted by name, are the
+ * possible inputs in place of the files listed in inputFileName. Images, whether found there or listed in an input list,
+ * are resized to "imageWidth" x "imageHeight" pixels, which default to a square of numInputs pixels, and with
+ * "invertImages" (the default) dark pixels become large inputs, as in the .in files made from images/photos_cleaned
+ */
+   public void parseImages(JSONObject json)
+   {
+      int side = (int) Math.round(Math.sqrt(numInputs));
+      int width = side * side == numInputs ? side : 0;
+      int height = width;
+
+      imageDirectory = (String) json.get("imageDirectory");
+      if (json.containsKey("imageWidth") || json.containsKey("imageHeight"))
+      {
+         width = Math.toIntExact((long) json.get("imageWidth"));
+         height = Math.toIntExact((long) json.get("imageHeight"));
+         if (width * height != numInputs)
+         {
+            System.out.println("imageWidth (" + width + ") times imageHeight (" + height + ") must be numInputs ("
+                  + numInputs + ")!");
+            System.exit(0);
+         }
+      }
+      imageLoader = new ImageLoader(width, height, !json.containsKey("invertImages") || (boolean) json.get("invertImages"));
+   } // public void parseImages(JSONObject json)
+
+/**
+ * reads a list of input files into the rows of an input matrix. The files are independent of each other, so they are
+ * spread over all cores, one contiguous range of the list per core
+ * @param fileNames input files, text or image, one per row of inputs
+ * @param inputs receives the input sets, inputs[k] is replaced by the input set of fileNames[k]
+ */
+   public void parseInputs(String[] fileNames, double[][] inputs)
+   {
+      Parallel.forEachRange(ForkJoinPool.commonPool(), fileNames.length,
+            Math.min(fileNames.length, Runtime.getRuntime().availableProcessors()), (start, end) ->
+      {
+         int k;
+
+         for (k = start; k < end; k++)
+         {
+            inputs[k] = parseInputFile(fileNames[k]);
+         }
+      });
+   } // public void parseInputs(String[] fileNames, double[][] inputs)
+
+/**
+ * returns the files of the possible inputs: the images of imageDirectory if one is configured, otherwise the files listed
+ * in inputFileName
+ */
+   public String[] inputFileNames()
+   {
+      String[] fileNames = null;
+
+      if (imageDirectory == null)
+      {
+         return parseInputFileNames(inputFileName);
+      }
+
+      try
+      {
+         fileNames = ImageLoader.listImages(imageDirectory);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+         System.exit(0);
+      }
+      if (fileNames.length != numDatasetSets)
+      {
+         System.out.println("<" + imageDirectory + "> holds " + fileNames.length + " images, but numPossibleInputs is "
+               + numDatasetSets + "!");
+         System.exit(0);
+      }
+      return fileNames;
+   } // public String[] inputFileNames()
+
+/**
+ * parses the possibleInputs json file using simple-json, returns the names of the input files it lists
+ */
+   public String[] parseInputFileNames(String fileName)
+   {
+      Object obj = null;
+      JSONObject json = null;
+      JSONArray inputs;
+      String[] fileNames;
+      int k;
+
+      try
+      {
+         obj = new JSONParser().parse(new FileReader(fileName));
+      } catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+      json = (JSONObject) obj;
+      inputs = (JSONArray) json.get("possibleInputs");
+
+      fileNames = new String[inputs.size()];
+      for (k = 0; k < inputs.size(); k++) 
+      {
+         fileNames[k] = (String) inputs.get(k);
+      }
+      return fileNames;
+   } // public String[] parseInputFileNames(String fileName)
+
+
+/**
+ * parses one input file, one input value per line, or loads an image file through the ImageLoader
+ * @param fileName input file (*.in) or image file (*.bmp, *.png, *.jpg, *.jpeg, *.gif)
+ * @return array of numInputs input values
+ */
+   public double[] parseInputFile(String fileName)
+   {
+      double[] ret = new double[numInputs];
+      int count = 0;
+      BufferedReader reader = null;
+
+      if (ImageLoader.isImage(fileName))
+      {
+         try
+         {
+            return imageLoader.load(fileName);
+         }
+         catch (IOException e)
+         {
+            System.out.println(e.getMessage());
+            System.exit(0);
+         }
+      }
+
+      try
+      {
+         reader = new BufferedReader(new FileReader(fileName));
+      }
+      catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+
+      String line = null;
+      try {
+         line = reader.readLine();
+      } catch (IOException e) {
+         // TODO Auto-generated catch block
+         e.printStackTrace();
+      }
+      while (line != null)
+      {
+         ret[count] = Double.parseDouble(line);
+         count++;
+         try {
+            line = reader.readLine();
+         } catch (IOException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+         }
+      }
+      try {
+         reader.close();
+      } catch (IOException e) {
+         // TODO Auto-generated catch block
+         e.printStackTrace();
+      }
+      return ret;
+   } // public double[] parseInputFile(String fileName)
+
+/**
+ * fills the truth table and possible inputs. Without a datasetCacheFileName the json, text and image files are parsed
+ * directly.
+ * Otherwise the packed cache is memory-mapped if it is newer than the input list, the truth table and every input file;
+ * if it is missing, stale or unreadable, the text sources are parsed and the cache is rewritten for the next run
+ */
+   public void loadDataset()
+   {
+      String[] inputFiles;
+      String[] sources;
+
+      inputFiles = inputFileNames();
+      if (numPossibleInputSets < numDatasetSets)
+      {
+         loadShard(inputFiles);
+         return;
+      }
+      if (datasetCacheFileName == null)
+      {
+         parseTruthTable(truthTableFileName);
+         parseInputs(inputFiles, possibleInputs);
+         return;
+      }
+
+      sources = datasetSources(inputFiles);
+
+      if (DatasetCache.isFresh(datasetCacheFileName, sources))
+      {
+         try
+         {
+            DatasetCache.load(datasetCacheFileName, possibleInputs, truthTable);
+            System.out.println("Loaded dataset from cache <" + datasetCacheFileName + ">!\n");
+            return;
+         }
+         catch (Exception e)
+         {
+            System.out.println("Dataset cache <" + datasetCacheFileName + "> not used: " + e.getMessage());
+         }
+      } // if (DatasetCache.isFresh(datasetCacheFileName, sources))
+
+      parseTruthTable(truthTableFileName);
+      parseInputs(inputFiles, possibleInputs);
+
+      try
+      {
+         DatasetCache.write(datasetCacheFileName, numPossibleInputSets, numInputs, numOutputs, (index, input, target) ->
+         {
+            System.arraycopy(possibleInputs[index], 0, input, 0, numInputs);
+            System.arraycopy(truthTable[index], 0, target, 0, numOutputs);
+         });
+         System.out.println("Wrote dataset cache <" + datasetCacheFileName + ">!\n");
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   } // public void loadDataset()
+
+/**
+ * fills the truth table and possible inputs with the input sets of this network's shard only, reading their records
+ * from the dataset cache if it is fresh and parsing their files otherwise. The cache is never written here, since the
+ * shards of several processes are loaded at the same time
+ * @param inputFiles input files of every possible input
+ */
+   public void loadShard(String[] inputFiles)
+   {
+      double[][] table;
+
+      if (datasetCacheFileName != null && DatasetCache.isFresh(datasetCacheFileName, datasetSources(inputFiles)))
+      {
+         try
+         {
+            DatasetCache.load(datasetCacheFileName, possibleInputs, truthTable, shardStart, numDatasetSets);
+            return;
+         }
+         catch (Exception e)
+         {
+            System.out.println("Dataset cache <" + datasetCacheFileName + "> not used: " + e.getMessage());
+         }
+      }
+
+      table = new double[numDatasetSets][numOutputs];
+      parseTruthTable(truthTableFileName, table);
+      System.arraycopy(table, shardStart, truthTable, 0, numPossibleInputSets);
+      parseInputs(Arrays.copyOfRange(inputFiles, shardStart, shardStart + numPossibleInputSets), possibleInputs);
+   } // public void loadShard(String[] inputFiles)
+
+/**
+ * returns every file the dataset is parsed from: the input list (or the image directory), the truth table and each input
+ * file
+ * @param inputFiles input files of the possible inputs
+ */
+   public String[] datasetSources(String[] inputFiles)
+   {
+      String[] sources = new String[inputFiles.length + 2];
+
+      sources[0] = imageDirectory != null ? imageDirectory : inputFileName;
+      sources[1] = truthTableFileName;
+      System.arraycopy(inputFiles, 0, sources, 2, inputFiles.length);
+      return sources;
+   }
+
+/**
+ * opens the dataset cache for streaming, first rebuilding it if it is missing or stale. While rebuilding, the input files
+ * are parsed and written one at a time, so the whole set of possible inputs is never held in memory
+ */
+   public void openStreamingDataset() throws Exception
+   {
+      String[] inputFiles;
+
+      if (datasetCacheFileName == null)
+      {
+         throw new Exception("streamInputs requires a datasetCacheFileName to stream from!");
+      }
+
+      inputFiles = inputFileNames();
+      if (!DatasetCache.isFresh(datasetCacheFileName, datasetSources(inputFiles)))
+      {
+         truthTable = new double[numPossibleInputSets][numOutputs];
+         parseTruthTable(truthTableFileName);
+         DatasetCache.write(datasetCacheFileName, numPossibleInputSets, numInputs, numOutputs, (index, input, target) ->
+         {
+            System.arraycopy(parseInputFile(inputFiles[index]), 0, input, 0, numInputs);
+            System.arraycopy(truthTable[index], 0, target, 0, numOutputs);
+         });
+         truthTable = null;
+         System.out.println("Wrote dataset cache <" + datasetCacheFileName + ">!\n");
+      }
+
+      streamingDataset = new StreamingDataset(datasetCacheFileName, numPossibleInputSets, numInputs, numOutputs, streamChunkSize);
+   } // public void openStreamingDataset() throws Exception
+
+/**
+ * runs a task over every possible input set, either all at once when they are held in memory, or one streamed chunk at a
+ * time until a whole pass over the dataset has been made
+ * @param task work to be done on each group of input sets
+ * @return sum of the values returned by the task
+ */
+   public double forEachInputChunk(InputSetsTask task) throws Exception
+   {
+      double total = 0.0;
+      boolean last = false;
+      StreamingDataset.Chunk chunk;
+
+      if (streamingDataset == null)
+      {
+         return task.run(possibleInputs, truthTable, possibleInputs.length);
+      }
+
+      while (!last)
+      {
+         chunk = streamingDataset.next();
+         total += task.run(chunk.inputs, chunk.targets, chunk.count);
+         last = streamingDataset.isLastChunk(chunk);
+         streamingDataset.release(chunk);
+      }
+      return total;
+   } // public double forEachInputChunk(InputSetsTask task) throws Exception
+
+/**
+ * saves the weights to a given file in json format, in the layout parseWeightsFile reads
+ * @param fileName file to be saved to
+ */
+   public void saveWeights(String fileName)
+   {
+      JSONObject output = new JSONObject();
+      JSONArray layers = new JSONArray();
+      JSONArray layer;
+      JSONArray tempweights;
+      PrintWriter pw = null;
+      int l;
+      int from;
+      int to;
+
+      try
+      {
+         pw = new PrintWriter(fileName);
+      }
+      catch(Exception e)
+      {
+         e.printStackTrace();
+         System.exit(0);
+      }
+
+      for (l = 0; l < numLayers; l++)
+      {
+         layer = new JSONArray();
+         for (from = 0; from < weights[l].numFrom; from++)
+         {
+            tempweights = new JSONArray();
+            for (to = 0; to < weights[l].numTo; to++)
+            {
+               tempweights.add(weights[l].get(from, to));
+            }
+            layer.add(tempweights);
+         }
+         layers.add(layer);
+
+         if (numLayers == LEGACY_WEIGHT_KEYS.length)
+         {
+            output.put(LEGACY_WEIGHT_KEYS[l], layer);
+         }
+      } // for (l = 0; l < numLayers; l++)
+
+      if (numLayers != LEGACY_WEIGHT_KEYS.length)
+      {
+         output.put("weights", layers);
+      }
+
+      pw.write(output.toJSONString());
+      pw.flush();
+      pw.close();
+   } // public void saveWeights(String fileName)
+
+/**
+ * reads the weights from a file in the format selected by weightFormat, either JSON, binary or int8. The weights of an
+ * int8 file are dequantized into the double weights, and kept as the quantized model when precision is "int8"
+ * @param fileName weights file to be read
+ */
+   public void loadWeights(String fileName) throws Exception
+   {
+      QuantizedModel model;
+      WeightMatrix[] dequantized;
+      int l;
+
+      if (weightFormat.equals("binary"))
+      {
+         BinaryWeights.load(fileName, getWeightMatrices());
+      }
+      else if (weightFormat.equals("int8"))
+      {
+         model = QuantizedModel.load(fileName, layerSizes, activationFunctions);
+         dequantized = model.toWeightMatrices();
+         for (l = 0; l < numLayers; l++)
          {
-            tempweights.add(weights1[k][j]);
+            System.arraycopy(dequantized[l].data, 0, weights[l].data, 0, weights[l].data.length);
          }
-         weightskj.add(tempweights);
+         if (precision.equals("int8"))
+         {
+            quantizedModel = model;
+         }
+      }
+      else
+      {
+         parseWeightsFile(fileName);
+      }
+   } // public void loadWeights(String fileName) throws Exception
+
+/**
+ * saves the weights to a file in the format selected by weightFormat, either JSON, binary or int8
+ * @param fileName file to be saved to
+ */
+   public void storeWeights(String fileName)
+   {
+      try
+      {
+         if (weightFormat.equals("binary"))
+         {
+            BinaryWeights.save(fileName, getWeightMatrices());
+         }
+         else if (weightFormat.equals("int8"))
+         {
+            new QuantizedModel(getWeightMatrices(), activationFunctions, quantizePerColumn).save(fileName);
+         }
+         else
+         {
+            saveWeights(fileName);
+         }
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+         System.exit(0);
+      }
+   } // public void storeWeights(String fileName)
+
+/**
+ * asks for user input to determine the mode of the network (run or train)
+ */
+   public void inputMode()
+   {
+      Scanner scan = new Scanner(System.in);
+      int runMode = 0;
+      System.out.print("Would you like to RUN(1) or TRAIN(2) the network: ");
+      try 
+      {
+         runMode = scan.nextInt();
+      } 
+      catch (Exception e) 
+      {
+         e.printStackTrace();
+      }
+
+      while (runMode!=1 && runMode !=2)
+      {
+         System.out.println("Integer 1 or 2 not entered to determine network mode!");
+         System.out.print("Would you like to RUN(1) or TRAIN(2) the network: ");
+         try 
+         {
+            runMode = scan.nextInt();
+         } 
+         catch (Exception e) 
+         {
+            e.printStackTrace();
+         }
+      } //while (runMode!=1 && runMode !=2)
+      scan.close();
+
+      if (runMode==1)
+      {
+         System.out.println("Mode set to RUN!\n");
+         runTrain = mode.RUN;
+      }
+      else
+      {
+         System.out.println("Mode set to TRAIN!\n");
+         runTrain = mode.TRAIN;
+      }
+   } //public void inputMode()
+
+/**
+ * assigns all config values, sets the structure of the network and training hyperparameters
+ */
+   public void setConfigValues()
+   {
+      layerSizes = new int[] {2, 2, 2, 3};
+      numLayers = layerSizes.length - 1;
+      numInputs = 2;
+      maxErrorThreshold = 0.001;
+      lambda = 0.3;
+      maxIterations = 100000;
+      maxRandomWeight = 1.5;
+      minRandomWeight = 0.1;
+      numOutputs = 3;
+      numIterations = 0;
+   } //public void setConfigValues()
+
+
+/**
+ * echoes all config values assigned by setConfigValues()
+ */
+   public void echoConfigValues() 
+   {
+      int l;
+
+      System.out.println("Network Configuration:");
+      System.out.println("\tNumber of Inputs: " + numInputs);
+      for (l = 1; l < numLayers; l++)
+      {
+         System.out.println("\tNumber of Hidden Nodes in Hidden Layer " + l + ": " + layerSizes[l]);
+      }
+      System.out.println("\tNumber of Outputs: " + numOutputs);
+      System.out.println("\tPrecision: " + precision);
+      if (quantizedWeightsFileName != null)
+      {
+         System.out.println("\tQuantized Weights Export: <" + quantizedWeightsFileName + "> ("
+               + (quantizePerColumn ? "per column" : "per row") + " scales)");
+      }
+      System.out.print("\tActivation Functions: " + activationFunctions[0].configName);
+      for (l = 1; l < numLayers; l++)
+      {
+         System.out.print(", " + activationFunctions[l].configName);
+      }
+      System.out.println();
+
+      if (imageDirectory != null)
+      {
+         System.out.println("\tInput Images From: <" + imageDirectory + ">, resized to " + imageLoader.width + "x"
+               + imageLoader.height + (imageLoader.invert ? ", inverted" : ""));
+      }
+
+      if (streamInputs)
+      {
+         System.out.println("\tStreaming Inputs From: <" + datasetCacheFileName + "> in Chunks of " + streamChunkSize);
+      }
+
+      if (layerThreads > 1)
+      {
+         System.out.println("\tThreads per Layer: " + layerThreads + " (layers with at least " + parallelLayerThreshold + " weights)");
+      }
+
+      if (batchInference)
+      {
+         System.out.println("\tBatch Inference: tiles of " + InferenceModel.TILE_SIZE + " input sets");
+      }
+
+      if (pruner != null)
+      {
+         System.out.print("\tPruning: layers");
+         for (l = 0; l < numLayers; l++)
+         {
+            System.out.print(pruner.layers[l] ? " " + l : "");
+         }
+         System.out.println((pruner.threshold > 0.0 ? ", weights below " + pruner.threshold : "")
+               + (pruner.sparsity > 0.0 ? ", sparsity " + pruner.sparsity : "") + ", run sparse at density "
+               + sparseDensity + " or less");
+      }
+
+      System.out.println("\tLayer Kernels: " + (simd ? "SIMD (" + VectorKernels.SPECIES.length() + " doubles per vector)" : "scalar"));
+
+      if (runTrain.equals(mode.TRAIN))
+      {
+         System.out.println("\tError Threshold: " + maxErrorThreshold);
+         System.out.println("\tLambda (Learning Rate): " + lambda);
+         if (learningRateSchedule != null)
+         {
+            System.out.println("\tLearning Rate Schedule: " + learningRateSchedule.type.name().toLowerCase()
+                  + (learningRateSchedule.type == LearningRateSchedule.Type.STEP ? " (" + learningRateSchedule.decay
+                  + " every " + learningRateSchedule.stepEpochs + " epochs)" : "")
+                  + (learningRateSchedule.type == LearningRateSchedule.Type.EXPONENTIAL ? " (" + learningRateSchedule.decay
+                  + " every epoch)" : "")
+                  + (learningRateSchedule.type != LearningRateSchedule.Type.CONSTANT ? ", down to "
+                  + learningRateSchedule.minLambda : "")
+                  + (learningRateSchedule.warmupEpochs > 0 ? ", warming up over " + learningRateSchedule.warmupEpochs
+                  + " epochs" : ""));
+         }
+         if (optimizer != null)
+         {
+            System.out.println("\tOptimizer: " + optimizer.type.name().toLowerCase()
+                  + (optimizer.velocity != null ? ", momentum " + optimizer.momentum : "")
+                  + (optimizer.squares != null ? ", square decay " + optimizer.squareDecay + ", epsilon " + optimizer.epsilon
+                  : ""));
+         }
+         System.out.println("\tMaximum Number of Iterations: " + maxIterations);
+         System.out.println("\tBatch Size: " + batchSize);
+         System.out.println("\tNumber of Training Threads: " + numThreads);
+         if (telemetry.isEnabled())
+         {
+            System.out.println("\tTelemetry: every " + telemetry.getInterval() + " epochs"
+                  + (telemetry.fileName != null ? " to <" + telemetry.fileName + "> (" + telemetry.format + ")" : "")
+                  + (telemetry.registerMBean ? ", MBean " + TrainingTelemetry.MBEAN_NAME : ""));
+         }
+         if (checkpointer != null)
+         {
+            System.out.println("\tCheckpoints: <" + checkpointer.metadataFileName + ">"
+                  + (checkpointer.interval > 0 ? " every " + checkpointer.interval + " epochs" : "")
+                  + (checkpointer.seconds > 0 ? " every " + checkpointer.seconds + " seconds" : "")
+                  + (resumeFromCheckpoint ? ", resuming from the latest" : ""));
+         }
+         if (distributedWorkers > 0)
+         {
+            System.out.println("\tDistributed Training: " + distributedWorkers + " worker processes, "
+                  + (distributedStaleness > 0 ? "staleness up to " + distributedStaleness + " rounds" : "synchronous")
+                  + (launchWorkers ? "" : ", started by hand"));
+         }
+         if (augmentedSetsPerEpoch > 0)
+         {
+            System.out.println("\tAugmentation: " + augmentedSetsPerEpoch + " variants per epoch (rotation up to "
+                  + augmentMaxRotation + " degrees, shift up to " + augmentMaxShift + " pixels, contrast change up to "
+                  + augmentContrast + ", noise " + augmentNoise + "), " + augmentThreads + " producers, chunks of "
+                  + augmentChunkSize + ", seed " + augmentSeed);
+         }
+         if (pruner != null && pruner.interval > 0)
+         {
+            System.out.println("\tPruning While Training: every " + pruner.interval + " epochs");
+         }
+         if (validationInputFileName != null)
+         {
+            System.out.println("\tValidation: <" + validationInputFileName + "> every " + validationInterval + " epochs"
+                  + (validationPatience > 0 ? ", stopping after " + validationPatience + " validations without improvement"
+                  : ""));
+         }
+      }
+
+      if (!preLoadedWeights)
+      {
+         System.out.println("\tMaximum Initial Weight Value: " + maxRandomWeight);
+         System.out.println("\tMinimum Initial Weight Value: " + minRandomWeight);
+      }
+      else
+      {
+         System.out.println("\tUsing Preloaded Weights From: <" + weightFileName + "> (" + weightFormat + ")!");
+      }
+
+      System.out.println();
+
+   } //public void echoConfigValues()
+
+/**
+ * allocates space for all instance variable arrays, e.g. weights, a, h, f, t, etc.
+ */
+   public void allocate()
+   {
+      int l;
+
+      weights = new WeightMatrix[numLayers];
+      activations = new double[numLayers + 1][];
+      for (l = 0; l < numLayers + 1; l++)
+      {
+         activations[l] = new double[layerSizes[l]];
+         if (l < numLayers)
+         {
+            weights[l] = new WeightMatrix(layerSizes[l], layerSizes[l + 1]);
+         }
+      }
+      a = activations[0];
+      f = activations[numLayers];
+      t = new double[numOutputs];
+      if (!streamInputs && !sharedDataset && !weightsOnly && distributedWorkers == 0) // a coordinator loads it later
+      {
+         truthTable = new double[numPossibleInputSets][numOutputs];
+         possibleInputs = new double[numPossibleInputSets][numInputs];
+      }
+
+      if (layerThreads > 1)
+      {
+         layerPool = new ForkJoinPool(layerThreads);
+      }
+
+      if (runTrain.equals(mode.TRAIN))
+      {
+         omegas = new double[numLayers][];
+         psis = new double[numLayers][];
+         for (l = 0; l < numLayers; l++)
+         {
+            omegas[l] = new double[layerSizes[l + 1]];
+            psis[l] = new double[layerSizes[l + 1]];
+         }
+
+         if (numThreads > 1)
+         {
+            allocateWorkers();
+         }
+         else if (batchSize > 1 && distributedWorkers == 0) // distributed, the workers push the batches through the network
+         {
+            batchWorkspace = new BatchWorkspace(this, getWeightMatrices(), Math.min(batchSize, chunkCapacity()));
+            if (optimizer != null)
+            {
+               batchWorkspace.allocateGradients();
+            }
+         }
+      } // if (runTrain.equals(mode.TRAIN))
+      
+   } //public void allocate()
+
+/**
+ * creates the ForkJoinPool used for data-parallel training and one BatchWorkspace with private gradient matrices per worker,
+ * each large enough to hold its shard of a batch
+ */
+   public void allocateWorkers()
+   {
+      int worker;
+      int shardSize;
+
+      parallelBatchSize = batchSize > 1 ? Math.min(batchSize, chunkCapacity()) : chunkCapacity();
+      shardSize = (parallelBatchSize + numThreads - 1) / numThreads;
+      pool = new ForkJoinPool(numThreads);
+      workerWorkspaces = new BatchWorkspace[numThreads];
+
+      for (worker = 0; worker < numThreads; worker++)
+      {
+         workerWorkspaces[worker] = new BatchWorkspace(this, getWeightMatrices(), Math.max(shardSize, 1));
+         workerWorkspaces[worker].allocateGradients();
+      }
+   } // public void allocateWorkers()
+
+/**
+ * returns the largest number of input sets handed to training at once: all of them, or one chunk when streaming, or one
+ * chunk of augmented variants if that is larger
+ */
+   public int chunkCapacity()
+   {
+      return Math.max(streamInputs ? Math.min(streamChunkSize, numPossibleInputSets) : numPossibleInputSets,
+            augmentChunkSize);
+   }
+
+/**
+ * populates the truthtable and possible inputs with the training and testing data
+ */
+   public void populate()
+   {
+      if (streamInputs && !weightsOnly)
+      {
+         try
+         {
+            openStreamingDataset();
+         }
+         catch (Exception e)
+         {
+            e.printStackTrace();
+            System.exit(0);
+         }
+      }
+      else if (!sharedDataset && !weightsOnly && distributedWorkers == 0)
+      {
+         loadDataset();
+      }
+
+      if (!preLoadedWeights)
+      {
+         randomInitialization();
+      }
+      else
+      {
+         try
+         {
+            loadWeights(weightFileName);
+         }
+         catch (Exception e)
+         {
+            e.printStackTrace();
+            System.exit(0);
+         }
+      } // else
+
+      if (resumeFromCheckpoint)
+      {
+         resume();
+      }
+
+      if (validationInputFileName != null)
+      {
+         loadValidationSet();
+      }
+
+      if (augmentedSetsPerEpoch > 0)
+      {
+         startAugmentation();
+      }
+
+      if (distributedWorkers > 0)
+      {
+         startParameterServer();
       }
+   } // public void populate()
+
+/**
+ * parses the validation set and creates the validator that checks the network against it during training
+ */
+   public void loadValidationSet()
+   {
+      String[] inputFiles = parseInputFileNames(validationInputFileName);
+      double[][] inputs = new double[inputFiles.length][];
+      double[][] targets = new double[inputFiles.length][numOutputs];
+
+      parseInputs(inputFiles, inputs);
+      parseTruthTable(validationTruthTableFileName, targets);
+      validator = new Validator(inputs, targets, getWeightMatrices(), activationFunctions, simd, validationInterval,
+            validationPatience);
+   } // public void loadValidationSet()
+
+/**
+ * creates the augmenter, whose producer threads start making variants of the possible inputs right away
+ */
+   public void startAugmentation()
+   {
+      augmenter = new Augmenter(possibleInputs, truthTable, imageLoader.width, imageLoader.height, augmentedSetsPerEpoch,
+            augmentChunkSize, augmentThreads, augmentQueueDepth, augmentMaxShift, augmentMaxRotation, augmentContrast,
+            augmentNoise, augmentSeed);
+   }
 
-      
-      for (j = 0; j < weights2.length; j++)
+/**
+ * creates the parameter server coordinating the worker processes, starts them and waits until all of them have connected
+ */
+   public void startParameterServer()
+   {
+      if (configFileName == null)
       {
-         tempweights = new JSONArray();
-         for (i = 0; i < weights2[j].length; i++)
-         {
-            tempweights.add(weights2[j][i]);
-         }
-         weightsji.add(tempweights);
+         System.out.println("Distributed training needs a config file the workers can read!");
+         System.exit(0);
       }
 
-      output.put("weightsmk", weightsmk);
-      output.put("weightskj", weightskj);
-      output.put("weightsji", weightsji);
-
-      pw.write(output.toJSONString());
-      pw.flush();
-      pw.close();
-   } // public void saveWeights(String fileName)
+      parameterServer = new ParameterServer(getWeightMatrices(), optimizer, numPossibleInputSets, distributedWorkers,
+            batchSize, distributedStaleness);
+      try
+      {
+         parameterServer.start(configFileName, distributedPort, launchWorkers, workerJvmOptions);
+      }
+      catch (Exception e)
+      {
+         e.printStackTrace();
+         parameterServer.close();
+         System.exit(0);
+      }
+   } // public void startParameterServer()
 
 /**
- * asks for user input to determine the mode of the network (run or train)
+ * replaces the initial weights by those of the latest checkpoint and continues counting iterations from it, or keeps the
+ * initial weights if no checkpoint has been written yet
  */
-   public void inputMode()
+   public void resume()
    {
-      Scanner scan = new Scanner(System.in);
-      int runMode = 0;
-      System.out.print("Would you like to RUN(1) or TRAIN(2) the network: ");
-      try 
+      if (!checkpointer.exists())
       {
-         runMode = scan.nextInt();
-      } 
-      catch (Exception e) 
+         System.out.println("No checkpoint <" + checkpointer.metadataFileName + "> found, training from the initial weights.");
+         System.out.println();
+         return;
+      }
+
+      try
+      {
+         numIterations = checkpointer.resume(getWeightMatrices());
+      }
+      catch (Exception e)
       {
          e.printStackTrace();
+         System.exit(0);
       }
+      System.out.println("Resuming from checkpoint <" + checkpointer.lastWeightsFileName + "> after " + numIterations
+            + " iterations (error " + checkpointer.resumedError + ").");
+      System.out.println();
+   } // public void resume()
 
-      while (runMode!=1 && runMode !=2)
+/**
+ * This function generates a random double between maxRandomWeight and minRandomWeight
+ * Requires maxRandomWeight and minRandomWeight to both be doubles
+ * @return double random weight
+ */
+   public double getRandWeight() 
+   {
+      return (Math.random() * (maxRandomWeight-minRandomWeight)) + minRandomWeight;
+   }
+
+/**
+ * assigns random doubles ranging from minRandomWeight to maxRandomWeight to every weight matrix, in order from the input
+ * layer to the output layer. The method calls getRandWeight to generate the weights
+ * Requires maxRandomWeight and minRandomWeight to both be doubles
+ */
+   public void randomInitialization() 
+   {
+      int l;
+      int n;
+
+      for (l = 0; l < numLayers; l++)
       {
-         System.out.println("Integer 1 or 2 not entered to determine network mode!");
-         System.out.print("Would you like to RUN(1) or TRAIN(2) the network: ");
-         try 
-         {
-            runMode = scan.nextInt();
-         } 
-         catch (Exception e) 
+         for (n = 0; n < weights[l].data.length; n++)
          {
-            e.printStackTrace();
+            weights[l].data[n] = getRandWeight();
          }
-      } //while (runMode!=1 && runMode !=2)
-      scan.close();
+      }
+   } //public void randomInitialization()
 
-      if (runMode==1)
+/**
+ * returns true if the incubating Vector API module has been added to the running JVM, so VectorKernels can be loaded
+ */
+   public static boolean isVectorApiAvailable()
+   {
+      return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+   }
+
+/**
+ * computes the theta values of the layer fed through the given pruned weights, splitting its nodes into layerThreads
+ * ranges computed in parallel when the layer holds at least parallelLayerThreshold weights that are not zero
+ * @param weights weights between the two layers, in compressed form
+ * @param in activations of the earlier layer
+ * @param out receives the theta values of the later layer
+ */
+   public void multiplySparseLayer(SparseMatrix weights, double[] in, double[] out)
+   {
+      if (layerPool != null && weights.numNonZero() >= parallelLayerThreshold)
       {
-         System.out.println("Mode set to RUN!\n");
-         runTrain = mode.RUN;
+         Parallel.forEachRange(layerPool, weights.numTo, layerThreads, (start, end) -> weights.multiplyRows(in, out, start, end));
       }
       else
       {
-         System.out.println("Mode set to TRAIN!\n");
-         runTrain = mode.TRAIN;
+         weights.multiply(in, out);
       }
-   } //public void inputMode()
+   } // public void multiplySparseLayer(SparseMatrix weights, double[] in, double[] out)
 
 /**
- * assigns all config values, sets the structure of the network and training hyperparameters
+ * computes the theta values of the layer fed through the given weights, splitting its nodes into layerThreads ranges
+ * computed in parallel when the layer holds at least parallelLayerThreshold weights
+ * @param weights weights between the two layers
+ * @param in activations of the earlier layer
+ * @param out receives the theta values of the later layer
  */
-   public void setConfigValues()
+   public void multiplyLayer(WeightMatrix weights, double[] in, double[] out)
    {
-      numInputs = 2;
-      numHiddenNodes1 = 2;
-      numHiddenNodes2 = 2;
-      maxErrorThreshold = 0.001;
-      lambda = 0.3;
-      maxIterations = 100000;
-      maxRandomWeight = 1.5;
-      minRandomWeight = 0.1;
-      numOutputs = 3;
-      numIterations = 0;
-   } //public void setConfigValues()
-
+      if (layerPool != null && weights.data.length >= parallelLayerThreshold)
+      {
+         Parallel.forEachRange(layerPool, weights.numTo, layerThreads, (start, end) -> multiplyRows(weights, in, out, start, end));
+      }
+      else
+      {
+         multiplyRows(weights, in, out, 0, weights.numTo);
+      }
+   } // public void multiplyLayer(WeightMatrix weights, double[] in, double[] out)
 
 /**
- * echoes all config values assigned by setConfigValues()
+ * computes the theta values of the nodes start to end of the later layer with the SIMD or the scalar kernel
  */
-   public void echoConfigValues() 
+   public void multiplyRows(WeightMatrix weights, double[] in, double[] out, int start, int end)
    {
-      System.out.println("Network Configuration:");
-      System.out.println("\tNumber of Inputs: " + numInputs);
-      System.out.println("\tNumber of Hidden Nodes in First Hidden Layer: " + numHiddenNodes1);
-      System.out.println("\tNumber of Hidden Nodes in Second Hidden Layer: " + numHiddenNodes2);
-      System.out.println("\tNumber of Outputs: " + numOutputs);
-
-      if (runTrain.equals(mode.TRAIN))
+      if (simd)
       {
-         System.out.println("\tError Threshold: " + maxErrorThreshold);
-         System.out.println("\tLambda (Learning Rate): " + lambda);
-         System.out.println("\tMaximum Number of Iterations: " + maxIterations);
+         VectorKernels.multiplyRows(weights, in, out, start, end);
+      }
+      else
+      {
+         weights.multiplyRows(in, out, start, end);
       }
+   }
 
-      if (!preLoadedWeights)
+/**
+ * performs backpropagation through the weights of a layer with learning rate lambda, splitting the nodes of the earlier
+ * layer into layerThreads ranges processed in parallel when the layer holds at least parallelLayerThreshold weights
+ * @param layer index of the weights between the two layers, counting from 0 at the input layer
+ * @param in activations of the earlier layer
+ * @param psi psi values of the later layer
+ * @param omega receives the omega values of the earlier layer, null for the input layer
+ */
+   public void backpropagateLayer(int layer, double[] in, double[] psi, double[] omega)
+   {
+      if (layerPool != null && weights[layer].data.length >= parallelLayerThreshold)
       {
-         System.out.println("\tMaximum Initial Weight Value: " + maxRandomWeight);
-         System.out.println("\tMinimum Initial Weight Value: " + minRandomWeight);
+         Parallel.forEachRange(layerPool, weights[layer].numFrom, layerThreads,
+               (start, end) -> backpropagateColumns(layer, in, psi, omega, start, end));
       }
       else
       {
-         System.out.println("\tUsing Preloaded Weights From: <" + weightFileName + ">!");
+         backpropagateColumns(layer, in, psi, omega, 0, weights[layer].numFrom);
       }
-
-      System.out.println();
-
-   } //public void echoConfigValues()
+   } // public void backpropagateLayer(int layer, double[] in, double[] psi, double[] omega)
 
 /**
- * allocates space for all instance variable arrays, e.g. weights, a, h, f, t, etc.
+ * performs backpropagation for the nodes start to end of the earlier layer with the optimizer, if there is one, and
+ * otherwise with the SIMD or the scalar kernel
  */
-   public void allocate()
+   public void backpropagateColumns(int layer, double[] in, double[] psi, double[] omega, int start, int end)
    {
-      weights0 = new double[numInputs][numHiddenNodes1];
-      weights1 = new double[numHiddenNodes1][numHiddenNodes2];
-      weights2 = new double[numHiddenNodes2][numOutputs];
-      a = new double[numInputs];
-      h1 = new double[numHiddenNodes1];
-      h2 = new double[numHiddenNodes2];
-      f = new double[numOutputs];
-      t = new double[numOutputs];
-      truthTable = new double[numPossibleInputSets][numOutputs];
-      possibleInputs = new double[numPossibleInputSets][numInputs];
+      WeightMatrix weights = this.weights[layer];
 
-      if (runTrain.equals(mode.TRAIN))
+      if (optimizer != null)
       {
-         thetak = new double[numHiddenNodes1];
-         thetaj = new double[numHiddenNodes2];
-         thetai = new double[numOutputs];
-         psii = new double[numOutputs];
-         omegai = new double[numOutputs];
-         omegaj = new double[numHiddenNodes2];
-         psij = new double[numHiddenNodes2];
-         psik = new double[numHiddenNodes1];
-         omegak = new double[numHiddenNodes1];
-      } // if (runTrain.equals(mode.TRAIN))
-      
-   } //public void allocate()
+         optimizer.backpropagateColumns(layer, weights, in, psi, omega, lambda, start, end);
+      }
+      else if (simd)
+      {
+         VectorKernels.backpropagateColumns(weights, in, psi, omega, lambda, start, end);
+      }
+      else
+      {
+         weights.backpropagateColumns(in, psi, omega, lambda, start, end);
+      }
+   }
 
 /**
- * populates the truthtable and possible inputs with the training and testing data
+ * runs the network with the given weight values and inputs, updates the activations, f, and the output omega and psi values
+ * when training
+ * @param input inputs to be placed into the input array (a)
  */
-   public void populate()
+   public void runNetwork(double[] input)
    {
-      parseTruthTable(truthTableFileName);
-      parseInputs(inputFileName);
+      double[] omega = omegas[numLayers - 1];
+      int i;
 
-      if (!preLoadedWeights)
+      executeNetwork(input);
+      for (i = 0; i < numOutputs; i++)
       {
-         randomInitialization();
+         omega[i] = t[i] - f[i];
       }
-      else
+      activationFunctions[numLayers - 1].multiplyDerivative(f, omega, psis[numLayers - 1], numOutputs);
+
+   } // public void runNetwork(double[] input)
+
+/**
+ * executes the network with the given weight values and inputs, updates the activations and f, called when executing
+ * without training in mind. Each layer is computed into its preallocated activation array, which holds the theta values
+ * until the activation function is applied in place. Layers stored in compressed form after pruning use the sparse kernel
+ * @param input inputs to be placed into the input array (a)
+ */
+   public void executeNetwork(double[] input)
+   {
+      int l;
+
+      a = input;
+      activations[0] = input;
+
+      for (l = 0; l < numLayers; l++)
       {
-         try
+         if (sparseWeights != null && sparseWeights[l] != null)
          {
-            parseWeightsFile(weightFileName);
+            multiplySparseLayer(sparseWeights[l], activations[l], activations[l + 1]);
          }
-         catch (Exception e)
+         else
          {
-            e.printStackTrace();
-            System.exit(0);
+            multiplyLayer(weights[l], activations[l], activations[l + 1]);
          }
-      } // else
-   } // public void populate()
+         activationFunctions[l].applyInPlace(activations[l + 1], layerSizes[l + 1]);
+      }
+   } // public void executeNetwork(double[] input)
 
 /**
- * This function generates a random double between maxRandomWeight and minRandomWeight
- * Requires maxRandomWeight and minRandomWeight to both be doubles
- * @return double random weight
+ * returns the weight matrices of the network in order from the input layer to the output layer
  */
-   public double getRandWeight() 
+   public WeightMatrix[] getWeightMatrices()
    {
-      return (Math.random() * (maxRandomWeight-minRandomWeight)) + minRandomWeight;
+      return weights;
    }
 
 /**
- * assigns random doubles ranging from minRandomWeight to maxRandomWeight to the weight arrays
- * weights0 and weights1. The method calls getRandWeight to generate the weights
- * Requires maxRandomWeight and minRandomWeight to both be doubles
+ * returns an immutable InferenceModel holding a copy of the current weights, which many threads can run inputs through
+ * at once, unlike executeNetwork which writes into the fields of the network
  */
-   public void randomInitialization() 
+   public InferenceModel createInferenceModel()
    {
-      int k;
-      int i;
-      int j;
-      int m;
+      return new InferenceModel(getWeightMatrices(), activationFunctions, simd);
+   }
 
-      for (m = 0; m < weights0.length; m++)
+/**
+ * prepares run and report for batch inference: an InferenceModel sharing the current weights, which do not change while
+ * the network is only being run, and an output matrix large enough for one group of input sets
+ */
+   public void startBatchInference()
+   {
+      batchModel = InferenceModel.share(getWeightMatrices(), activationFunctions, simd);
+      if (batchOutputs == null)
       {
-         for (k = 0; k < weights0[m].length; k++)
-         {
-            weights0[m][k] = getRandWeight();
-         }
+         batchOutputs = new double[chunkCapacity()][numOutputs];
       }
+   }
 
-      for (k = 0; k < weights1.length; k++) 
+/**
+ * trains the network using the truth table and possible inputs, updates weights according to design document to minimize error
+ * updates t, weight arrays, and error instance variables
+ */
+   public void train() throws Exception
+   {
+      if (!runTrain.equals(mode.TRAIN))
       {
-         for (j = 0; j < weights1[k].length; j++)
-         {
-            weights1[k][j] = getRandWeight();
-         }
+         throw new Exception("train() called when network mode not set to TRAIN!");
       }
 
-      for (j = 0; j < weights2.length; j++) 
+      double totalError = Double.MAX_VALUE;
+      boolean stoppedEarly = false;
+      boolean completed = false;
+      boolean restored;
+      int finalIterations;
+      double startTime = System.currentTimeMillis();
+
+      thresholdTime = -1.0;
+      telemetry.open();
+      try
+      {
+         while (numIterations<maxIterations && totalError > maxErrorThreshold) 
+         {
+            if (learningRateSchedule != null)
+            {
+               lambda = learningRateSchedule.lambda(numIterations);
+            }
+            telemetry.startEpoch(numIterations + 1);
+            totalError = trainEpoch();
+            telemetry.endEpoch(totalError, numPossibleInputSets + augmentedSetsPerEpoch);
+            numIterations++;
+            if (totalError <= maxErrorThreshold)
+            {
+               thresholdTime = System.currentTimeMillis() - startTime;
+               thresholdIterations = numIterations;
+            }
+            if (pruner != null)
+            {
+               pruner.afterEpoch(getWeightMatrices(), numIterations);
+            }
+            if (checkpointer != null)
+            {
+               checkpointer.afterEpoch(getWeightMatrices(), numIterations, totalError);
+            }
+            if (validator != null)
+            {
+               validator.afterEpoch(getWeightMatrices(), numIterations, totalError);
+               if (validator.shouldStop())
+               {
+                  stoppedEarly = true;
+                  break;
+               }
+            }
+         } // while(numIterations<maxIterations && totalError > maxErrorThreshold)
+         completed = true;
+      }
+      finally
       {
-         for (i = 0; i < weights2[j].length; i++)
+         telemetry.close();
+         if (checkpointer != null) // the final weights are checkpointed unless an epoch was cut short
+         {
+            checkpointer.close(completed ? getWeightMatrices() : null, numIterations, totalError);
+         }
+         if (validator != null)
+         {
+            validator.close();
+         }
+         if (augmenter != null)
+         {
+            augmenter.close();
+         }
+         if (parameterServer != null) // the dataset is needed for pruning and the report once the workers have stopped
          {
-            weights2[j][i] = getRandWeight();
+            parameterServer.close();
+            truthTable = new double[numPossibleInputSets][numOutputs];
+            possibleInputs = new double[numPossibleInputSets][numInputs];
+            loadDataset();
          }
       }
 
-   } //public void randomInitialization()
+      error = totalError;
+      finalIterations = numIterations;
+      restored = validator != null && validator.restoreBest(getWeightMatrices(), numIterations, totalError);
+      if (restored) // the error and iterations reported are those of the weights kept
+      {
+         error = validator.best.trainingError;
+         numIterations = validator.best.numIterations;
+      }
+      if (quiet)
+      {
+         return;
+      }
+      System.out.println("Training results:");
+      if (totalError <= maxErrorThreshold) 
+      {
+         System.out.println("\tTraining concluded: error (" + totalError + ") has reached error threshold (" + maxErrorThreshold + ")");
+      }
 
-/**
- * return the sigmoid of the input double
- * @param x input into sigmoid function
- * @return double, return value of sigmoid
- */
-   public double activationFunction(double x) 
-   {
-      return 1.0/(1.0+Math.exp(-x));
-   }
+      if (finalIterations >= maxIterations ) 
+      {
+         System.out.println("\tNumber of iterations (" + finalIterations + ") has reached maximum iterations allowed (" + maxIterations + ")");
+      }
+
+      if (stoppedEarly)
+      {
+         System.out.println("\tStopped early: validation error has not improved for " + validationPatience + " validations");
+      }
+      if (parameterServer != null)
+      {
+         System.out.println("\tExchanged weights and gradients with " + distributedWorkers + " worker processes "
+               + parameterServer.numExchanges + " times, waited " + parameterServer.waitNanos / 1e6 + "ms for them");
+      }
+      if (augmenter != null)
+      {
+         System.out.println("\tTrained on " + augmenter.numSetsTaken + " augmented input sets, waited "
+               + augmenter.waitNanos / 1e6 + "ms for them");
+      }
+      if (restored)
+      {
+         System.out.println("\tRestored the weights with the lowest validation error (" + validator.bestError + " after "
+               + numIterations + " iterations, " + validator.numValidations + " validations) in place of the final weights "
+               + "(validation error " + validator.lastError + ", error " + totalError + " after " + finalIterations
+               + " iterations)");
+      }
+   } //public void train()
 
 /**
- * return the derivative of the sigmoid of the input double
- * @param x input into derivative of sigmoid function
- * @return double, return value of derivative of sigmoid
+ * runs one epoch of training over every possible input set, in memory or streamed chunk by chunk, followed by the
+ * augmented variants of the epoch if augmenting, or has the worker processes run it when training is distributed
+ * @return the summed error over every possible input set of the epoch; the error on the variants is not included, so
+ *         that it stays comparable with training without augmentation
  */
-   public double derivActivationFuncton(double x) 
+   public double trainEpoch() throws Exception
    {
-      double derivative = activationFunction(x);
-      return derivative*(1.0-derivative);
-   }
+      double totalError;
+
+      if (floatEngine != null)
+      {
+         return floatEngine.trainEpoch((float) lambda);
+      }
+      if (parameterServer != null)
+      {
+         return parameterServer.trainEpoch(lambda);
+      }
+      totalError = forEachInputChunk(this::trainInputs);
+      if (augmenter != null)
+      {
+         trainAugmented();
+      }
+      return totalError;
+   } // public double trainEpoch() throws Exception
 
 /**
- * runs the network with the given weight values and inputs, updates h, f, and stored theta, omega, psi values when training
- * @param input inputs to be placed into the input array (a)
- */
-   public void runNetwork(double[] input)
-   {
-      int j;
-      int i;
-      int k;
-      int m;
-      a = input;
+ * trains the network on the augmented variants of one epoch, chunk by chunk as the producers hand them over
+ */
+   public void trainAugmented() throws Exception
+   {
+      StreamingDataset.Chunk chunk;
+      int c;
 
-      for (k = 0; k < numHiddenNodes1; k++)
+      for (c = 0; c < augmenter.chunksPerEpoch(); c++)
       {
-         thetak[k] = 0.0;
-         for (m = 0; m < numInputs; m++)
-         {
-            thetak[k] += a[m] * weights0[m][k];
-         }
-         h1[k] = activationFunction(thetak[k]);
+         chunk = augmenter.next();
+         trainInputs(chunk.inputs, chunk.targets, chunk.count);
+         augmenter.release(chunk);
       }
+   } // public void trainAugmented() throws Exception
 
-      for (j = 0; j < numHiddenNodes2; j++)
+/**
+ * trains the network on a group of input sets using the configured training mode: data-parallel when numThreads is
+ * greater than 1, mini-batch when batchSize is greater than 1 and pattern by pattern otherwise
+ * @param inputs input sets to train on
+ * @param targets truth table rows matching the input sets
+ * @param numSets number of input sets to use from the start of inputs
+ * @return the summed error over every pattern
+ */
+   public double trainInputs(double[][] inputs, double[][] targets, int numSets)
+   {
+      if (numThreads > 1)
       {
-         thetaj[j] = 0.0;
-         for (k = 0; k < numHiddenNodes1; k++)
-         {
-            thetaj[j] += h1[k] * weights1[k][j];
-         }
-         h2[j] = activationFunction(thetaj[j]);
+         return trainParallel(inputs, targets, numSets);
       }
-
-      for (i = 0; i < numOutputs; i++)
+      else if (batchSize > 1)
       {
-         thetai[i] = 0.0;
-         for (j = 0; j < numHiddenNodes2; j++)
-         {
-            thetai[i] += h2[j] * weights2[j][i];
-         }
-         f[i] = activationFunction(thetai[i]);
-         omegai[i] = t[i] - f[i];
-         psii[i] = omegai[i] * derivActivationFuncton(thetai[i]);
-      } // for (i = 0; i < numOutputs; i++)
-
-   } // public void runNetwork(double[] input)
+         return trainBatches(inputs, targets, numSets);
+      }
+      return trainSequential(inputs, targets, numSets);
+   } // public double trainInputs(double[][] inputs, double[][] targets, int numSets)
 
 /**
- * executes the network with the given weight values and inputs, updates h, f, called when executing without training in mind
- * @param input inputs to be placed into the input array (a)
+ * trains the network pattern by pattern, running each input set through the network and updating the weights right after
+ * @param inputs input sets to train on
+ * @param targets truth table rows matching the input sets
+ * @param numSets number of input sets to use from the start of inputs
+ * @return the summed error over every pattern
  */
-   public void executeNetwork(double[] input)
+   public double trainSequential(double[][] inputs, double[][] targets, int numSets)
    {
-      int j;
+      double totalError = 0.0;
+      long time;
+      int inputNum;
       int i;
-      int k;
-      int m;
-      double theta1;
-      double theta2;
-      double theta3;
-      a = input;
 
-      for (k = 0; k < numHiddenNodes1; k++)
+      for (inputNum = 0; inputNum < numSets; inputNum++)
       {
-         theta1 = 0.0;
-         for (m = 0; m < numInputs; m++)
+         t = targets[inputNum];
+         time = telemetry.now();
+         runNetwork(inputs[inputNum]);
+         time = telemetry.record(TrainingTelemetry.FORWARD, time);
+         updateWeights(); // changes the weights during backpropagation
+         telemetry.record(TrainingTelemetry.BACKWARD, time);
+         for (i = 0; i < f.length; i++)
          {
-            theta1 += a[m] * weights0[m][k];
+            totalError += 0.5 * ((t[i] - f[i]) * (t[i] - f[i]));
          }
-         h1[k] = activationFunction(theta1);
-      }
+      } // for (inputNum = 0; inputNum < numSets; inputNum++)
+      return totalError;
+   } // public double trainSequential(double[][] inputs, double[][] targets, int numSets)
 
-      for (j = 0; j < numHiddenNodes2; j++)
+/**
+ * runs mini-batch training, splitting the input sets into consecutive batches of batchSize patterns. Each batch is pushed
+ * through the network as a whole and the weights are changed once by the summed updates of the batch
+ * @param inputs input sets to train on
+ * @param targets truth table rows matching the input sets
+ * @param numSets number of input sets to use from the start of inputs
+ * @return the summed error over every pattern
+ */
+   public double trainBatches(double[][] inputs, double[][] targets, int numSets)
+   {
+      double totalError = 0.0;
+      long time;
+      int start;
+      int count;
+
+      for (start = 0; start < numSets; start += batchSize)
       {
-         theta2 = 0.0;
-         for (k = 0; k < numHiddenNodes1; k++)
+         count = Math.min(batchSize, numSets - start);
+         time = telemetry.now();
+         totalError += batchWorkspace.forward(inputs, targets, start, count);
+         time = telemetry.record(TrainingTelemetry.FORWARD, time);
+         batchWorkspace.backward();
+         time = telemetry.record(TrainingTelemetry.BACKWARD, time);
+         if (optimizer != null)
          {
-            theta2 += h1[k] * weights1[k][j];
+            batchWorkspace.accumulateGradients();
+            optimizer.apply(getWeightMatrices(), batchWorkspace.gradients, lambda);
          }
-         h2[j] = activationFunction(theta2);
+         else
+         {
+            batchWorkspace.updateWeights(lambda);
+         }
+         telemetry.record(TrainingTelemetry.UPDATE, time);
       }
+      return totalError;
+   } // public double trainBatches(double[][] inputs, double[][] targets, int numSets)
 
-      for (i = 0; i < numOutputs; i++)
+/**
+ * runs data-parallel training. Every batch of parallelBatchSize patterns is split into numThreads fixed contiguous shards,
+ * one per worker. Each worker pushes its shard through the network with its own buffers and accumulates the gradient of
+ * the shard privately, then the gradients are combined by applyWorkerGradients
+ * @param inputs input sets to train on
+ * @param targets truth table rows matching the input sets
+ * @param numSets number of input sets to use from the start of inputs
+ * @return the summed error over every pattern, added up in worker order
+ */
+   public double trainParallel(double[][] inputs, double[][] targets, int numSets)
+   {
+      double totalError = 0.0;
+      double[] workerErrors = new double[numThreads];
+      long[] workerForwardNanos = new long[numThreads];
+      long[] workerBackwardNanos = new long[numThreads];
+      long time;
+      int start;
+      int count;
+      int worker;
+
+      for (start = 0; start < numSets; start += parallelBatchSize)
       {
-         theta3 = 0.0;
-         for (j = 0; j < numHiddenNodes2; j++)
+         final int batchStart = start;
+         count = Math.min(parallelBatchSize, numSets - start);
+         final int batchCount = count;
+
+         time = telemetry.now();
+         Parallel.forEachRange(pool, numThreads, numThreads, (first, last) ->
          {
-            theta3 += h2[j] * weights2[j][i];
-         }
-         f[i] = activationFunction(theta3);
-      } // for (i = 0; i < numOutputs; i++)
+            int w;
+            int shardStart;
+            int shardEnd;
+            long workerTime;
+            BatchWorkspace ws;
 
+            for (w = first; w < last; w++)
+            {
+               ws = workerWorkspaces[w];
+               shardStart = Parallel.rangeStart(batchCount, numThreads, w);
+               shardEnd = Parallel.rangeStart(batchCount, numThreads, w + 1);
+               ws.count = 0;
+               workerErrors[w] = 0.0;
+               workerForwardNanos[w] = 0L;
+               workerTime = telemetry.now();
+               if (shardEnd > shardStart) // a worker without patterns contributes a zero gradient
+               {
+                  workerErrors[w] = ws.forward(inputs, targets, batchStart + shardStart, shardEnd - shardStart);
+                  workerForwardNanos[w] = telemetry.now() - workerTime;
+                  workerTime += workerForwardNanos[w];
+                  ws.backward();
+               }
+               ws.accumulateGradients();
+               workerBackwardNanos[w] = telemetry.now() - workerTime;
+            }
+         });
 
-   } // public void executeNetwork(double[] input)
+         telemetry.recordShared(time, workerForwardNanos, workerBackwardNanos);
+         time = telemetry.now();
+         applyWorkerGradients();
+         telemetry.record(TrainingTelemetry.UPDATE, time);
+         for (worker = 0; worker < numThreads; worker++)
+         {
+            totalError += workerErrors[worker];
+         }
+      } // for (start = 0; start < numSets; start += parallelBatchSize)
+      return totalError;
+   } // public double trainParallel(double[][] inputs, double[][] targets, int numSets)
 
 /**
- * trains the network using the truth table and possible inputs, updates weights according to design document to minimize error
- * updates t, weight arrays, and error instance variables
+ * changes every weight by lambda times the sum of the workers' gradients for that weight. The gradients are always added
+ * in worker order, so the reduction is deterministic; different ranges of each weight matrix are reduced in parallel.
+ * With an optimizer the sums are gathered in the gradients of the first worker and handed to the optimizer instead
  */
-   public void train() throws Exception
+   public void applyWorkerGradients()
    {
-      if (!runTrain.equals(mode.TRAIN))
+      WeightMatrix[] weights = getWeightMatrices();
+      int l;
+
+      if (optimizer != null)
       {
-         throw new Exception("train() called when network mode not set to TRAIN!");
+         optimizer.step();
       }
 
-      double totalError = Double.MAX_VALUE;
-      int inputNum;
-      int i;
-      double[] currInput;
-
-      while (numIterations<maxIterations && totalError > maxErrorThreshold) 
+      for (l = 0; l < weights.length; l++)
       {
-         totalError = 0.0;
+         final int layer = l;
+         final double[] data = weights[l].data;
 
-         for (inputNum = 0; inputNum < possibleInputs.length; inputNum++)
+         Parallel.forEachRange(pool, data.length, numThreads, (start, end) ->
          {
-            currInput = possibleInputs[inputNum];
-            t = truthTable[inputNum];
-            runNetwork(currInput);
-            updateWeights();
-            for (i = 0; i < f.length; i++)
+            int n;
+            int w;
+            double sum;
+
+            for (n = start; n < end; n++)
             {
-               totalError += 0.5 * ((t[i] - f[i]) * (t[i] - f[i]));
+               sum = 0.0;
+               for (w = 0; w < numThreads; w++)
+               {
+                  sum += workerWorkspaces[w].gradients[layer].data[n];
+               }
+               if (optimizer != null)
+               {
+                  workerWorkspaces[0].gradients[layer].data[n] = sum;
+               }
+               else
+               {
+                  data[n] += lambda * sum;
+               }
             }
-         } // for (inputNum = 0; inputNum < possibleInputs.length; inputNum++)
-
-         numIterations++;
-      } // while(numIterations<maxIterations && totalError > maxErrorThreshold)
-
-      error = totalError;
-      System.out.println("Training results:");
-      if (totalError <= maxErrorThreshold) 
-      {
-         System.out.println("\tTraining concluded: error (" + totalError + ") has reached error threshold (" + maxErrorThreshold + ")");
-      }
-
-      if (numIterations >= maxIterations ) 
-      {
-         System.out.println("\tNumber of iterations (" + numIterations + ") has reached maximum iterations allowed (" + maxIterations + ")");
-      }
-   } //public void train()
+            if (optimizer != null)
+            {
+               optimizer.update(layer, data, 0, workerWorkspaces[0].gradients[layer].data, 1.0, lambda, start, end);
+            }
+         });
+      } // for (l = 0; l < weights.length; l++)
+   } // public void applyWorkerGradients()
 
 /**
  * updates the weights in accordance with the design document, calculating the partial derivatives
@@ -772,38 +2539,20 @@ public class Network
  */
    public void updateWeights() 
    {
-      int j;
-      int k;
-      int i;
-      int m;
+      int l;
 
-      for (j = 0; j < numHiddenNodes2; j++)
+      if (optimizer != null)
       {
-         omegaj[j] = 0.0;
-
-         for (i = 0; i < numOutputs; i++)
-         {
-            omegaj[j] += psii[i] * weights2[j][i];
-            weights2[j][i] += lambda * h2[j] * psii[i];
-         }
-         psij[j] = omegaj[j] * derivActivationFuncton(thetaj[j]);
-      } // for (j = 0; j < numHiddenNodes2; j++)
+         optimizer.step();
+      }
 
-      for (k = 0; k < numHiddenNodes1; k++)
+      for (l = numLayers - 1; l > 0; l--)
       {
-         omegak[k] = 0.0;
-         for (j = 0; j < numHiddenNodes2; j++)
-         {
-            omegak[k] += psij[j]*weights1[k][j];
-            weights1[k][j] += lambda * h1[k] * psij[j];
-         }
-         psik[k] = omegak[k] * derivActivationFuncton(thetak[k]);
+         backpropagateLayer(l, activations[l], psis[l], omegas[l - 1]);
+         activationFunctions[l - 1].multiplyDerivative(activations[l], omegas[l - 1], psis[l - 1], layerSizes[l]);
+      }
 
-         for (m = 0; m < numInputs; m++)
-         {
-            weights0[m][k] += lambda * a[m] * psik[k];
-         }
-      } // for (k = 0; k < numHiddenNodes1; k++)
+      backpropagateLayer(0, activations[0], psis[0], null);
    } //public void updateWeights
 
 /**
@@ -811,15 +2560,47 @@ public class Network
  */
 public void run() 
 {
-   double[] input;
-   int i;
+   if (floatEngine != null)
+   {
+      floatEngine.run();
+      return;
+   }
 
-   for (i = 0; i<possibleInputs.length; i++) 
+   if (batchInference)
    {
-      input = possibleInputs[i];
-      executeNetwork(input);
-   } //runs the network for all possible inputs
+      startBatchInference();
+   }
+
+   try
+   {
+      forEachInputChunk((inputs, targets, numSets) ->
+      {
+         int i;
+
+         if (batchInference)
+         {
+            batchModel.predictBatch(inputs, numSets, batchOutputs);
+            return 0.0;
+         }
 
+         for (i = 0; i < numSets; i++) 
+         {
+            if (quantizedModel != null)
+            {
+               quantizedModel.forward(inputs[i]);
+            }
+            else
+            {
+               executeNetwork(inputs[i]);
+            }
+         } //runs the network for all possible inputs
+         return 0.0;
+      });
+   }
+   catch (Exception e)
+   {
+      e.printStackTrace();
+   }
 } //public void run()
 
 /**
@@ -828,36 +2609,85 @@ public void run()
  */
    public void report() 
    {
-      int inputNum;
-      int k;
-      int i;
-
       if (runTrain.equals(mode.TRAIN))
       {
 
          System.out.println("\tNumber of iterations reached: " + numIterations);
          System.out.println("\tError reached: " + error);
-         System.out.println("\tTraining time: " + trainingTime + "ms");
+         System.out.println("\tTraining time: " + trainingTime + "ms" + (thresholdTime >= 0.0 ? " (error threshold reached "
+               + "after " + thresholdTime + "ms, " + thresholdIterations + " iterations)" : " (error threshold not reached)"));
          System.out.println();  
       }
 
       System.out.println("Results: "); 
-      for (inputNum = 0; inputNum < possibleInputs.length; inputNum++) 
+      if (batchInference)
       {
-         executeNetwork(possibleInputs[inputNum]);
-         for (k = 0; k < a.length; k++)
+         startBatchInference();
+      }
+
+      try
+      {
+         forEachInputChunk(this::reportInputs);
+      }
+      catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+   } //public void report()
+
+/**
+ * runs the network on a group of input sets (as one batch if batchInference is set) and prints every input, output and
+ * truth table value
+ * @param inputs input sets to report on
+ * @param targets truth table rows matching the input sets
+ * @param numSets number of input sets to use from the start of inputs
+ * @return 0.0, nothing is accumulated
+ */
+   public double reportInputs(double[][] inputs, double[][] targets, int numSets)
+   {
+      double[] input;
+      double[] output;
+      int inputNum;
+      int k;
+      int i;
+
+      if (batchInference)
+      {
+         batchModel.predictBatch(inputs, numSets, batchOutputs);
+      }
+
+      for (inputNum = 0; inputNum < numSets; inputNum++) 
+      {
+         if (batchInference)
          {
-            System.out.print("\t a" + k + " = " + String.format("%.4f", a[k])); //prints inputs to 4 decimals
+            input = inputs[inputNum];
+            output = batchOutputs[inputNum];
          }
-         for (i = 0; i < f.length; i++)
+         else if (quantizedModel != null)
          {
-            System.out.print("\t f" + i + " = " + String.format("%.4f", f[i])); //prints ouput to 4 decimals
-            System.out.print("\t t" + i + " = " + String.format("%.4f", truthTable[inputNum][i])); //prints truth table to 4 decimals
+            input = inputs[inputNum];
+            output = quantizedModel.forward(input);
+         }
+         else
+         {
+            executeNetwork(inputs[inputNum]);
+            input = a;
+            output = f;
          }
-         System.out.print("\n");
-      } // for (inputNum = 0; inputNum < possibleInputs.length; inputNum++)
 
-   } //public void report()
+         for (k = 0; k < input.length; k++)
+         {
+            System.out.print("\t a" + k + " = " + String.format("%.4f", input[k])); //prints inputs to 4 decimals
+         }
+         for (i = 0; i < output.length; i++)
+         {
+            System.out.print("\t f" + i + " = " + String.format("%.4f", output[i])); //prints ouput to 4 decimals
+            System.out.print("\t t" + i + " = " + String.format("%.4f", targets[inputNum][i])); //prints truth table to 4 decimals
+         }
+         System.out.print("\n");
+      } // for (inputNum = 0; inputNum < numSets; inputNum++)
+      return 0.0;
+   } // public double reportInputs(double[][] inputs, double[][] targets, int numSets)
 
 /**
  * executes the network based on its predefined mode, either trains or runs the network using current weights
@@ -866,6 +2696,12 @@ public void run()
    {
       double startTime;
       double endTime;
+
+      if (precision.equals("float") || precision.equals("mixed"))
+      {
+         startFloatEngine();
+      }
+
       if (runTrain.equals(mode.TRAIN))
       {
          try 
@@ -874,6 +2710,10 @@ public void run()
             train();
             endTime = System.currentTimeMillis();
             trainingTime = endTime - startTime;
+            if (pruner != null)
+            {
+               prune();
+            }
          } 
          catch (Exception e) 
          {
@@ -882,30 +2722,305 @@ public void run()
       } //if (runTrain.equals(mode.TRAIN))
       else
       {
+         if (pruner != null)
+         {
+            try
+            {
+               prune();
+            }
+            catch (Exception e)
+            {
+               e.printStackTrace();
+            }
+         }
+         if (precision.equals("int8") && quantizedModel == null)
+         {
+            quantizedModel = new QuantizedModel(getWeightMatrices(), activationFunctions, quantizePerColumn);
+         }
          run();
       }
+
+      if (floatEngine != null)
+      {
+         stopFloatEngine();
+      }
+
+      try
+      {
+         if (quantizedModel != null)
+         {
+            reportQuantization();
+         }
+         if (quantizedWeightsFileName != null)
+         {
+            new QuantizedModel(getWeightMatrices(), activationFunctions, quantizePerColumn).save(quantizedWeightsFileName);
+         }
+      }
+      catch (Exception e)
+      {
+         e.printStackTrace();
+      }
    } //public void execute()
 
+/**
+ * reports how far the outputs of the int8 quantized model are from the double outputs of executeNetwork over every
+ * possible input: the largest and mean absolute output difference, the error of each against the truth table, and how
+ * often both give their largest output on the same node
+ */
+   public void reportQuantization() throws Exception
+   {
+      double[] total = new double[5]; // max difference, total difference, double error, int8 error, same largest output
+      long doubleBytes = 0;
+      int l;
+
+      forEachInputChunk((inputs, targets, numSets) ->
+      {
+         double[] output;
+         double difference;
+         int largest;
+         int quantizedLargest;
+         int n;
+         int i;
+
+         for (n = 0; n < numSets; n++)
+         {
+            executeNetwork(inputs[n]);
+            output = quantizedModel.forward(inputs[n]);
+            largest = 0;
+            quantizedLargest = 0;
+            for (i = 0; i < numOutputs; i++)
+            {
+               difference = Math.abs(output[i] - f[i]);
+               total[0] = Math.max(total[0], difference);
+               total[1] += difference;
+               total[2] += 0.5 * (targets[n][i] - f[i]) * (targets[n][i] - f[i]);
+               total[3] += 0.5 * (targets[n][i] - output[i]) * (targets[n][i] - output[i]);
+               largest = f[i] > f[largest] ? i : largest;
+               quantizedLargest = output[i] > output[quantizedLargest] ? i : quantizedLargest;
+            }
+            total[4] += largest == quantizedLargest ? 1.0 : 0.0;
+         }
+         return 0.0;
+      });
+      for (l = 0; l < numLayers; l++)
+      {
+         doubleBytes += (long) weights[l].data.length * Double.BYTES;
+      }
+
+      System.out.println("Precision \"int8\" (" + (quantizePerColumn ? "per column" : "per row") + " scales) compared to "
+            + "double outputs" + (weightFormat.equals("int8") ? " of the dequantized weights:" : ":"));
+      System.out.println("\tMaximum absolute output difference: " + total[0]);
+      System.out.println("\tMean absolute output difference: " + total[1] / Math.max(1, numPossibleInputSets * numOutputs));
+      System.out.println("\tError: " + total[2] + " double, " + total[3] + " int8");
+      System.out.println("\tSame largest output: " + (int) total[4] + " of " + numPossibleInputSets + " input sets");
+      System.out.println("\tWeights: " + quantizedModel.sizeInBytes() + " bytes int8, " + doubleBytes + " bytes double");
+      System.out.println();
+   } // public void reportQuantization() throws Exception
+
+/**
+ * prunes the weights, stores every layer left with at most the fraction sparseDensity of its weights in compressed form
+ * for executeNetwork, and reports the accuracy and the speed of the pruned network against the dense network over every
+ * possible input. Each network is timed over PRUNING_TIMING_PASSES passes and its fastest pass is reported
+ */
+   public void prune() throws Exception
+   {
+      double[][] denseOutputs = new double[numPossibleInputSets][numOutputs];
+      double[][] prunedOutputs = new double[numPossibleInputSets][numOutputs];
+      double denseError = 0.0;
+      double prunedError = 0.0;
+      double denseTime = Double.MAX_VALUE;
+      double prunedTime = Double.MAX_VALUE;
+      double difference;
+      double maxDifference = 0.0;
+      double totalDifference = 0.0;
+      long startTime;
+      int pass;
+      int inputNum;
+      int l;
+      int i;
+
+      for (pass = 0; pass < PRUNING_TIMING_PASSES; pass++)
+      {
+         startTime = System.nanoTime();
+         denseError = scoreInputs(denseOutputs);
+         denseTime = Math.min(denseTime, (System.nanoTime() - startTime) / 1e6);
+      }
+
+      pruner.prune(getWeightMatrices());
+      sparseWeights = new SparseMatrix[numLayers];
+      System.out.println("Pruning compared to the dense weights:");
+      for (l = 0; l < numLayers; l++)
+      {
+         if (pruner.layers[l] && SparseMatrix.density(weights[l]) <= sparseDensity)
+         {
+            sparseWeights[l] = new SparseMatrix(weights[l]);
+         }
+         System.out.println("\tLayer " + l + ": " + String.format("%.2f", 100.0 * SparseMatrix.density(weights[l]))
+               + "% of " + weights[l].data.length + " weights left" + (sparseWeights[l] != null ? ", run sparse" : "")
+               + (pruner.layers[l] ? "" : ", not pruned"));
+      }
+
+      for (pass = 0; pass < PRUNING_TIMING_PASSES; pass++)
+      {
+         startTime = System.nanoTime();
+         prunedError = scoreInputs(prunedOutputs);
+         prunedTime = Math.min(prunedTime, (System.nanoTime() - startTime) / 1e6);
+      }
+
+      for (inputNum = 0; inputNum < numPossibleInputSets; inputNum++)
+      {
+         for (i = 0; i < numOutputs; i++)
+         {
+            difference = Math.abs(prunedOutputs[inputNum][i] - denseOutputs[inputNum][i]);
+            maxDifference = Math.max(maxDifference, difference);
+            totalDifference += difference;
+         }
+      }
+
+      System.out.println("\tError: " + denseError + " dense, " + prunedError + " pruned");
+      System.out.println("\tMaximum absolute output difference: " + maxDifference);
+      System.out.println("\tMean absolute output difference: " + totalDifference / Math.max(1, numPossibleInputSets * numOutputs));
+      System.out.println("\tTime for all inputs: " + denseTime + "ms dense, " + prunedTime + "ms pruned ("
+            + String.format("%.2f", denseTime / prunedTime) + "x)");
+      System.out.println();
+   } // public void prune() throws Exception
+
+/**
+ * runs the network on every possible input with executeNetwork
+ * @param outputs receives the outputs of every possible input
+ * @return the error 0.5 * (t - f)^2 summed over every output of every possible input
+ */
+   public double scoreInputs(double[][] outputs) throws Exception
+   {
+      int[] inputNum = new int[1];
+
+      return forEachInputChunk((inputs, targets, numSets) ->
+      {
+         double error = 0.0;
+         int n;
+         int i;
+
+         for (n = 0; n < numSets; n++)
+         {
+            executeNetwork(inputs[n]);
+            for (i = 0; i < numOutputs; i++)
+            {
+               outputs[inputNum[0]][i] = f[i];
+               error += 0.5 * (targets[n][i] - f[i]) * (targets[n][i] - f[i]);
+            }
+            inputNum[0]++;
+         }
+         return error;
+      });
+   } // public double scoreInputs(double[][] outputs) throws Exception
+
+/**
+ * hands the network over to a FloatEngine. The possible inputs and truth table are converted to floats row by row, each
+ * double row being released as soon as it is converted; unless precision is "mixed", the double weights are released too
+ */
+   public void startFloatEngine()
+   {
+      int i;
+
+      floatEngine = new FloatEngine(getWeightMatrices(), activationFunctions, precision.equals("mixed"));
+      floatEngine.telemetry = telemetry;
+      floatEngine.inputs = new float[possibleInputs.length][];
+      floatEngine.targets = new float[truthTable.length][];
+      for (i = 0; i < possibleInputs.length; i++)
+      {
+         floatEngine.inputs[i] = FloatEngine.toFloat(possibleInputs[i]);
+         floatEngine.targets[i] = FloatEngine.toFloat(truthTable[i]);
+         possibleInputs[i] = null;
+         truthTable[i] = null;
+      }
+
+      if (!precision.equals("mixed"))
+      {
+         weights = null;
+      }
+   } // public void startFloatEngine()
+
+/**
+ * takes the network back from the FloatEngine, restoring the double weights, inputs and truth table, and reports how far the
+ * single precision outputs are from the double precision outputs of executeNetwork over every possible input
+ */
+   public void stopFloatEngine()
+   {
+      WeightMatrix[] weights = floatEngine.toWeightMatrices();
+      float[] output;
+      double difference;
+      double maxDifference = 0.0;
+      double totalDifference = 0.0;
+      int inputNum;
+      int i;
+
+      this.weights = weights;
+
+      for (inputNum = 0; inputNum < possibleInputs.length; inputNum++)
+      {
+         possibleInputs[inputNum] = FloatEngine.toDouble(floatEngine.inputs[inputNum]);
+         truthTable[inputNum] = FloatEngine.toDouble(floatEngine.targets[inputNum]);
+         output = floatEngine.forward(floatEngine.inputs[inputNum]);
+         executeNetwork(possibleInputs[inputNum]);
+         for (i = 0; i < numOutputs; i++)
+         {
+            difference = Math.abs(output[i] - f[i]);
+            maxDifference = Math.max(maxDifference, difference);
+            totalDifference += difference;
+         }
+         floatEngine.inputs[inputNum] = null;
+      } // for (inputNum = 0; inputNum < possibleInputs.length; inputNum++)
+
+      System.out.println("Precision \"" + precision + "\" compared to double outputs:");
+      System.out.println("\tMaximum absolute output difference: " + maxDifference);
+      System.out.println("\tMean absolute output difference: " + totalDifference / Math.max(1, possibleInputs.length * numOutputs));
+      System.out.println();
+      floatEngine = null;
+   } // public void stopFloatEngine()
+
+/**
+ * shuts down the thread pools of the network and stops streaming, once it will neither train nor run again. A process
+ * that creates many networks, like a Sweep, calls this for each of them so that their pool threads do not pile up
+ */
+   public void close()
+   {
+      if (pool != null)
+      {
+         pool.shutdown();
+      }
+      if (layerPool != null)
+      {
+         layerPool.shutdown();
+      }
+      if (streamingDataset != null)
+      {
+         streamingDataset.close();
+      }
+   } // public void close()
+
 /**
  * main method to test the network, trains and reports all pertinent information
  */
    public static void main(String[] args)
    {
       Network net = null;
-      if (args.length==0)
-      {
-         net = new Network("configFile.json");
-      }
-      else
+      String fileName = args.length == 0 ? "configFile.json" : args[0];
+      JSONObject json = readConfigFile(fileName);
+
+      if (json != null && json.containsKey("sweep"))
       {
-         net = new Network(args[0]);
+         new Sweep(json).run();
+         return;
       }
+
+      net = new Network(fileName);
       net.execute();
       net.report();
       if (net.runTrain.equals(mode.TRAIN) && net.outputFileName!=null)
       {
-         net.saveWeights(net.outputFileName);
+         net.storeWeights(net.outputFileName);
       }
+      net.close();
    } // public static void main(String[] args)
 
 } //public class Network
@@ -0,0 +1,280 @@
+/**
+ * This class changes the weights of the network by one of several optimizers instead of plain gradient descent, which
+ * adds lambda times the negative gradient d of the error to every weight. Each optimizer keeps some state per weight,
+ * preallocated for every layer when the optimizer is created so that no update allocates anything:
+ *
+ *    momentum   v = momentum * v + lambda * d, w += v
+ *    nesterov   v = momentum * v + lambda * d, w += momentum * v + lambda * d
+ *    rmsprop    s = squareDecay * s + (1 - squareDecay) * d^2, w += lambda * d / (sqrt(s) + epsilon)
+ *    adam       m = momentum * m + (1 - momentum) * d, s = squareDecay * s + (1 - squareDecay) * d^2,
+ *               w += lambda * (m / (1 - momentum^t)) / (sqrt(s / (1 - squareDecay^t)) + epsilon)
+ *
+ * where t counts the updates made so far. v and m are kept in velocity, s in squares; an optimizer only allocates the
+ * arrays it uses.
+ *
+ * The state of a weight whose gradient stays 0, such as one fed by an input that is always 0, decays every update. Once
+ * it falls below Double.MIN_NORMAL it is set to 0: multiplying the smallest subnormal double by a decay rate rounds back
+ * to the same value, so it would otherwise stay subnormal for good, and arithmetic on subnormal numbers is many times
+ * slower than on normal ones.
+ *
+ * step() is called once before every update of all of the weights, that is after every pattern, every batch or every
+ * combined batch of the workers, and update then changes any range of the weights of a layer, so the updates of
+ * different ranges can be made in parallel.
+ *
+ * Methods contained in file:
+ *
+ * public Optimizer(Type type, double momentum, double squareDecay, double epsilon, int[] layerSizes)
+ * public static Type parseType(String name)
+ * public static double flush(double state)
+ * public void step()
+ * public void resume(long numSteps)
+ * public double[][] stateArrays()
+ * public void update(int layer, double[] data, int offset, double[] direction, double scale, double lambda, int start,
+ *       int end)
+ * public void backpropagateColumns(int layer, WeightMatrix weights, double[] in, double[] psi, double[] omega,
+ *       double lambda, int fromStart, int fromEnd)
+ * public void apply(WeightMatrix[] weights, WeightMatrix[] gradients, double lambda)
+ */
+public class Optimizer
+{
+   enum Type {MOMENTUM, NESTEROV, RMSPROP, ADAM};
+
+   final Type type;
+   final double momentum;
+   final double squareDecay;
+   final double epsilon;
+   final double[][] velocity;
+   final double[][] squares;
+   long numSteps;
+   double firstCorrection;
+   double secondCorrection;
+
+/**
+ * creates an optimizer and its state for the weights of a network
+ * @param type optimizer to use
+ * @param momentum decay rate of the velocity (momentum and nesterov) or of the first moment (adam)
+ * @param squareDecay decay rate of the mean squared gradient (rmsprop and adam)
+ * @param epsilon added to the root mean squared gradient so that it is never 0 (rmsprop and adam)
+ * @param layerSizes number of nodes in every layer, from the input layer to the output layer
+ */
+   public Optimizer(Type type, double momentum, double squareDecay, double epsilon, int[] layerSizes)
+   {
+      int numLayers = layerSizes.length - 1;
+      int l;
+
+      this.type = type;
+      this.momentum = momentum;
+      this.squareDecay = squareDecay;
+      this.epsilon = epsilon;
+      velocity = type != Type.RMSPROP ? new double[numLayers][] : null;
+      squares = type == Type.RMSPROP || type == Type.ADAM ? new double[numLayers][] : null;
+
+      for (l = 0; l < numLayers; l++)
+      {
+         if (velocity != null)
+         {
+            velocity[l] = new double[layerSizes[l] * layerSizes[l + 1]];
+         }
+         if (squares != null)
+         {
+            squares[l] = new double[layerSizes[l] * layerSizes[l + 1]];
+         }
+      }
+   } // public Optimizer(Type type, double momentum, double squareDecay, double epsilon, int[] layerSizes)
+
+/**
+ * returns the optimizer named in a config, or null for "sgd", plain gradient descent
+ */
+   public static Type parseType(String name)
+   {
+      if (name.equals("sgd"))
+      {
+         return null;
+      }
+      return Type.valueOf(name.toUpperCase());
+   }
+
+/**
+ * returns 0 in place of a subnormal state value and the value itself otherwise
+ */
+   public static double flush(double state)
+   {
+      return Math.abs(state) < Double.MIN_NORMAL ? 0.0 : state;
+   }
+
+/**
+ * counts one more update and, for adam, computes the bias corrections of the moments for it
+ */
+   public void step()
+   {
+      numSteps++;
+      if (type == Type.ADAM)
+      {
+         firstCorrection = 1.0 - Math.pow(momentum, numSteps);
+         secondCorrection = 1.0 - Math.pow(squareDecay, numSteps);
+      }
+   }
+
+/**
+ * takes over the number of updates made before a checkpoint, once its state arrays have been restored, and computes
+ * the bias corrections of adam for the last of those updates as step() did
+ * @param numSteps number of updates made when the checkpoint was taken
+ */
+   public void resume(long numSteps)
+   {
+      this.numSteps = numSteps - 1;
+      step();
+   }
+
+/**
+ * returns the state arrays the optimizer keeps, which a checkpoint has to hold to resume it: the velocity or first moment
+ * of every layer, if it keeps one, followed by the mean squared gradient of every layer, if it keeps that. Every array is
+ * laid out like the weight matrix of its layer
+ */
+   public double[][] stateArrays()
+   {
+      int numLayers = velocity != null ? velocity.length : squares.length;
+      double[][] arrays = new double[(velocity != null ? numLayers : 0) + (squares != null ? numLayers : 0)][];
+      int l;
+
+      for (l = 0; l < numLayers; l++)
+      {
+         if (velocity != null)
+         {
+            arrays[l] = velocity[l];
+         }
+         if (squares != null)
+         {
+            arrays[arrays.length - numLayers + l] = squares[l];
+         }
+      }
+      return arrays;
+   } // public double[][] stateArrays()
+
+/**
+ * changes the weights data[offset + start] to data[offset + end - 1] of a layer, where the negative gradient of weight
+ * data[offset + i] is direction[i] * scale
+ * @param layer index of the layer of weights, counting from 0 at the input layer
+ * @param data weights of the layer
+ * @param offset position in data of the weight matching direction[0]
+ * @param direction negative gradient, up to the factor scale
+ * @param scale factor applied to every element of direction
+ * @param lambda learning rate
+ * @param start first element of direction to use
+ * @param end one past the last element of direction to use
+ */
+   public void update(int layer, double[] data, int offset, double[] direction, double scale, double lambda, int start,
+         int end)
+   {
+      double[] v = velocity != null ? velocity[layer] : null;
+      double[] s = squares != null ? squares[layer] : null;
+      double stepSize;
+      double d;
+      int i;
+      int n;
+
+      switch (type)
+      {
+         case MOMENTUM:
+            for (i = start; i < end; i++)
+            {
+               n = offset + i;
+               v[n] = flush(momentum * v[n] + lambda * direction[i] * scale);
+               data[n] += v[n];
+            }
+            break;
+
+         case NESTEROV:
+            for (i = start; i < end; i++)
+            {
+               n = offset + i;
+               d = lambda * direction[i] * scale;
+               v[n] = flush(momentum * v[n] + d);
+               data[n] += momentum * v[n] + d;
+            }
+            break;
+
+         case RMSPROP:
+            for (i = start; i < end; i++)
+            {
+               n = offset + i;
+               d = direction[i] * scale;
+               s[n] = flush(squareDecay * s[n] + (1.0 - squareDecay) * d * d);
+               data[n] += lambda * d / (Math.sqrt(s[n]) + epsilon);
+            }
+            break;
+
+         case ADAM:
+            stepSize = lambda / firstCorrection;
+            for (i = start; i < end; i++)
+            {
+               n = offset + i;
+               d = direction[i] * scale;
+               v[n] = flush(momentum * v[n] + (1.0 - momentum) * d);
+               s[n] = flush(squareDecay * s[n] + (1.0 - squareDecay) * d * d);
+               data[n] += stepSize * v[n] / (Math.sqrt(s[n] / secondCorrection) + epsilon);
+            }
+            break;
+      } // switch (type)
+   } // public void update(...)
+
+/**
+ * the optimizer's version of WeightMatrix.backpropagateColumns: accumulates the omega values of the nodes fromStart to
+ * fromEnd of the earlier layer from the weights as they were in the forward pass, then updates the outgoing weights of
+ * those nodes, whose negative gradient is in[from] * psi[to]
+ * @param layer index of the layer of weights, counting from 0 at the input layer
+ * @param weights weights of the layer
+ * @param in activations of the earlier layer from the last forward pass
+ * @param psi psi values of the later layer
+ * @param omega receives the omega values of the earlier layer, may be null when they are not needed (input layer)
+ * @param lambda learning rate
+ * @param fromStart first node of the earlier layer to process
+ * @param fromEnd one past the last node of the earlier layer to process
+ */
+   public void backpropagateColumns(int layer, WeightMatrix weights, double[] in, double[] psi, double[] omega,
+         double lambda, int fromStart, int fromEnd)
+   {
+      int to;
+      int from;
+      int base;
+
+      if (omega != null)
+      {
+         for (from = fromStart; from < fromEnd; from++)
+         {
+            omega[from] = 0.0;
+         }
+      }
+
+      for (to = 0; to < weights.numTo; to++)
+      {
+         base = to * weights.numFrom;
+         if (omega != null)
+         {
+            for (from = fromStart; from < fromEnd; from++)
+            {
+               omega[from] += psi[to] * weights.data[base + from];
+            }
+         }
+         update(layer, weights.data, base, in, psi[to], lambda, fromStart, fromEnd);
+      }
+   } // public void backpropagateColumns(...)
+
+/**
+ * makes one update of every weight, whose negative gradients are held in gradients
+ * @param weights weight matrices from the input layer to the output layer
+ * @param gradients negative gradients, shaped like the weights
+ * @param lambda learning rate
+ */
+   public void apply(WeightMatrix[] weights, WeightMatrix[] gradients, double lambda)
+   {
+      int l;
+
+      step();
+      for (l = 0; l < weights.length; l++)
+      {
+         update(l, weights[l].data, 0, gradients[l].data, 1.0, lambda, 0, weights[l].data.length);
+      }
+   } // public void apply(WeightMatrix[] weights, WeightMatrix[] gradients, double lambda)
+
+} // public class Optimizer
@@ -0,0 +1,70 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class splits an index range into a fixed number of contiguous pieces and runs them on a ForkJoinPool, waiting
+ * until every piece has finished. The pieces depend only on the size of the range and the number of pieces requested,
+ * never on scheduling, so work divided this way is reproducible from run to run.
+ *
+ * Methods contained in file:
+ *
+ * public static void forEachRange(ForkJoinPool pool, int size, int numRanges, RangeTask task)
+ * public static int rangeStart(int size, int numRanges, int range)
+ */
+public class Parallel
+{
+
+/**
+ * a piece of work covering the indices [start, end)
+ */
+   public interface RangeTask
+   {
+      void run(int start, int end);
+   }
+
+/**
+ * splits [0, size) into numRanges contiguous ranges of near equal length and runs task on each of them in the pool,
+ * returning once all of them are done. Empty ranges are skipped
+ * @param pool pool to run the ranges on
+ * @param size number of indices to cover
+ * @param numRanges number of ranges to split the indices into
+ * @param task work to be done on each range
+ */
+   public static void forEachRange(ForkJoinPool pool, int size, int numRanges, RangeTask task)
+   {
+      ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numRanges];
+      int range;
+
+      for (range = 0; range < numRanges; range++)
+      {
+         final int start = rangeStart(size, numRanges, range);
+         final int end = rangeStart(size, numRanges, range + 1);
+         tasks[range] = ForkJoinTask.adapt(() ->
+         {
+            if (start < end)
+            {
+               task.run(start, end);
+            }
+         });
+      }
+
+      pool.invoke(new RecursiveAction()
+      {
+         @Override
+         protected void compute()
+         {
+            invokeAll(tasks);
+         }
+      });
+   } // public static void forEachRange(ForkJoinPool pool, int size, int numRanges, RangeTask task)
+
+/**
+ * returns the first index of the given range when [0, size) is split into numRanges ranges
+ */
+   public static int rangeStart(int size, int numRanges, int range)
+   {
+      return (int) ((long) size * range / numRanges);
+   }
+
+} // public class Parallel
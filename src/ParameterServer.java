@@ -0,0 +1,558 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is the coordinator of multi-process data-parallel training. It keeps the master copy of the weights, while
+ * numWorkers TrainingWorker processes on the same host, each a JVM of its own, hold one contiguous shard of the possible
+ * inputs (the shard of worker w is the range Parallel.rangeStart gives range w of numWorkers) and compute gradients on it.
+ * The coordinator never loads the possible inputs while training, so neither the dataset nor the batch buffers have to
+ * fit into its heap.
+ *
+ * Every worker is connected to the coordinator by its own socket on the loopback interface. An epoch consists of
+ * roundsPerEpoch rounds; in each round a worker is sent the current weights, pushes its next batch of batchSize patterns
+ * (its whole shard if batchSize is 1) through them and sends back the summed error and the gradients of the batch, which
+ * is the sum of the outer products in[from] * psi[to]. A worker whose shard has run out sends no gradients. Messages are
+ * a MESSAGE_HEADER byte header followed by the weights or gradients of every layer as little-endian doubles:
+ *
+ *    to a worker     int round (STOP to end), then the weights
+ *    from a worker   double error, int number of patterns, then the gradients if that number is not 0
+ *    handshake       int worker, int number of weights, int number of patterns in its shard, sent by the worker once
+ *
+ * With staleness 0 training is synchronous: every round sends the same weights to all workers, adds their gradients up in
+ * worker order and then makes one update with the sum, so that a run is reproducible and, without a batchSize, changes
+ * the weights exactly like numThreads-way data-parallel training in one process. With staleness s greater than 0 every
+ * worker runs on a thread of its own and its gradients are applied as soon as they arrive, each with a separate update;
+ * a worker that has finished s more rounds than the slowest worker waits for it before it is sent the weights again, so
+ * no gradient is computed from weights missing more than s rounds of any worker's updates.
+ *
+ * With launch set, the coordinator starts the worker processes itself, with the same java, module options and classpath as
+ * its own JVM plus jvmOptions; otherwise they are started by hand with
+ *
+ *    java TrainingWorker configFile.json <host> <port> <worker> <numWorkers>
+ *
+ * Methods contained in file:
+ *
+ * public ParameterServer(WeightMatrix[] weights, Optimizer optimizer, int numSets, int numWorkers, int batchSize,
+ *       int staleness)
+ * public void start(String configFileName, int port, boolean launch, String[] jvmOptions) throws Exception
+ * public void launchWorker(String configFileName, int port, int worker, String[] jvmOptions) throws IOException
+ * public double trainEpoch(double lambda) throws Exception
+ * public double trainSynchronous(double lambda) throws Exception
+ * public double trainStale(double lambda) throws Exception
+ * public void serveStale(int worker, double lambda) throws Exception
+ * public void sendWeights(int worker, int round) throws IOException
+ * public int receiveGradients(int worker) throws IOException
+ * public void applyGradients(double lambda)
+ * public void close()
+ * public static ByteBuffer allocateMessage(int numParameters)
+ * public static DoubleBuffer payload(ByteBuffer message)
+ * public static void write(SocketChannel channel, ByteBuffer message, int length) throws IOException
+ * public static void read(SocketChannel channel, ByteBuffer message, int length) throws IOException
+ */
+public class ParameterServer
+{
+   static final int STOP = -1;
+   static final int MESSAGE_HEADER = 16;
+   static final int CONNECT_TIMEOUT_MILLIS = 120000; // longest wait for all workers to connect
+
+   final WeightMatrix[] weights;
+   final Optimizer optimizer;
+   final WeightMatrix[] gradients;
+   final int numParameters;
+   final int numWorkers;
+   final int staleness;
+   final int roundsPerEpoch;
+   final int[] shardSizes;
+   final ByteBuffer[] messages;
+   final DoubleBuffer[] payloads;
+   final double[] errors;
+   final int[] clocks;
+   ServerSocketChannel server;
+   SocketChannel[] channels;
+   Process[] processes;
+   ExecutorService executor;
+   long numExchanges;
+   long waitNanos;
+
+/**
+ * creates the coordinator of the given weights, which it changes in place
+ * @param weights weight matrices from the input layer to the output layer
+ * @param optimizer optimizer that makes the updates, null for plain gradient descent
+ * @param numSets number of possible input sets, shared out between the workers
+ * @param numWorkers number of worker processes
+ * @param batchSize number of patterns each worker uses per round, 1 for its whole shard
+ * @param staleness number of rounds a worker may be ahead of the slowest worker, 0 for synchronous training
+ */
+   public ParameterServer(WeightMatrix[] weights, Optimizer optimizer, int numSets, int numWorkers, int batchSize,
+         int staleness)
+   {
+      int numParameters = 0;
+      int largestShard = 0;
+      int l;
+      int worker;
+
+      this.weights = weights;
+      this.optimizer = optimizer;
+      this.numWorkers = numWorkers;
+      this.staleness = staleness;
+      gradients = new WeightMatrix[weights.length];
+      for (l = 0; l < weights.length; l++)
+      {
+         gradients[l] = new WeightMatrix(weights[l].numFrom, weights[l].numTo);
+         numParameters += weights[l].data.length;
+      }
+      this.numParameters = numParameters;
+
+      shardSizes = new int[numWorkers];
+      messages = new ByteBuffer[numWorkers];
+      payloads = new DoubleBuffer[numWorkers];
+      for (worker = 0; worker < numWorkers; worker++)
+      {
+         shardSizes[worker] = Parallel.rangeStart(numSets, numWorkers, worker + 1)
+               - Parallel.rangeStart(numSets, numWorkers, worker);
+         largestShard = Math.max(largestShard, shardSizes[worker]);
+         messages[worker] = allocateMessage(numParameters);
+         payloads[worker] = payload(messages[worker]);
+      }
+      roundsPerEpoch = batchSize > 1 ? (largestShard + batchSize - 1) / batchSize : 1;
+      errors = new double[numWorkers];
+      clocks = new int[numWorkers];
+   } // public ParameterServer(...)
+
+/**
+ * listens on the loopback interface, starts the worker processes if launch is set and waits until every worker has
+ * connected and introduced itself
+ * @param configFileName config file the workers read, the one of the training run
+ * @param port port to listen on, 0 for any free port
+ * @param launch true to start the worker processes
+ * @param jvmOptions extra options of the worker JVMs, such as a heap size
+ */
+   public void start(String configFileName, int port, boolean launch, String[] jvmOptions) throws Exception
+   {
+      SocketChannel channel;
+      ByteBuffer handshake = ByteBuffer.allocate(MESSAGE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+      int connected;
+      int worker;
+      int workerParameters;
+      int shardSize;
+
+      server = ServerSocketChannel.open();
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      server.socket().setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+      port = server.socket().getLocalPort();
+      System.out.println("Parameter server listening on port " + port + " for " + numWorkers + " workers.");
+      System.out.println();
+
+      channels = new SocketChannel[numWorkers];
+      processes = new Process[numWorkers];
+      if (launch)
+      {
+         for (worker = 0; worker < numWorkers; worker++)
+         {
+            launchWorker(configFileName, port, worker, jvmOptions);
+         }
+      }
+
+      for (connected = 0; connected < numWorkers; connected++)
+      {
+         try
+         {
+            channel = server.socket().accept().getChannel();
+         }
+         catch (SocketTimeoutException e)
+         {
+            throw new Exception("Only " + connected + " of " + numWorkers + " workers connected within "
+                  + CONNECT_TIMEOUT_MILLIS / 1000 + " seconds!");
+         }
+         channel.socket().setTcpNoDelay(true);
+         handshake.clear();
+         read(channel, handshake, MESSAGE_HEADER);
+         worker = handshake.getInt(0);
+         workerParameters = handshake.getInt(4);
+         shardSize = handshake.getInt(8);
+         if (worker < 0 || worker >= numWorkers || channels[worker] != null || workerParameters != numParameters
+               || shardSize != shardSizes[worker])
+         {
+            throw new Exception("Worker " + worker + " does not match the coordinator (" + workerParameters
+                  + " weights, " + shardSize + " input sets)!");
+         }
+         channels[worker] = channel;
+      } // for (connected = 0; connected < numWorkers; connected++)
+
+      if (staleness > 0)
+      {
+         executor = Executors.newFixedThreadPool(numWorkers);
+      }
+   } // public void start(String configFileName, int port, boolean launch, String[] jvmOptions) throws Exception
+
+/**
+ * starts one worker process, with the same java, module options and classpath as this JVM
+ * @param configFileName config file the worker reads
+ * @param port port the worker connects to on the loopback interface
+ * @param worker number of the worker
+ * @param jvmOptions extra options of the worker JVM
+ */
+   public void launchWorker(String configFileName, int port, int worker, String[] jvmOptions) throws IOException
+   {
+      ArrayList<String> command = new ArrayList<String>();
+      int i;
+
+      command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+      command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+      for (i = 0; i < jvmOptions.length; i++)
+      {
+         command.add(jvmOptions[i]);
+      }
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add("TrainingWorker");
+      command.add(configFileName);
+      command.add("127.0.0.1");
+      command.add(Integer.toString(port));
+      command.add(Integer.toString(worker));
+      command.add(Integer.toString(numWorkers));
+      processes[worker] = new ProcessBuilder(command).inheritIO().start();
+   } // public void launchWorker(String configFileName, int port, int worker, String[] jvmOptions) throws IOException
+
+/**
+ * trains one epoch, in which every worker goes over its whole shard once
+ * @param lambda learning rate of the epoch
+ * @return the summed error over every pattern, added up in worker order
+ */
+   public double trainEpoch(double lambda) throws Exception
+   {
+      double totalError = 0.0;
+      int worker;
+
+      for (worker = 0; worker < numWorkers; worker++)
+      {
+         errors[worker] = 0.0;
+         clocks[worker] = 0;
+      }
+
+      if (staleness > 0)
+      {
+         trainStale(lambda);
+      }
+      else
+      {
+         trainSynchronous(lambda);
+      }
+
+      for (worker = 0; worker < numWorkers; worker++)
+      {
+         totalError += errors[worker];
+      }
+      return totalError;
+   } // public double trainEpoch(double lambda) throws Exception
+
+/**
+ * trains one epoch in lockstep: every round sends the weights to every worker, then adds up the gradients of the workers
+ * in worker order and makes one update with the sum
+ * @param lambda learning rate
+ * @return 0.0, the errors are kept per worker
+ */
+   public double trainSynchronous(double lambda) throws Exception
+   {
+      int round;
+      int worker;
+      int count;
+      int l;
+      int n;
+      boolean first;
+
+      for (round = 0; round < roundsPerEpoch; round++)
+      {
+         for (worker = 0; worker < numWorkers; worker++)
+         {
+            sendWeights(worker, round);
+         }
+
+         first = true;
+         for (worker = 0; worker < numWorkers; worker++)
+         {
+            count = receiveGradients(worker);
+            payloads[worker].clear();
+            for (l = 0; l < gradients.length; l++)
+            {
+               for (n = 0; n < gradients[l].data.length; n++)
+               {
+                  gradients[l].data[n] = (first ? 0.0 : gradients[l].data[n]) + (count > 0 ? payloads[worker].get() : 0.0);
+               }
+            }
+            first = false;
+         } // for (worker = 0; worker < numWorkers; worker++)
+         applyGradients(lambda);
+      } // for (round = 0; round < roundsPerEpoch; round++)
+      return 0.0;
+   } // public double trainSynchronous(double lambda) throws Exception
+
+/**
+ * trains one epoch with bounded staleness, serving every worker on a thread of its own. The threads are those of a fixed
+ * pool of numWorkers threads rather than of a ForkJoinPool, because a worker that is too far ahead blocks its thread
+ * until the others catch up
+ * @param lambda learning rate
+ * @return 0.0, the errors are kept per worker
+ */
+   public double trainStale(double lambda) throws Exception
+   {
+      ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      List<Future<Object>> results;
+      int worker;
+
+      for (worker = 0; worker < numWorkers; worker++)
+      {
+         final int w = worker;
+         tasks.add(() ->
+         {
+            serveStale(w, lambda);
+            return null;
+         });
+      }
+      results = executor.invokeAll(tasks);
+      for (worker = 0; worker < numWorkers; worker++)
+      {
+         results.get(worker).get(); // rethrows what went wrong serving the worker
+      }
+      return 0.0;
+   } // public double trainStale(double lambda) throws Exception
+
+/**
+ * serves the rounds of one epoch of one worker with bounded staleness. The weights are copied and the gradients applied
+ * while holding the lock of the coordinator, so every update is made whole
+ * @param worker number of the worker
+ * @param lambda learning rate
+ */
+   public void serveStale(int worker, double lambda) throws Exception
+   {
+      int round;
+      int count;
+      int slowest;
+      int w;
+      int l;
+
+      for (round = 0; round < roundsPerEpoch; round++)
+      {
+         synchronized (this)
+         {
+            do
+            {
+               slowest = roundsPerEpoch;
+               for (w = 0; w < numWorkers; w++)
+               {
+                  slowest = Math.min(slowest, clocks[w]);
+               }
+               if (round - slowest > staleness)
+               {
+                  wait();
+               }
+            } while (round - slowest > staleness);
+            payloads[worker].clear();
+            for (l = 0; l < weights.length; l++)
+            {
+               payloads[worker].put(weights[l].data);
+            }
+         } // synchronized (this)
+
+         sendWeights(worker, round);
+         count = receiveGradients(worker);
+
+         synchronized (this)
+         {
+            if (count > 0)
+            {
+               payloads[worker].clear();
+               for (l = 0; l < gradients.length; l++)
+               {
+                  payloads[worker].get(gradients[l].data);
+               }
+               applyGradients(lambda);
+            }
+            clocks[worker]++;
+            notifyAll();
+         } // synchronized (this)
+      } // for (round = 0; round < roundsPerEpoch; round++)
+   } // public void serveStale(int worker, double lambda) throws Exception
+
+/**
+ * sends the round number and the weights to one worker. In synchronous training the weights are copied into the message
+ * here; with bounded staleness serveStale has already copied them under the lock
+ * @param worker number of the worker
+ * @param round number of the round within the epoch, or STOP
+ */
+   public void sendWeights(int worker, int round) throws IOException
+   {
+      ByteBuffer message = messages[worker];
+      int l;
+
+      if (staleness == 0 && round != STOP)
+      {
+         payloads[worker].clear();
+         for (l = 0; l < weights.length; l++)
+         {
+            payloads[worker].put(weights[l].data);
+         }
+      }
+      message.putInt(0, round);
+      write(channels[worker], message, round == STOP ? MESSAGE_HEADER : MESSAGE_HEADER + numParameters * Double.BYTES);
+   } // public void sendWeights(int worker, int round) throws IOException
+
+/**
+ * waits for the answer of one worker to the weights it was sent and adds its error to its summed error
+ * @param worker number of the worker
+ * @return the number of patterns the gradients in its message were computed from, 0 if it sent no gradients
+ */
+   public int receiveGradients(int worker) throws IOException
+   {
+      ByteBuffer message = messages[worker];
+      long time = System.nanoTime();
+      int count;
+
+      message.clear();
+      read(channels[worker], message, MESSAGE_HEADER);
+      count = message.getInt(8);
+      if (count > 0)
+      {
+         read(channels[worker], message, MESSAGE_HEADER + numParameters * Double.BYTES);
+      }
+      errors[worker] += message.getDouble(0);
+      synchronized (this)
+      {
+         waitNanos += System.nanoTime() - time;
+         numExchanges++;
+      }
+      return count;
+   } // public int receiveGradients(int worker) throws IOException
+
+/**
+ * makes one update of every weight with the gradients held in gradients: w += lambda * g, or the update of the optimizer
+ * @param lambda learning rate
+ */
+   public void applyGradients(double lambda)
+   {
+      int l;
+      int n;
+
+      if (optimizer != null)
+      {
+         optimizer.apply(weights, gradients, lambda);
+         return;
+      }
+      for (l = 0; l < weights.length; l++)
+      {
+         for (n = 0; n < weights[l].data.length; n++)
+         {
+            weights[l].data[n] += lambda * gradients[l].data[n];
+         }
+      }
+   } // public void applyGradients(double lambda)
+
+/**
+ * tells every worker to stop, closes the sockets and waits for the worker processes it started to exit. A worker that is
+ * gone already, after training failed, is skipped
+ */
+   public void close()
+   {
+      int worker;
+
+      for (worker = 0; worker < numWorkers; worker++)
+      {
+         try
+         {
+            if (channels != null && channels[worker] != null)
+            {
+               sendWeights(worker, STOP);
+               channels[worker].close();
+            }
+         }
+         catch (IOException e)
+         {
+            // the worker has closed its socket already
+         }
+      } // for (worker = 0; worker < numWorkers; worker++)
+
+      try
+      {
+         if (server != null)
+         {
+            server.close();
+         }
+         for (worker = 0; worker < numWorkers; worker++)
+         {
+            if (processes != null && processes[worker] != null && !processes[worker].waitFor(10, TimeUnit.SECONDS))
+            {
+               processes[worker].destroy();
+            }
+         }
+      } // try
+      catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+      if (executor != null)
+      {
+         executor.shutdown();
+      }
+   } // public void close()
+
+/**
+ * allocates a message buffer large enough for the header and one value of every weight
+ */
+   public static ByteBuffer allocateMessage(int numParameters)
+   {
+      return ByteBuffer.allocateDirect(MESSAGE_HEADER + numParameters * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+/**
+ * returns a view of the values of a message after its header
+ */
+   public static DoubleBuffer payload(ByteBuffer message)
+   {
+      return message.duplicate().position(MESSAGE_HEADER).slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+   }
+
+/**
+ * writes the first length bytes of a message to a socket
+ */
+   public static void write(SocketChannel channel, ByteBuffer message, int length) throws IOException
+   {
+      message.clear().limit(length);
+      while (message.hasRemaining())
+      {
+         channel.write(message);
+      }
+   }
+
+/**
+ * reads bytes from a socket into a message, from its position on, until it holds length bytes
+ * @throws IOException if the other side closed the socket first
+ */
+   public static void read(SocketChannel channel, ByteBuffer message, int length) throws IOException
+   {
+      message.limit(length);
+      while (message.hasRemaining())
+      {
+         if (channel.read(message) < 0)
+         {
+            throw new IOException("The connection was closed in the middle of a message!");
+         }
+      }
+   } // public static void read(SocketChannel channel, ByteBuffer message, int length) throws IOException
+
+} // public class ParameterServer
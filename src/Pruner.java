@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+/**
+ * This class prunes the weights of a network by magnitude: a weight is set to zero when its absolute value is below
+ * threshold, or when it is among the fraction sparsity of the weights of its layer with the smallest absolute values.
+ * Only the layers selected in layers are pruned.
+ *
+ * Pruning can happen once, after training, or every interval epochs while training. Every pruned weight is recorded in
+ * a mask per layer, and after each epoch in between the masked weights are set back to zero, so a weight that has been
+ * pruned stays pruned for the rest of training while the weights that are left adapt to its absence. Since the weights
+ * pruned earlier are zero, they are again among the smallest the next time, and repeated pruning to the same sparsity
+ * does not remove more than that fraction of a layer.
+ *
+ * A mask holds one boolean per weight of its layer and is only allocated once the layer is first pruned.
+ *
+ * Methods contained in file:
+ *
+ * public Pruner(double threshold, double sparsity, int interval, boolean[] layers)
+ * public void afterEpoch(WeightMatrix[] weights, int numIterations)
+ * public void prune(WeightMatrix[] weights)
+ * public void applyMasks(WeightMatrix[] weights)
+ * public static double sparsityCutoff(WeightMatrix weights, double sparsity)
+ */
+public class Pruner
+{
+   final double threshold;
+   final double sparsity;
+   final int interval;
+   final boolean[] layers;
+   final boolean[][] masks;
+
+/**
+ * creates the pruner of a network
+ * @param threshold weights with a smaller absolute value are pruned, 0 for none
+ * @param sparsity fraction of the weights of each layer to prune, smallest absolute values first, 0 for none
+ * @param interval number of epochs between two prunings during training, 0 to prune only after training
+ * @param layers true for every layer of weights, from the input layer to the output layer, that is to be pruned
+ */
+   public Pruner(double threshold, double sparsity, int interval, boolean[] layers)
+   {
+      this.threshold = threshold;
+      this.sparsity = sparsity;
+      this.interval = interval;
+      this.layers = layers;
+      masks = new boolean[layers.length][];
+   }
+
+/**
+ * called after every epoch of training; prunes when a pruning is due and otherwise sets the weights pruned so far back
+ * to zero
+ * @param weights current weight matrices
+ * @param numIterations number of epochs completed
+ */
+   public void afterEpoch(WeightMatrix[] weights, int numIterations)
+   {
+      if (interval > 0 && numIterations % interval == 0)
+      {
+         prune(weights);
+      }
+      else
+      {
+         applyMasks(weights);
+      }
+   } // public void afterEpoch(WeightMatrix[] weights, int numIterations)
+
+/**
+ * prunes every selected layer, adding the weights pruned to its mask
+ * @param weights weight matrices from the input layer to the output layer
+ */
+   public void prune(WeightMatrix[] weights)
+   {
+      double[] data;
+      double cutoff;
+      int l;
+      int n;
+
+      for (l = 0; l < weights.length; l++)
+      {
+         if (!layers[l])
+         {
+            continue;
+         }
+         if (masks[l] == null)
+         {
+            masks[l] = new boolean[weights[l].data.length];
+         }
+
+         data = weights[l].data;
+         cutoff = sparsityCutoff(weights[l], sparsity);
+         for (n = 0; n < data.length; n++)
+         {
+            if (Math.abs(data[n]) < threshold || Math.abs(data[n]) <= cutoff)
+            {
+               masks[l][n] = true;
+               data[n] = 0.0;
+            }
+         }
+      } // for (l = 0; l < weights.length; l++)
+   } // public void prune(WeightMatrix[] weights)
+
+/**
+ * sets every weight pruned so far back to zero
+ */
+   public void applyMasks(WeightMatrix[] weights)
+   {
+      double[] data;
+      boolean[] mask;
+      int l;
+      int n;
+
+      for (l = 0; l < weights.length; l++)
+      {
+         if (masks[l] == null)
+         {
+            continue;
+         }
+
+         data = weights[l].data;
+         mask = masks[l];
+         for (n = 0; n < data.length; n++)
+         {
+            if (mask[n])
+            {
+               data[n] = 0.0;
+            }
+         }
+      } // for (l = 0; l < weights.length; l++)
+   } // public void applyMasks(WeightMatrix[] weights)
+
+/**
+ * returns the largest absolute value among the fraction sparsity of the weights with the smallest absolute values, so
+ * that pruning every weight whose absolute value is at most the cutoff prunes that fraction (more if several weights
+ * share the cutoff). Returns -1 when sparsity covers no weight at all
+ */
+   public static double sparsityCutoff(WeightMatrix weights, double sparsity)
+   {
+      int count = (int) (sparsity * weights.data.length);
+      double[] magnitudes;
+      int n;
+
+      if (count == 0)
+      {
+         return -1.0;
+      }
+
+      magnitudes = new double[weights.data.length];
+      for (n = 0; n < magnitudes.length; n++)
+      {
+         magnitudes[n] = Math.abs(weights.data[n]);
+      }
+      Arrays.sort(magnitudes);
+      return magnitudes[count - 1];
+   } // public static double sparsityCutoff(WeightMatrix weights, double sparsity)
+
+} // public class Pruner
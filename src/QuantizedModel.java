@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class runs the network for inference on weights quantized to 8 bit integers, an eighth of the memory and memory
+ * bandwidth of the double weights.
+ *
+ * Each weight is stored as a byte q with w ~ q * scale, where the scale is shared either by all incoming weights of one
+ * node of the later layer (per row, the rows of WeightMatrix) or by all outgoing weights of one node of the earlier layer
+ * (per column), and is chosen so that the largest weight it covers maps to 127. The forward pass quantizes the
+ * activations of the earlier layer to bytes as well, with one scale for the whole layer, and computes every theta value as
+ * an integer dot product of bytes accumulated in an int, which is then dequantized by multiplying it with the activation
+ * scale and the row scale before the activation function is applied. With per column scales the column scales are
+ * multiplied into the activations before they are quantized, so the dot product stays purely integer.
+ *
+ * The int accumulators hold any dot product of up to MAX_FROM = 133152 terms (127 * 127 * 133152 < 2^31).
+ *
+ * Quantized weights files hold a header of little-endian values: int magic (MAGIC), int version (VERSION), int number of
+ * weight matrices L, L + 1 ints holding the number of nodes of every layer from the input layer to the output layer, int
+ * 1 for per column scales or 0 for per row scales, a long CRC32 checksum of everything after the header, and zero padding
+ * up to the next multiple of 8 bytes. It is followed by one block per weight matrix, from the input layer to the output
+ * layer, holding its float scales and then its bytes in WeightMatrix layout.
+ *
+ * A QuantizedModel keeps one set of activation buffers, so it runs one input at a time.
+ *
+ * Methods contained in file:
+ *
+ * public QuantizedModel(WeightMatrix[] source, Activation[] activationFunctions, boolean perColumn)
+ * QuantizedModel(int[] layerSizes, Activation[] activationFunctions, boolean perColumn)
+ * static int[] layerSizes(WeightMatrix[] weights)
+ * public double[] forward(double[] input)
+ * public WeightMatrix[] toWeightMatrices()
+ * public long sizeInBytes()
+ * public void save(String fileName) throws IOException
+ * public static QuantizedModel load(String fileName, int[] layerSizes, Activation[] activationFunctions) throws Exception
+ * public static int headerLength(int numMatrices)
+ */
+public class QuantizedModel
+{
+   static final int MAGIC = 0x4E4E5138; // "NNQ8"
+   static final int VERSION = 1;
+   static final int MAX_FROM = 133152;
+
+   final int numLayers;
+   final int[] numFrom;
+   final int[] numTo;
+   final boolean perColumn;
+   final byte[][] weights;
+   final float[][] scales;
+   final Activation[] activationFunctions;
+   final double[][] activations;
+   final double[] scaled;
+   final byte[] quantized;
+
+/**
+ * quantizes the given weights
+ * @param source weight matrices from the input layer to the output layer
+ * @param activationFunctions activation function of every layer
+ * @param perColumn true for one scale per node of the earlier layer, false for one per node of the later layer
+ */
+   public QuantizedModel(WeightMatrix[] source, Activation[] activationFunctions, boolean perColumn)
+   {
+      this(layerSizes(source), activationFunctions, perColumn);
+
+      double[] data;
+      double[] max;
+      double scale;
+      int l;
+      int to;
+      int from;
+      int n;
+
+      for (l = 0; l < numLayers; l++)
+      {
+         data = source[l].data;
+         max = new double[scales[l].length];
+         for (to = 0; to < numTo[l]; to++)
+         {
+            for (from = 0; from < numFrom[l]; from++)
+            {
+               n = to * numFrom[l] + from;
+               max[perColumn ? from : to] = Math.max(max[perColumn ? from : to], Math.abs(data[n]));
+            }
+         }
+         for (n = 0; n < max.length; n++)
+         {
+            scales[l][n] = (float) (max[n] / 127.0);
+         }
+
+         for (to = 0; to < numTo[l]; to++)
+         {
+            for (from = 0; from < numFrom[l]; from++)
+            {
+               n = to * numFrom[l] + from;
+               scale = scales[l][perColumn ? from : to];
+               weights[l][n] = scale == 0.0 ? 0 : (byte) Math.max(-127, Math.min(127, Math.round(data[n] / scale)));
+            }
+         }
+      } // for (l = 0; l < numLayers; l++)
+   } // public QuantizedModel(WeightMatrix[] source, Activation[] activationFunctions, boolean perColumn)
+
+/**
+ * allocates the byte weights, scales and buffers of a network with the given layer sizes
+ */
+   QuantizedModel(int[] layerSizes, Activation[] activationFunctions, boolean perColumn)
+   {
+      int maxFrom = 0;
+      int l;
+
+      numLayers = layerSizes.length - 1;
+      numFrom = new int[numLayers];
+      numTo = new int[numLayers];
+      weights = new byte[numLayers][];
+      scales = new float[numLayers][];
+      activations = new double[numLayers + 1][];
+      this.activationFunctions = activationFunctions;
+      this.perColumn = perColumn;
+
+      for (l = 0; l < numLayers; l++)
+      {
+         numFrom[l] = layerSizes[l];
+         numTo[l] = layerSizes[l + 1];
+         if (numFrom[l] > MAX_FROM)
+         {
+            throw new IllegalArgumentException("int8 weights support layers of at most " + MAX_FROM + " nodes!");
+         }
+         weights[l] = new byte[numFrom[l] * numTo[l]];
+         scales[l] = new float[perColumn ? numFrom[l] : numTo[l]];
+         activations[l + 1] = new double[numTo[l]];
+         maxFrom = Math.max(maxFrom, numFrom[l]);
+      }
+      scaled = new double[maxFrom];
+      quantized = new byte[maxFrom];
+   } // QuantizedModel(int[] layerSizes, Activation[] activationFunctions, boolean perColumn)
+
+/**
+ * returns the number of nodes of every layer of the given weight matrices
+ */
+   static int[] layerSizes(WeightMatrix[] weights)
+   {
+      int[] sizes = new int[weights.length + 1];
+      int l;
+
+      sizes[0] = weights[0].numFrom;
+      for (l = 0; l < weights.length; l++)
+      {
+         sizes[l + 1] = weights[l].numTo;
+      }
+      return sizes;
+   }
+
+/**
+ * runs one input set through the quantized network
+ * @param input input values
+ * @return the output activations, overwritten by the next call
+ */
+   public double[] forward(double[] input)
+   {
+      byte[] w;
+      float[] scale;
+      double[] in;
+      double[] out;
+      double max;
+      double inverse;
+      double inScale;
+      int accumulator;
+      int l;
+      int to;
+      int from;
+      int base;
+
+      activations[0] = input;
+      for (l = 0; l < numLayers; l++)
+      {
+         w = weights[l];
+         scale = scales[l];
+         in = activations[l];
+         out = activations[l + 1];
+
+         max = 0.0;
+         for (from = 0; from < numFrom[l]; from++)
+         {
+            scaled[from] = perColumn ? in[from] * scale[from] : in[from];
+            max = Math.max(max, Math.abs(scaled[from]));
+         }
+         inScale = max / 127.0;
+         inverse = max == 0.0 ? 0.0 : 127.0 / max;
+         for (from = 0; from < numFrom[l]; from++)
+         {
+            quantized[from] = (byte) Math.round(scaled[from] * inverse);
+         }
+
+         for (to = 0; to < numTo[l]; to++)
+         {
+            base = to * numFrom[l];
+            accumulator = 0;
+            for (from = 0; from < numFrom[l]; from++)
+            {
+               accumulator += w[base + from] * quantized[from];
+            }
+            out[to] = perColumn ? accumulator * inScale : accumulator * inScale * scale[to];
+         }
+         activationFunctions[l].applyInPlace(out, numTo[l]);
+      } // for (l = 0; l < numLayers; l++)
+      return activations[numLayers];
+   } // public double[] forward(double[] input)
+
+/**
+ * returns double weight matrices holding the dequantized weights
+ */
+   public WeightMatrix[] toWeightMatrices()
+   {
+      WeightMatrix[] result = new WeightMatrix[numLayers];
+      int l;
+      int to;
+      int from;
+      int n;
+
+      for (l = 0; l < numLayers; l++)
+      {
+         result[l] = new WeightMatrix(numFrom[l], numTo[l]);
+         for (to = 0; to < numTo[l]; to++)
+         {
+            for (from = 0; from < numFrom[l]; from++)
+            {
+               n = to * numFrom[l] + from;
+               result[l].data[n] = weights[l][n] * (double) scales[l][perColumn ? from : to];
+            }
+         }
+      }
+      return result;
+   } // public WeightMatrix[] toWeightMatrices()
+
+/**
+ * returns the number of bytes the quantized weights and their scales take up
+ */
+   public long sizeInBytes()
+   {
+      long size = 0;
+      int l;
+
+      for (l = 0; l < numLayers; l++)
+      {
+         size += weights[l].length + (long) scales[l].length * Float.BYTES;
+      }
+      return size;
+   }
+
+/**
+ * writes the quantized weights to a quantized weights file, overwriting it if it exists
+ * @param fileName file to be saved to
+ */
+   public void save(String fileName) throws IOException
+   {
+      int header = headerLength(numLayers);
+      CRC32 crc = new CRC32();
+      ByteBuffer headerBuffer = ByteBuffer.allocate(header).order(ByteOrder.LITTLE_ENDIAN);
+      ByteBuffer block;
+      int l;
+
+      try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         channel.position(header);
+         for (l = 0; l < numLayers; l++)
+         {
+            block = ByteBuffer.allocate(scales[l].length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            block.asFloatBuffer().put(scales[l]);
+            crc.update(block);
+            block.rewind();
+            while (block.hasRemaining())
+            {
+               channel.write(block);
+            }
+
+            block = ByteBuffer.wrap(weights[l]);
+            crc.update(block);
+            block.rewind();
+            while (block.hasRemaining())
+            {
+               channel.write(block);
+            }
+         } // for (l = 0; l < numLayers; l++)
+
+         headerBuffer.putInt(MAGIC);
+         headerBuffer.putInt(VERSION);
+         headerBuffer.putInt(numLayers);
+         headerBuffer.putInt(numFrom[0]);
+         for (l = 0; l < numLayers; l++)
+         {
+            headerBuffer.putInt(numTo[l]);
+         }
+         headerBuffer.putInt(perColumn ? 1 : 0);
+         headerBuffer.putLong(crc.getValue());
+         headerBuffer.clear();
+         channel.position(0);
+         while (headerBuffer.hasRemaining())
+         {
+            channel.write(headerBuffer);
+         }
+      } // try (FileChannel channel = ...)
+   } // public void save(String fileName) throws IOException
+
+/**
+ * reads a quantized weights file, after checking that the dimensions in its header match the given layer sizes and that
+ * its checksum matches its contents
+ * @param fileName quantized weights file
+ * @param layerSizes number of nodes of every layer, from the input layer to the output layer
+ * @param activationFunctions activation function of every layer
+ */
+   public static QuantizedModel load(String fileName, int[] layerSizes, Activation[] activationFunctions) throws Exception
+   {
+      int header = headerLength(layerSizes.length - 1);
+      CRC32 crc = new CRC32();
+      ByteBuffer headerBuffer = ByteBuffer.allocate(header).order(ByteOrder.LITTLE_ENDIAN);
+      ByteBuffer block;
+      QuantizedModel model;
+      long position;
+      long expectedChecksum;
+      int l;
+
+      try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel())
+      {
+         if (channel.size() < header)
+         {
+            throw new Exception("Weights file does not match dimensionality in config file!");
+         }
+
+         BinaryWeights.readFully(channel, headerBuffer, 0);
+         if (headerBuffer.getInt() != MAGIC || headerBuffer.getInt() != VERSION)
+         {
+            throw new Exception("<" + fileName + "> is not a quantized weights file!");
+         }
+         if (headerBuffer.getInt() != layerSizes.length - 1)
+         {
+            throw new Exception("Weights file does not match dimensionality in config file!");
+         }
+         for (l = 0; l < layerSizes.length; l++)
+         {
+            if (headerBuffer.getInt() != layerSizes[l])
+            {
+               throw new Exception("Weights file does not match dimensionality in config file!");
+            }
+         }
+         model = new QuantizedModel(layerSizes, activationFunctions, headerBuffer.getInt() == 1);
+         expectedChecksum = headerBuffer.getLong();
+
+         position = header;
+         for (l = 0; l < model.numLayers; l++)
+         {
+            if (position + (long) model.scales[l].length * Float.BYTES + model.weights[l].length > channel.size())
+            {
+               throw new Exception("Weights file does not match dimensionality in config file!");
+            }
+
+            block = ByteBuffer.allocate(model.scales[l].length * Float.BYTES);
+            BinaryWeights.readFully(channel, block, position);
+            block.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(model.scales[l]);
+            crc.update(block);
+            position += block.capacity();
+
+            block = ByteBuffer.wrap(model.weights[l]);
+            BinaryWeights.readFully(channel, block, position);
+            crc.update(block);
+            position += block.capacity();
+         } // for (l = 0; l < model.numLayers; l++)
+      } // try (RandomAccessFile file = ...)
+
+      if (crc.getValue() != expectedChecksum)
+      {
+         throw new Exception("Weights file checksum does not match its contents!");
+      }
+      return model;
+   } // public static QuantizedModel load(String fileName, int[] layerSizes, Activation[] activationFunctions) throws Exception
+
+/**
+ * returns the length in bytes of the header of a file holding numMatrices weight matrices, padded to a multiple of 8
+ */
+   public static int headerLength(int numMatrices)
+   {
+      int length = 4 * Integer.BYTES + (numMatrices + 1) * Integer.BYTES + Long.BYTES;
+      return (length + 7) / 8 * 8;
+   }
+
+} // public class QuantizedModel
@@ -0,0 +1,142 @@
+/**
+ * This class stores a pruned weight matrix in compressed sparse row (CSR) form: only the weights that are not zero are
+ * kept, row by row, so a layer whose weights have mostly been pruned away costs memory and time in proportion to the
+ * weights that are left rather than to numFrom * numTo.
+ *
+ * The rows are the nodes of the later layer, as in WeightMatrix. The weights of node "to" are values[rowStart[to]] to
+ * values[rowStart[to + 1] - 1], and columns holds the node of the earlier layer each of them comes from, in increasing
+ * order. The forward pass therefore adds up the same products in the same order as WeightMatrix.multiplyRows and only
+ * skips the terms whose weight is zero, so for finite inputs both produce exactly the same theta values.
+ *
+ * A SparseMatrix is a snapshot of the weights it was built from and is never written after construction.
+ *
+ * Methods contained in file:
+ *
+ * public SparseMatrix(WeightMatrix weights)
+ * public static double density(WeightMatrix weights)
+ * public int numNonZero()
+ * public double density()
+ * public void multiply(double[] in, double[] out)
+ * public void multiplyRows(double[] in, double[] out, int toStart, int toEnd)
+ */
+public class SparseMatrix
+{
+   final int numFrom;
+   final int numTo;
+   final int[] rowStart;
+   final int[] columns;
+   final double[] values;
+
+/**
+ * compresses the weights of a weight matrix that are not zero
+ */
+   public SparseMatrix(WeightMatrix weights)
+   {
+      int count = 0;
+      int n;
+      int to;
+      int from;
+      int base;
+
+      numFrom = weights.numFrom;
+      numTo = weights.numTo;
+      for (n = 0; n < weights.data.length; n++)
+      {
+         if (weights.data[n] != 0.0)
+         {
+            count++;
+         }
+      }
+
+      rowStart = new int[numTo + 1];
+      columns = new int[count];
+      values = new double[count];
+      n = 0;
+      for (to = 0; to < numTo; to++)
+      {
+         rowStart[to] = n;
+         base = to * numFrom;
+         for (from = 0; from < numFrom; from++)
+         {
+            if (weights.data[base + from] != 0.0)
+            {
+               columns[n] = from;
+               values[n] = weights.data[base + from];
+               n++;
+            }
+         }
+      } // for (to = 0; to < numTo; to++)
+      rowStart[numTo] = n;
+   } // public SparseMatrix(WeightMatrix weights)
+
+/**
+ * returns the fraction of the weights of a dense matrix that are not zero
+ */
+   public static double density(WeightMatrix weights)
+   {
+      long count = 0;
+      int n;
+
+      for (n = 0; n < weights.data.length; n++)
+      {
+         if (weights.data[n] != 0.0)
+         {
+            count++;
+         }
+      }
+      return (double) count / weights.data.length;
+   } // public static double density(WeightMatrix weights)
+
+/**
+ * returns the number of weights stored
+ */
+   public int numNonZero()
+   {
+      return values.length;
+   }
+
+/**
+ * returns the fraction of the weights of the dense matrix that are stored
+ */
+   public double density()
+   {
+      return (double) values.length / ((long) numFrom * numTo);
+   }
+
+/**
+ * computes the theta values of the later layer, out[to] = sum over the stored weights w(from, to) of in[from] * w(from, to)
+ * @param in activations of the earlier layer, length numFrom
+ * @param out receives the theta values of the later layer, length numTo
+ */
+   public void multiply(double[] in, double[] out)
+   {
+      multiplyRows(in, out, 0, numTo);
+   }
+
+/**
+ * computes the theta values of the nodes toStart (inclusive) to toEnd (exclusive) of the later layer
+ * @param in activations of the earlier layer, length numFrom
+ * @param out receives the theta values of the later layer, only indices toStart to toEnd are written
+ * @param toStart first node of the later layer to compute
+ * @param toEnd one past the last node of the later layer to compute
+ */
+   public void multiplyRows(double[] in, double[] out, int toStart, int toEnd)
+   {
+      int to;
+      int n;
+      int end;
+      double theta;
+
+      for (to = toStart; to < toEnd; to++)
+      {
+         theta = 0.0;
+         end = rowStart[to + 1];
+         for (n = rowStart[to]; n < end; n++)
+         {
+            theta += in[columns[n]] * values[n];
+         }
+         out[to] = theta;
+      }
+   } // public void multiplyRows(double[] in, double[] out, int toStart, int toEnd)
+
+} // public class SparseMatrix
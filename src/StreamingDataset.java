@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class streams the records of a packed DatasetCache file from disk in fixed-size chunks so that a dataset larger than
+ * the heap can be trained on. Only two chunks ever exist: while the network works on one of them, a background prefetch
+ * thread reads the next consecutive records into the other (double buffering), so disk reads overlap with computation and
+ * memory use does not depend on the number of input sets.
+ *
+ * The prefetch thread walks the file from the first record to the last and then starts over, so every epoch sees the input
+ * sets in the same order. Consumers call next() to receive the following chunk and release() to hand it back for refilling.
+ *
+ * Methods contained in file:
+ *
+ * public StreamingDataset(String fileName, int numSets, int numInputs, int numOutputs, int chunkSize) throws Exception
+ * public Chunk next() throws Exception
+ * public void release(Chunk chunk)
+ * public boolean isLastChunk(Chunk chunk)
+ * public void close()
+ * public void prefetch()
+ * public void fill(Chunk chunk, int start) throws IOException
+ */
+public class StreamingDataset
+{
+
+/**
+ * one buffer of consecutive input sets, count rows starting at input set start
+ */
+   public static class Chunk
+   {
+      final double[][] inputs;
+      final double[][] targets;
+      int start;
+      int count;
+      IOException failure;
+
+      Chunk(int chunkSize, int numInputs, int numOutputs)
+      {
+         inputs = new double[chunkSize][numInputs];
+         targets = new double[chunkSize][numOutputs];
+      }
+   } // public static class Chunk
+
+   final RandomAccessFile file;
+   final FileChannel channel;
+   final int numSets;
+   final int numInputs;
+   final int numOutputs;
+   final int chunkSize;
+   final ByteBuffer readBuffer;
+   final BlockingQueue<Chunk> emptyChunks;
+   final BlockingQueue<Chunk> fullChunks;
+   final Thread prefetcher;
+
+/**
+ * opens a packed dataset file, checks that it matches the configured dimensions and starts the prefetch thread
+ * @param fileName packed dataset file written by DatasetCache
+ * @param numSets expected number of input sets
+ * @param numInputs expected number of inputs per set
+ * @param numOutputs expected number of truth table values per set
+ * @param chunkSize number of input sets per chunk
+ */
+   public StreamingDataset(String fileName, int numSets, int numInputs, int numOutputs, int chunkSize) throws Exception
+   {
+      int[] dimensions;
+
+      file = new RandomAccessFile(fileName, "r");
+      channel = file.getChannel();
+      dimensions = DatasetCache.readHeader(channel, fileName);
+      if (dimensions[0] != numSets || dimensions[1] != numInputs || dimensions[2] != numOutputs)
+      {
+         file.close();
+         throw new Exception("Dataset cache does not match dimensionality in config file!");
+      }
+
+      this.numSets = numSets;
+      this.numInputs = numInputs;
+      this.numOutputs = numOutputs;
+      this.chunkSize = Math.min(chunkSize, numSets);
+      readBuffer = ByteBuffer.allocateDirect(this.chunkSize * (numInputs + numOutputs) * Double.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+      emptyChunks = new ArrayBlockingQueue<Chunk>(2);
+      fullChunks = new ArrayBlockingQueue<Chunk>(2);
+      emptyChunks.add(new Chunk(this.chunkSize, numInputs, numOutputs));
+      emptyChunks.add(new Chunk(this.chunkSize, numInputs, numOutputs));
+
+      prefetcher = new Thread(this::prefetch, "dataset-prefetch");
+      prefetcher.setDaemon(true);
+      prefetcher.start();
+   } // public StreamingDataset(...)
+
+/**
+ * waits for the prefetch thread to fill the next chunk and returns it
+ * @return the next chunk of input sets, wrapping around to the first input set after the last
+ */
+   public Chunk next() throws Exception
+   {
+      Chunk chunk = fullChunks.take();
+
+      if (chunk.failure != null)
+      {
+         throw chunk.failure;
+      }
+      return chunk;
+   }
+
+/**
+ * hands a chunk that has been fully used back to the prefetch thread to be refilled
+ */
+   public void release(Chunk chunk)
+   {
+      emptyChunks.add(chunk);
+   }
+
+/**
+ * returns true if the chunk holds the last input set of the file, marking the end of an epoch
+ */
+   public boolean isLastChunk(Chunk chunk)
+   {
+      return chunk.start + chunk.count >= numSets;
+   }
+
+/**
+ * stops the prefetch thread and closes the file
+ */
+   public void close()
+   {
+      prefetcher.interrupt();
+      try
+      {
+         prefetcher.join();
+         file.close();
+      }
+      catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+   } // public void close()
+
+/**
+ * body of the prefetch thread, fills empty chunks with consecutive records for as long as the dataset is open
+ */
+   public void prefetch()
+   {
+      int start = 0;
+      Chunk chunk;
+
+      try
+      {
+         while (!Thread.currentThread().isInterrupted())
+         {
+            chunk = emptyChunks.take();
+            try
+            {
+               fill(chunk, start);
+            }
+            catch (IOException e)
+            {
+               chunk.failure = e;
+            }
+            fullChunks.put(chunk);
+            start = start + chunk.count >= numSets ? 0 : start + chunk.count;
+         }
+      } // try
+      catch (InterruptedException e)
+      {
+         // the dataset was closed
+      }
+   } // public void prefetch()
+
+/**
+ * reads up to chunkSize records starting at input set start into a chunk
+ * @param chunk chunk to be filled
+ * @param start index of the first input set to read
+ */
+   public void fill(Chunk chunk, int start) throws IOException
+   {
+      long position = DatasetCache.recordOffset(start, numInputs, numOutputs);
+      DoubleBuffer doubles;
+      int index;
+
+      chunk.start = start;
+      chunk.count = Math.min(chunkSize, numSets - start);
+      readBuffer.clear();
+      readBuffer.limit(chunk.count * (numInputs + numOutputs) * Double.BYTES);
+      while (readBuffer.hasRemaining())
+      {
+         if (channel.read(readBuffer, position + readBuffer.position()) < 0)
+         {
+            throw new IOException("Dataset cache ended before input set " + (numSets - 1) + "!");
+         }
+      }
+
+      readBuffer.flip();
+      doubles = readBuffer.asDoubleBuffer();
+      for (index = 0; index < chunk.count; index++)
+      {
+         doubles.get(chunk.inputs[index]);
+         doubles.get(chunk.targets[index]);
+      }
+   } // public void fill(Chunk chunk, int start) throws IOException
+
+} // public class StreamingDataset
@@ -0,0 +1,413 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * This class runs a hyperparameter sweep: it trains many configurations of a Network at once on a bounded thread pool and
+ * ranks them. A sweep is configured by a "sweep" object inside a training config, which serves as the base configuration
+ * of every trial. Its "parameters" object maps config keys to the values to try, each either a list of values or a range
+ * {"min": ..., "max": ...} (with "log": true to sample it log-uniformly), and every trial is the base configuration with one
+ * value of each of those keys put in:
+ *
+ *    grid     every combination of the listed values, the last key (in alphabetical order) changing fastest
+ *    random   numTrials trials, each value picked uniformly from its list or range by a generator seeded by seed
+ *
+ * The first trial loads the possible inputs and truth table as a single run would, and every other trial trains on those
+ * same arrays, which no network ever writes to, so the dataset is parsed and held only once however many trials there are.
+ * That is why the keys that describe the dataset cannot be swept, and why every trial keeps its inputs in memory.
+ *
+ * At most threads trials train at the same time. The network of the first trial is created on the calling thread before
+ * the pool starts, since it loads the dataset; every other trial's network is created on its pool thread when the trial
+ * starts. Each is dropped when its trial ends, so only the running trials and the best one so far are held in memory.
+ * Every trial prints one line when it ends. The trials are then ranked, those that reached the error threshold first, by
+ * the time they took to reach it, and the others after them by their final error. The ranking with the final error,
+ * iterations and training time of every trial is printed and written as CSV to summaryFileName, and the weights of the
+ * best trial are stored in outputWeightsFileName.
+ *
+ * Methods contained in file:
+ *
+ * public Sweep(JSONObject base)
+ * public void run()
+ * public void runTrial(Trial trial, Network net)
+ * public ArrayList<JSONObject> gridTrials(String[] keys)
+ * public ArrayList<JSONObject> randomTrials(String[] keys)
+ * public Object sample(Object values, SplittableRandom random)
+ * public void writeSummary(Trial[] ranking) throws Exception
+ * public static String describe(JSONObject values)
+ * public static String[] sortedKeys(JSONObject json)
+ * public static JSONObject copyWith(JSONObject json, Map<?, ?> values)
+ */
+public class Sweep
+{
+   static final String[] FIXED_KEYS = {"runOnly", "numInputs", "numOutputs", "numPossibleInputs", "inputFileName",
+         "truthTableFileName", "imageDirectory", "imageWidth", "imageHeight", "invertImages", "datasetCacheFileName",
+         "streamInputs", "streamChunkSize", "precision", "outputWeightsFileName"}; // keys that cannot be swept
+   static final String[] UNSUPPORTED_KEYS = {"checkpointFileName", "telemetryFileName", "telemetryMBean",
+         "quantizedWeightsFileName", "distributedWorkers"}; // would be written by or run for every trial at once
+
+/**
+ * one configuration of a sweep and how training it went
+ */
+   static final class Trial
+   {
+      final int number;
+      final JSONObject values;
+      double error;
+      int numIterations;
+      double trainingTime;
+      double thresholdTime;
+      int thresholdIterations;
+
+      Trial(int number, JSONObject values)
+      {
+         this.number = number;
+         this.values = values;
+      }
+   } // static final class Trial
+
+   final JSONObject base;
+   final JSONObject parameters;
+   final String search;
+   final int numTrials;
+   final long seed;
+   final int threads;
+   final String summaryFileName;
+   Trial[] trials;
+   int numDone;
+   Trial best;
+   Network bestNetwork;
+
+/**
+ * reads the sweep settings from the "sweep" object of a config: "parameters" (required), "search" ("grid", the default,
+ * or "random"), "numTrials" (random search only, default 10), "seed" (random search only, default random), "threads"
+ * (default the number of processors) and "summaryFileName" (default "sweepSummary.csv")
+ * @param base training config holding the sweep object, the base configuration of every trial
+ */
+   public Sweep(JSONObject base)
+   {
+      JSONObject json = (JSONObject) base.get("sweep");
+      ArrayList<JSONObject> values;
+      String[] keys;
+      int k;
+
+      this.base = base;
+      parameters = (JSONObject) json.get("parameters");
+      search = json.containsKey("search") ? (String) json.get("search") : "grid";
+      numTrials = json.containsKey("numTrials") ? Math.toIntExact((long) json.get("numTrials")) : 10;
+      seed = json.containsKey("seed") ? (long) json.get("seed") : System.nanoTime();
+      threads = json.containsKey("threads") ? Math.toIntExact((long) json.get("threads"))
+            : Runtime.getRuntime().availableProcessors();
+      summaryFileName = json.containsKey("summaryFileName") ? (String) json.get("summaryFileName") : "sweepSummary.csv";
+
+      if (parameters == null || parameters.isEmpty() || (!search.equals("grid") && !search.equals("random")))
+      {
+         System.out.println("A sweep needs \"parameters\" to sweep and a \"search\" that is \"grid\" or \"random\"!");
+         System.exit(0);
+      }
+      if (base.containsKey("runOnly") && (boolean) base.get("runOnly"))
+      {
+         System.out.println("A sweep needs a training config (runOnly false)!");
+         System.exit(0);
+      }
+      if ((base.containsKey("streamInputs") && (boolean) base.get("streamInputs"))
+            || (base.containsKey("precision") && !base.get("precision").equals("double")))
+      {
+         System.out.println("A sweep needs in-memory inputs and precision \"double\" to share the dataset between trials!");
+         System.exit(0);
+      }
+      for (k = 0; k < UNSUPPORTED_KEYS.length; k++)
+      {
+         if (base.containsKey(UNSUPPORTED_KEYS[k]))
+         {
+            System.out.println("\"" + UNSUPPORTED_KEYS[k] + "\" is not supported in a sweep, every trial would write it!");
+            System.exit(0);
+         }
+      }
+
+      keys = sortedKeys(parameters);
+      for (k = 0; k < keys.length; k++)
+      {
+         if (Arrays.asList(FIXED_KEYS).contains(keys[k]))
+         {
+            System.out.println("\"" + keys[k] + "\" describes the shared dataset or output and cannot be swept!");
+            System.exit(0);
+         }
+         if (search.equals("grid") && !(parameters.get(keys[k]) instanceof JSONArray))
+         {
+            System.out.println("A grid search needs a list of values for \"" + keys[k] + "\"!");
+            System.exit(0);
+         }
+      } // for (k = 0; k < keys.length; k++)
+
+      values = search.equals("grid") ? gridTrials(keys) : randomTrials(keys);
+      if (values.isEmpty())
+      {
+         System.out.println("The sweep has no trials!");
+         System.exit(0);
+      }
+      trials = new Trial[values.size()];
+      for (k = 0; k < trials.length; k++)
+      {
+         trials[k] = new Trial(k + 1, values.get(k));
+      }
+   } // public Sweep(JSONObject base)
+
+/**
+ * trains every trial on the thread pool, then prints and writes the ranking and stores the weights of the best trial
+ */
+   public void run()
+   {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+      Network first;
+      Trial[] ranking;
+      int k;
+
+      System.out.println("Sweep: " + trials.length + " trials (" + search + " search"
+            + (search.equals("random") ? ", seed " + seed : "") + ") on " + threads + " threads");
+      System.out.println();
+
+      first = new Network(copyWith(base, trials[0].values), null, null); // loads the dataset every trial shares
+      final double[][] inputs = first.possibleInputs;
+      final double[][] targets = first.truthTable;
+
+      tasks.add(pool.submit(() -> runTrial(trials[0], first)));
+      for (k = 1; k < trials.length; k++)
+      {
+         final Trial trial = trials[k];
+         tasks.add(pool.submit(() ->
+         {
+            runTrial(trial, new Network(copyWith(base, trial.values), inputs, targets));
+         }));
+      } // for (k = 1; k < trials.length; k++)
+
+      for (k = 0; k < tasks.size(); k++)
+      {
+         tasks.get(k).join();
+      }
+      pool.shutdown();
+
+      ranking = trials.clone();
+      Arrays.sort(ranking, Comparator.comparingInt((Trial trial) -> trial.thresholdTime >= 0.0 ? 0 : 1)
+            .thenComparingDouble(trial -> trial.thresholdTime >= 0.0 ? trial.thresholdTime : trial.error));
+
+      System.out.println();
+      System.out.println("Sweep results (best first):");
+      for (k = 0; k < ranking.length; k++)
+      {
+         System.out.println("\t" + (k + 1) + ". trial " + ranking[k].number + ": error " + ranking[k].error + ", "
+               + ranking[k].numIterations + " iterations, " + ranking[k].trainingTime + "ms"
+               + (ranking[k].thresholdTime >= 0.0 ? " (error threshold reached after " + ranking[k].thresholdTime + "ms, "
+               + ranking[k].thresholdIterations + " iterations)" : "") + "  " + describe(ranking[k].values));
+      }
+      System.out.println();
+
+      try
+      {
+         writeSummary(ranking);
+         System.out.println("Wrote sweep summary <" + summaryFileName + ">!");
+      }
+      catch (Exception e)
+      {
+         e.printStackTrace();
+      }
+      if (bestNetwork.outputFileName != null)
+      {
+         bestNetwork.storeWeights(bestNetwork.outputFileName);
+      }
+   } // public void run()
+
+/**
+ * trains the network of one trial without echoing or reporting anything, records how it went and keeps the network if
+ * it is the best one so far
+ * @param trial trial to train
+ * @param net network configured for the trial
+ */
+   public void runTrial(Trial trial, Network net)
+   {
+      net.quiet = true;
+      net.execute();
+      net.close();
+      trial.error = net.error;
+      trial.numIterations = net.numIterations;
+      trial.trainingTime = net.trainingTime;
+      trial.thresholdTime = net.thresholdTime;
+      trial.thresholdIterations = net.thresholdIterations;
+
+      synchronized (this)
+      {
+         numDone++;
+         System.out.println("Trial " + trial.number + " done (" + numDone + "/" + trials.length + "): error "
+               + trial.error + ", " + trial.numIterations + " iterations, " + trial.trainingTime + "ms  "
+               + describe(trial.values));
+         if (best == null || (trial.thresholdTime >= 0.0
+               ? best.thresholdTime < 0.0 || trial.thresholdTime < best.thresholdTime
+               : best.thresholdTime < 0.0 && trial.error < best.error))
+         {
+            best = trial;
+            bestNetwork = net;
+         }
+      } // synchronized (this)
+   } // public void runTrial(Trial trial, Network net)
+
+/**
+ * returns the values of every trial of a grid search, every combination of the listed values
+ * @param keys swept config keys, sorted
+ */
+   public ArrayList<JSONObject> gridTrials(String[] keys)
+   {
+      ArrayList<JSONObject> combinations = new ArrayList<JSONObject>();
+      ArrayList<JSONObject> extended;
+      JSONArray values;
+      int k;
+      int c;
+      int v;
+
+      combinations.add(new JSONObject());
+      for (k = 0; k < keys.length; k++)
+      {
+         values = (JSONArray) parameters.get(keys[k]);
+         extended = new ArrayList<JSONObject>();
+         for (c = 0; c < combinations.size(); c++)
+         {
+            for (v = 0; v < values.size(); v++)
+            {
+               extended.add(copyWith(combinations.get(c), Collections.singletonMap(keys[k], values.get(v))));
+            }
+         }
+         combinations = extended;
+      } // for (k = 0; k < keys.length; k++)
+      return combinations;
+   } // public ArrayList<JSONObject> gridTrials(String[] keys)
+
+/**
+ * returns the values of every trial of a random search
+ * @param keys swept config keys, sorted
+ */
+   public ArrayList<JSONObject> randomTrials(String[] keys)
+   {
+      ArrayList<JSONObject> trialValues = new ArrayList<JSONObject>();
+      SplittableRandom random = new SplittableRandom(seed);
+      HashMap<String, Object> values;
+      int n;
+      int k;
+
+      for (n = 0; n < numTrials; n++)
+      {
+         values = new HashMap<String, Object>();
+         for (k = 0; k < keys.length; k++)
+         {
+            values.put(keys[k], sample(parameters.get(keys[k]), random));
+         }
+         trialValues.add(copyWith(new JSONObject(), values));
+      }
+      return trialValues;
+   } // public ArrayList<JSONObject> randomTrials(String[] keys)
+
+/**
+ * picks one value of a swept key at random: an element of a list, a whole number of a range whose bounds are both
+ * whole numbers, or a double of any other range
+ * @param values list or range of the key
+ * @param random generator of the sweep
+ */
+   public Object sample(Object values, SplittableRandom random)
+   {
+      JSONArray list;
+      JSONObject range;
+      double min;
+      double max;
+
+      if (values instanceof JSONArray)
+      {
+         list = (JSONArray) values;
+         return list.get(random.nextInt(list.size()));
+      }
+
+      range = (JSONObject) values;
+      if (range.get("min") instanceof Long && range.get("max") instanceof Long)
+      {
+         return random.nextLong((long) range.get("min"), (long) range.get("max") + 1);
+      }
+      min = ((Number) range.get("min")).doubleValue();
+      max = ((Number) range.get("max")).doubleValue();
+      if (range.containsKey("log") && (boolean) range.get("log"))
+      {
+         return Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min)));
+      }
+      return min + random.nextDouble() * (max - min);
+   } // public Object sample(Object values, SplittableRandom random)
+
+/**
+ * writes the ranking as CSV, one row per trial from the best to the worst
+ * @param ranking trials, best first
+ */
+   public void writeSummary(Trial[] ranking) throws Exception
+   {
+      int k;
+
+      try (PrintWriter pw = new PrintWriter(summaryFileName))
+      {
+         pw.println("rank,trial,error,iterations,trainingMillis,thresholdMillis,thresholdIterations,parameters");
+         for (k = 0; k < ranking.length; k++)
+         {
+            pw.println((k + 1) + "," + ranking[k].number + "," + ranking[k].error + "," + ranking[k].numIterations + ","
+                  + ranking[k].trainingTime + "," + (ranking[k].thresholdTime >= 0.0 ? ranking[k].thresholdTime : "") + ","
+                  + (ranking[k].thresholdTime >= 0.0 ? ranking[k].thresholdIterations : "") + ",\""
+                  + describe(ranking[k].values) + "\"");
+         }
+      }
+   } // public void writeSummary(Trial[] ranking) throws Exception
+
+/**
+ * returns the swept values of a trial as key=value pairs in alphabetical order of the keys
+ */
+   public static String describe(JSONObject values)
+   {
+      String[] keys = sortedKeys(values);
+      StringBuilder description = new StringBuilder();
+      int k;
+
+      for (k = 0; k < keys.length; k++)
+      {
+         description.append(k > 0 ? " " : "").append(keys[k]).append("=").append(values.get(keys[k]));
+      }
+      return description.toString();
+   } // public static String describe(JSONObject values)
+
+/**
+ * returns the keys of a JSON object in alphabetical order
+ */
+   public static String[] sortedKeys(JSONObject json)
+   {
+      Object[] names = json.keySet().toArray();
+      String[] keys = Arrays.copyOf(names, names.length, String[].class);
+
+      Arrays.sort(keys);
+      return keys;
+   } // public static String[] sortedKeys(JSONObject json)
+
+/**
+ * returns a copy of a JSON object with the given values put in over its own. json-simple's JSONObject is a raw map, so
+ * this is the one place where the sweep puts values into one
+ * @param json object to copy
+ * @param values values to put in
+ */
+   @SuppressWarnings("unchecked")
+   public static JSONObject copyWith(JSONObject json, Map<?, ?> values)
+   {
+      JSONObject copy = new JSONObject(json);
+
+      copy.putAll(values);
+      return copy;
+   } // public static JSONObject copyWith(JSONObject json, Map<?, ?> values)
+
+} // public class Sweep
@@ -0,0 +1,331 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class measures training one epoch at a time and publishes what it measured while training is still running. Every
+ * interval epochs it samples one epoch: its error, how long it took, how many patterns per second it trained and how that
+ * time divides into the forward pass, backpropagation and the weight update. Each sample is appended to a file, either as
+ * a CSV row or as one JSON object per line, and flushed so that the file can be followed as it grows, and it is exposed
+ * through the TrainingTelemetryMBean registered as MBEAN_NAME, whose Interval attribute can be changed while training runs.
+ *
+ * The training loops time their phases with now() and record() only during sampled epochs; in every other epoch both are
+ * a single branch, so a large interval keeps the cost of telemetry negligible even for tiny networks. Pattern by pattern
+ * training changes every weight inside backpropagation, so there its update time is counted as backward time. When data-
+ * parallel workers run the forward pass and backpropagation at the same time, the wall time they take is divided between
+ * the two in the proportion the workers spent on each.
+ *
+ * A TrainingTelemetry with neither a file nor the MBean is disabled and never samples anything.
+ *
+ * Methods contained in file:
+ *
+ * public TrainingTelemetry(String fileName, String format, int interval, boolean registerMBean)
+ * public boolean isEnabled()
+ * public void open() throws Exception
+ * public void close()
+ * public void startEpoch(int epoch)
+ * public long now()
+ * public long record(int phase, long start)
+ * public void recordShared(long start, long[] forwardNanos, long[] backwardNanos)
+ * public void endEpoch(double error, int numPatterns)
+ * String formatSample(Sample sample)
+ * public int getEpoch()
+ * public double getError()
+ * public double getEpochMillis()
+ * public double getPatternsPerSecond()
+ * public double getForwardMillis()
+ * public double getBackwardMillis()
+ * public double getUpdateMillis()
+ * public int getInterval()
+ * public void setInterval(int interval)
+ */
+public class TrainingTelemetry implements TrainingTelemetryMBean
+{
+   static final String MBEAN_NAME = "Network:type=TrainingTelemetry";
+   static final String CSV_HEADER = "epoch,error,epochMillis,patternsPerSecond,forwardMillis,backwardMillis,updateMillis";
+
+   static final int FORWARD = 0;
+   static final int BACKWARD = 1;
+   static final int UPDATE = 2;
+
+/**
+ * the measurements of one sampled epoch, replaced as a whole so that a JMX client never sees parts of two epochs
+ */
+   static final class Sample
+   {
+      final int epoch;
+      final double error;
+      final double epochMillis;
+      final double patternsPerSecond;
+      final double forwardMillis;
+      final double backwardMillis;
+      final double updateMillis;
+
+      Sample(int epoch, double error, double epochMillis, double patternsPerSecond, double forwardMillis,
+            double backwardMillis, double updateMillis)
+      {
+         this.epoch = epoch;
+         this.error = error;
+         this.epochMillis = epochMillis;
+         this.patternsPerSecond = patternsPerSecond;
+         this.forwardMillis = forwardMillis;
+         this.backwardMillis = backwardMillis;
+         this.updateMillis = updateMillis;
+      }
+   } // static final class Sample
+
+   final String fileName;
+   final String format;
+   final boolean registerMBean;
+   volatile int interval;
+   volatile Sample last = new Sample(0, Double.NaN, 0.0, 0.0, 0.0, 0.0, 0.0);
+
+   PrintWriter writer;
+   ObjectName mBeanName;
+   boolean timing; // true during an epoch that is being sampled
+   int epoch;
+   long epochStart;
+   final long[] phaseNanos = new long[3];
+
+/**
+ * creates the telemetry of a training run
+ * @param fileName file the samples are written to, null for none
+ * @param format "csv" or "jsonl"
+ * @param interval number of epochs between two samples
+ * @param registerMBean true to expose the samples through JMX
+ */
+   public TrainingTelemetry(String fileName, String format, int interval, boolean registerMBean)
+   {
+      this.fileName = fileName;
+      this.format = format;
+      this.interval = interval;
+      this.registerMBean = registerMBean;
+   }
+
+/**
+ * returns whether anything is sampled at all
+ */
+   public boolean isEnabled()
+   {
+      return fileName != null || registerMBean;
+   }
+
+/**
+ * creates the samples file, writing the header row of a CSV file, and registers the MBean
+ */
+   public void open() throws Exception
+   {
+      if (fileName != null)
+      {
+         writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+         if (format.equals("csv"))
+         {
+            writer.println(CSV_HEADER);
+            writer.flush();
+         }
+      }
+
+      if (registerMBean)
+      {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+         mBeanName = new ObjectName(MBEAN_NAME);
+         if (server.isRegistered(mBeanName)) // left behind by an earlier network in this JVM
+         {
+            server.unregisterMBean(mBeanName);
+         }
+         server.registerMBean(this, mBeanName);
+      }
+   } // public void open() throws Exception
+
+/**
+ * closes the samples file and unregisters the MBean
+ */
+   public void close()
+   {
+      if (writer != null)
+      {
+         writer.close();
+         writer = null;
+      }
+
+      if (mBeanName != null)
+      {
+         try
+         {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mBeanName);
+         }
+         catch (Exception e)
+         {
+            e.printStackTrace();
+         }
+         mBeanName = null;
+      }
+   } // public void close()
+
+/**
+ * called before every epoch, starts timing it if it is one of the sampled epochs
+ * @param epoch number of the epoch, counting from 1
+ */
+   public void startEpoch(int epoch)
+   {
+      timing = isEnabled() && epoch % Math.max(interval, 1) == 0;
+      if (timing)
+      {
+         this.epoch = epoch;
+         phaseNanos[FORWARD] = 0L;
+         phaseNanos[BACKWARD] = 0L;
+         phaseNanos[UPDATE] = 0L;
+         epochStart = System.nanoTime();
+      }
+   } // public void startEpoch(int epoch)
+
+/**
+ * returns the current time in nanoseconds during a sampled epoch and 0 otherwise
+ */
+   public long now()
+   {
+      return timing ? System.nanoTime() : 0L;
+   }
+
+/**
+ * adds the time since start to a phase during a sampled epoch
+ * @param phase FORWARD, BACKWARD or UPDATE
+ * @param start value of now() when the phase began
+ * @return the current time, for timing the next phase, or 0 outside of a sampled epoch
+ */
+   public long record(int phase, long start)
+   {
+      long time;
+
+      if (!timing)
+      {
+         return 0L;
+      }
+      time = System.nanoTime();
+      phaseNanos[phase] += time - start;
+      return time;
+   } // public long record(int phase, long start)
+
+/**
+ * divides the time since start, during which several workers ran the forward pass and backpropagation at once, between
+ * the two phases in the proportion of the time the workers spent on each
+ * @param start value of now() before the workers began
+ * @param forwardNanos time every worker spent on the forward pass
+ * @param backwardNanos time every worker spent on backpropagation
+ */
+   public void recordShared(long start, long[] forwardNanos, long[] backwardNanos)
+   {
+      long wall;
+      long forward = 0L;
+      long backward = 0L;
+      int w;
+
+      if (!timing)
+      {
+         return;
+      }
+      wall = System.nanoTime() - start;
+      for (w = 0; w < forwardNanos.length; w++)
+      {
+         forward += forwardNanos[w];
+         backward += backwardNanos[w];
+      }
+      if (forward + backward > 0L)
+      {
+         phaseNanos[FORWARD] += Math.round(wall * (double) forward / (forward + backward));
+         phaseNanos[BACKWARD] += wall - Math.round(wall * (double) forward / (forward + backward));
+      }
+   } // public void recordShared(long start, long[] forwardNanos, long[] backwardNanos)
+
+/**
+ * called after every epoch; at the end of a sampled epoch publishes its sample to the MBean and the samples file
+ * @param error summed error of the epoch
+ * @param numPatterns number of patterns trained on during the epoch
+ */
+   public void endEpoch(double error, int numPatterns)
+   {
+      long nanos;
+      Sample sample;
+
+      if (!timing)
+      {
+         return;
+      }
+      timing = false;
+      nanos = System.nanoTime() - epochStart;
+      sample = new Sample(epoch, error, nanos / 1e6, numPatterns * 1e9 / Math.max(nanos, 1L), phaseNanos[FORWARD] / 1e6,
+            phaseNanos[BACKWARD] / 1e6, phaseNanos[UPDATE] / 1e6);
+      last = sample;
+
+      if (writer != null)
+      {
+         writer.println(formatSample(sample));
+         writer.flush();
+      }
+   } // public void endEpoch(double error, int numPatterns)
+
+/**
+ * returns a sample as a CSV row or as a JSON object, depending on the format
+ */
+   String formatSample(Sample sample)
+   {
+      if (format.equals("csv"))
+      {
+         return sample.epoch + "," + sample.error + "," + sample.epochMillis + "," + sample.patternsPerSecond + ","
+               + sample.forwardMillis + "," + sample.backwardMillis + "," + sample.updateMillis;
+      }
+      return "{\"epoch\": " + sample.epoch + ", \"error\": " + sample.error + ", \"epochMillis\": " + sample.epochMillis
+            + ", \"patternsPerSecond\": " + sample.patternsPerSecond + ", \"forwardMillis\": " + sample.forwardMillis
+            + ", \"backwardMillis\": " + sample.backwardMillis + ", \"updateMillis\": " + sample.updateMillis + "}";
+   } // String formatSample(Sample sample)
+
+   public int getEpoch()
+   {
+      return last.epoch;
+   }
+
+   public double getError()
+   {
+      return last.error;
+   }
+
+   public double getEpochMillis()
+   {
+      return last.epochMillis;
+   }
+
+   public double getPatternsPerSecond()
+   {
+      return last.patternsPerSecond;
+   }
+
+   public double getForwardMillis()
+   {
+      return last.forwardMillis;
+   }
+
+   public double getBackwardMillis()
+   {
+      return last.backwardMillis;
+   }
+
+   public double getUpdateMillis()
+   {
+      return last.updateMillis;
+   }
+
+   public int getInterval()
+   {
+      return interval;
+   }
+
+   public void setInterval(int interval)
+   {
+      this.interval = interval;
+   }
+
+} // public class TrainingTelemetry
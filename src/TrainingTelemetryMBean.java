@@ -0,0 +1,43 @@
+/**
+ * This interface is the JMX management interface of TrainingTelemetry. Every attribute except Interval describes the
+ * most recent sampled epoch, so a JMX client such as jconsole can watch a long training run while it is going on.
+ *
+ * Methods contained in file:
+ *
+ * public int getEpoch()
+ * public double getError()
+ * public double getEpochMillis()
+ * public double getPatternsPerSecond()
+ * public double getForwardMillis()
+ * public double getBackwardMillis()
+ * public double getUpdateMillis()
+ * public int getInterval()
+ * public void setInterval(int interval)
+ */
+public interface TrainingTelemetryMBean
+{
+   int getEpoch();
+
+   double getError();
+
+   double getEpochMillis();
+
+   double getPatternsPerSecond();
+
+   double getForwardMillis();
+
+   double getBackwardMillis();
+
+   double getUpdateMillis();
+
+/**
+ * returns the number of epochs between two samples
+ */
+   int getInterval();
+
+/**
+ * changes the number of epochs between two samples, taking effect from the next epoch
+ */
+   void setInterval(int interval);
+
+} // public interface TrainingTelemetryMBean
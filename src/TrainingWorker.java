@@ -0,0 +1,172 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import org.json.simple.JSONObject;
+
+/**
+ * This class is one worker process of multi-process data-parallel training, coordinated by a ParameterServer. It reads the
+ * config file of the training run, but loads only its own shard of the possible inputs, and builds a network of the same
+ * shape whose weights are replaced by those the coordinator sends every round. For each round it pushes the next batch of
+ * its shard through a BatchWorkspace, once per epoch over the whole shard, and answers with the summed error and the
+ * gradients of the batch. It never changes the weights itself and writes no files, so the keys of the config for
+ * optimizers, checkpoints, validation, telemetry and pruning, which are the coordinator's business, are left out of the
+ * network it builds.
+ *
+ * The coordinator normally starts the workers itself; to start one by hand, run
+ *
+ *    java TrainingWorker configFile.json <host> <port> <worker> <numWorkers>
+ *
+ * where worker counts from 0. The worker exits when the coordinator tells it to stop or closes its socket.
+ *
+ * Methods contained in file:
+ *
+ * public TrainingWorker(Network network, int batchSize)
+ * public void connect(String host, int port, int worker) throws Exception
+ * public void serve() throws Exception
+ * public static void main(String[] args)
+ */
+public class TrainingWorker
+{
+   static final String[] COORDINATOR_KEYS = {"batchSize", "numThreads", "layerThreads", "optimizer",
+         "learningRateSchedule", "checkpointFileName", "resumeFromCheckpoint", "validationInputFileName",
+         "validationTruthTableFileName", "telemetryFileName", "telemetryMBean", "pruneThreshold", "pruneSparsity",
+         "quantizedWeightsFileName", "outputWeightsFileName", "distributedWorkers"}; // left out of the worker's network
+
+   final Network network;
+   final WeightMatrix[] weights;
+   final BatchWorkspace workspace;
+   final ByteBuffer message;
+   final DoubleBuffer payload;
+   final int numParameters;
+   SocketChannel channel;
+
+/**
+ * creates the worker of a network holding one shard of the possible inputs
+ * @param network network holding the shard
+ * @param batchSize number of patterns per round, 1 for the whole shard
+ */
+   public TrainingWorker(Network network, int batchSize)
+   {
+      int numParameters = 0;
+      int l;
+
+      this.network = network;
+      weights = network.getWeightMatrices();
+      for (l = 0; l < weights.length; l++)
+      {
+         numParameters += weights[l].data.length;
+      }
+      this.numParameters = numParameters;
+      workspace = new BatchWorkspace(network, weights,
+            Math.max(1, batchSize > 1 ? Math.min(batchSize, network.numPossibleInputSets) : network.numPossibleInputSets));
+      workspace.allocateGradients();
+      message = ParameterServer.allocateMessage(numParameters);
+      payload = ParameterServer.payload(message);
+   } // public TrainingWorker(Network network, int batchSize)
+
+/**
+ * connects to the coordinator and introduces the worker
+ * @param host host of the coordinator
+ * @param port port of the coordinator
+ * @param worker number of this worker
+ */
+   public void connect(String host, int port, int worker) throws Exception
+   {
+      channel = SocketChannel.open(new InetSocketAddress(host, port));
+      channel.socket().setTcpNoDelay(true);
+      message.putInt(0, worker);
+      message.putInt(4, numParameters);
+      message.putInt(8, network.numPossibleInputSets);
+      ParameterServer.write(channel, message, ParameterServer.MESSAGE_HEADER);
+   }
+
+/**
+ * answers rounds until the coordinator says stop: takes over the weights, trains on the batch of the round without
+ * changing them and sends back the error and the gradients
+ */
+   public void serve() throws Exception
+   {
+      int round;
+      int start;
+      int count;
+      double error;
+      int l;
+
+      while (true)
+      {
+         message.clear();
+         ParameterServer.read(channel, message, ParameterServer.MESSAGE_HEADER);
+         round = message.getInt(0);
+         if (round == ParameterServer.STOP)
+         {
+            break;
+         }
+         ParameterServer.read(channel, message, ParameterServer.MESSAGE_HEADER + numParameters * Double.BYTES);
+         payload.clear();
+         for (l = 0; l < weights.length; l++)
+         {
+            payload.get(weights[l].data);
+         }
+
+         start = round * workspace.capacity;
+         count = Math.max(0, Math.min(workspace.capacity, network.numPossibleInputSets - start));
+         error = 0.0;
+         if (count > 0)
+         {
+            error = workspace.forward(network.possibleInputs, network.truthTable, start, count);
+            workspace.backward();
+            workspace.accumulateGradients();
+            payload.clear();
+            for (l = 0; l < weights.length; l++)
+            {
+               payload.put(workspace.gradients[l].data);
+            }
+         } // if (count > 0)
+
+         message.putDouble(0, error);
+         message.putInt(8, count);
+         ParameterServer.write(channel, message,
+               count > 0 ? ParameterServer.MESSAGE_HEADER + numParameters * Double.BYTES : ParameterServer.MESSAGE_HEADER);
+      } // while (true)
+      channel.close();
+   } // public void serve() throws Exception
+
+/**
+ * runs a worker process: java TrainingWorker configFile.json host port worker numWorkers
+ */
+   public static void main(String[] args)
+   {
+      JSONObject json = Network.readConfigFile(args[0]);
+      int worker = Integer.parseInt(args[3]);
+      int numWorkers = Integer.parseInt(args[4]);
+      int batchSize = 1;
+      TrainingWorker trainingWorker;
+      int k;
+
+      if (json.containsKey("batchSize"))
+      {
+         batchSize = Math.toIntExact((long) json.get("batchSize"));
+      }
+      for (k = 0; k < COORDINATOR_KEYS.length; k++)
+      {
+         json.remove(COORDINATOR_KEYS[k]);
+      }
+      json = Sweep.copyWith(json, Map.of("preLoadedWeights", false, "minRandomWeight", 0.0,
+            "maxRandomWeight", 0.0)); // the weights come from the coordinator
+
+      try
+      {
+         trainingWorker = new TrainingWorker(new Network(json, worker, numWorkers), batchSize);
+         trainingWorker.connect(args[1], Integer.parseInt(args[2]), worker);
+         trainingWorker.serve();
+      }
+      catch (Exception e)
+      {
+         e.printStackTrace();
+         System.exit(1);
+      }
+   } // public static void main(String[] args)
+
+} // public class TrainingWorker
@@ -0,0 +1,285 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class measures how well the network generalizes while it trains, and stops training once that stops improving.
+ * Every interval epochs the training thread copies the weights into a snapshot and hands it to a background thread. That
+ * thread runs every input set of a held-out validation set through the snapshot with InferenceModel.predictBatch and sums
+ * the error 0.5 * (t - f)^2 over all of them, the same error training reports. Training never pauses for validation: when
+ * a validation falls due while no snapshot is free, it is taken after the first epoch that finds one free again.
+ *
+ * The snapshot with the lowest validation error so far is kept. On an improvement the evaluated snapshot simply becomes
+ * the best one and the previous best is handed back for reuse, so no weights are copied beyond the one snapshot per
+ * validation. After patience validations in a row without an improvement, shouldStop() returns true. Once training is
+ * over, restoreBest() validates the final weights as well, which may never have been handed over, and copies the best
+ * weights back into the network unless the final ones do at least as well.
+ *
+ * Two snapshots exist at all times, so validation holds two extra copies of the weights.
+ *
+ * Methods contained in file:
+ *
+ * public Validator(double[][] inputs, double[][] targets, WeightMatrix[] weights, Activation[] activationFunctions,
+ *       boolean simd, int interval, int patience)
+ * public void afterEpoch(WeightMatrix[] weights, int numIterations, double trainingError)
+ * public boolean shouldStop()
+ * public void close()
+ * public boolean restoreBest(WeightMatrix[] weights, int numIterations, double trainingError)
+ * public Snapshot copy(WeightMatrix[] weights, int numIterations, double trainingError)
+ * public void validateSnapshots()
+ * public double validate(Snapshot snapshot)
+ */
+public class Validator
+{
+
+/**
+ * a copy of the weights at the end of one epoch, with a model sharing them
+ */
+   static class Snapshot
+   {
+      final WeightMatrix[] weights;
+      final InferenceModel model;
+      int numIterations;
+      double trainingError;
+
+      Snapshot() // the marker that closes the background thread
+      {
+         weights = null;
+         model = null;
+      }
+
+      Snapshot(WeightMatrix[] shapes, Activation[] activationFunctions, boolean simd)
+      {
+         int l;
+
+         weights = new WeightMatrix[shapes.length];
+         for (l = 0; l < shapes.length; l++)
+         {
+            weights[l] = new WeightMatrix(shapes[l].numFrom, shapes[l].numTo);
+         }
+         model = InferenceModel.share(weights, activationFunctions, simd);
+      }
+   } // static class Snapshot
+
+   final double[][] inputs;
+   final double[][] targets;
+   final double[][] outputs;
+   final int interval;
+   final int patience;
+   final BlockingQueue<Snapshot> idleSnapshots;
+   final BlockingQueue<Snapshot> pendingSnapshots;
+   final Thread validator;
+   boolean due;
+   volatile boolean stop;
+   volatile Snapshot best;
+   volatile double bestError = Double.MAX_VALUE;
+   volatile double lastError = Double.NaN;
+   volatile int numValidations;
+   int validationsWithoutImprovement;
+
+/**
+ * creates the validator of a training run and starts its background thread
+ * @param inputs input sets of the validation set
+ * @param targets truth table rows of the validation set
+ * @param weights weight matrices of the network, whose shapes the snapshots take
+ * @param activationFunctions activation function of every layer
+ * @param simd true to run the snapshots with VectorKernels
+ * @param interval number of epochs between two validations
+ * @param patience number of validations in a row without an improvement after which training should stop, 0 for never
+ */
+   public Validator(double[][] inputs, double[][] targets, WeightMatrix[] weights, Activation[] activationFunctions,
+         boolean simd, int interval, int patience)
+   {
+      this.inputs = inputs;
+      this.targets = targets;
+      this.interval = interval;
+      this.patience = patience;
+      outputs = new double[inputs.length][targets[0].length];
+      idleSnapshots = new ArrayBlockingQueue<Snapshot>(2);
+      pendingSnapshots = new ArrayBlockingQueue<Snapshot>(2);
+      idleSnapshots.add(new Snapshot(weights, activationFunctions, simd));
+      idleSnapshots.add(new Snapshot(weights, activationFunctions, simd));
+
+      validator = new Thread(this::validateSnapshots, "validation");
+      validator.setDaemon(true);
+      validator.start();
+   } // public Validator(...)
+
+/**
+ * called after every epoch; when a validation is due and a snapshot is free, copies the weights into it and hands it over
+ * to be validated
+ * @param weights current weight matrices
+ * @param numIterations number of epochs completed
+ * @param trainingError summed training error of the last epoch
+ */
+   public void afterEpoch(WeightMatrix[] weights, int numIterations, double trainingError)
+   {
+      Snapshot snapshot;
+
+      if (numIterations % interval == 0)
+      {
+         due = true;
+      }
+
+      if (due && (snapshot = copy(weights, numIterations, trainingError)) != null)
+      {
+         pendingSnapshots.add(snapshot);
+         due = false;
+      }
+   } // public void afterEpoch(WeightMatrix[] weights, int numIterations, double trainingError)
+
+/**
+ * returns true once patience validations in a row have not improved on the best validation error
+ */
+   public boolean shouldStop()
+   {
+      return stop;
+   }
+
+/**
+ * lets the background thread finish the validations handed to it and stops it
+ */
+   public void close()
+   {
+      try
+      {
+         pendingSnapshots.put(new Snapshot());
+         validator.join();
+      }
+      catch (InterruptedException e)
+      {
+         e.printStackTrace();
+      }
+   } // public void close()
+
+/**
+ * called once training is over and close() has returned: validates the final weights on the calling thread and, if an
+ * earlier snapshot had a lower validation error, copies that snapshot's weights into the given weight matrices. Either
+ * way best is afterwards the snapshot of the weights the network ends up with, and lastError the validation error of the
+ * final weights
+ * @param weights final weight matrices
+ * @param numIterations number of epochs completed
+ * @param trainingError summed training error of the last epoch
+ * @return true if the weights were replaced, false if the final weights did at least as well as every snapshot
+ */
+   public boolean restoreBest(WeightMatrix[] weights, int numIterations, double trainingError)
+   {
+      Snapshot snapshot = copy(weights, numIterations, trainingError); // the background thread has returned its snapshots
+      double error = validate(snapshot);
+      int l;
+
+      lastError = error;
+      numValidations++;
+      if (best == null || error <= bestError) // nothing validated better, for instance when every error was NaN
+      {
+         if (best != null)
+         {
+            idleSnapshots.add(best);
+         }
+         best = snapshot;
+         bestError = error;
+         return false;
+      }
+
+      idleSnapshots.add(snapshot);
+      for (l = 0; l < weights.length; l++)
+      {
+         System.arraycopy(best.weights[l].data, 0, weights[l].data, 0, weights[l].data.length);
+      }
+      return true;
+   } // public boolean restoreBest(WeightMatrix[] weights, int numIterations, double trainingError)
+
+/**
+ * copies the weights into a free snapshot
+ * @param weights weight matrices to copy
+ * @param numIterations number of epochs completed
+ * @param trainingError summed training error of the last epoch
+ * @return the snapshot, or null if none is free
+ */
+   public Snapshot copy(WeightMatrix[] weights, int numIterations, double trainingError)
+   {
+      Snapshot snapshot = idleSnapshots.poll();
+      int l;
+
+      if (snapshot != null)
+      {
+         for (l = 0; l < weights.length; l++)
+         {
+            System.arraycopy(weights[l].data, 0, snapshot.weights[l].data, 0, weights[l].data.length);
+         }
+         snapshot.numIterations = numIterations;
+         snapshot.trainingError = trainingError;
+      }
+      return snapshot;
+   } // public Snapshot copy(WeightMatrix[] weights, int numIterations, double trainingError)
+
+/**
+ * body of the background thread, validates every snapshot it is handed and keeps the best one until it is handed the
+ * closing marker
+ */
+   public void validateSnapshots()
+   {
+      Snapshot snapshot;
+      double error;
+
+      try
+      {
+         while (true)
+         {
+            snapshot = pendingSnapshots.take();
+            if (snapshot.weights == null)
+            {
+               return;
+            }
+            error = validate(snapshot);
+            lastError = error;
+
+            if (error < bestError)
+            {
+               if (best != null)
+               {
+                  idleSnapshots.put(best);
+               }
+               best = snapshot;
+               bestError = error;
+               validationsWithoutImprovement = 0;
+            }
+            else
+            {
+               idleSnapshots.put(snapshot);
+               validationsWithoutImprovement++;
+               if (patience > 0 && validationsWithoutImprovement >= patience)
+               {
+                  stop = true;
+               }
+            }
+            numValidations++;
+         } // while (true)
+      } // try
+      catch (InterruptedException e)
+      {
+         e.printStackTrace();
+      }
+   } // public void validateSnapshots()
+
+/**
+ * runs every validation input set through a snapshot
+ * @return the error 0.5 * (t - f)^2 summed over every output of every validation input set
+ */
+   public double validate(Snapshot snapshot)
+   {
+      double error = 0.0;
+      int n;
+      int i;
+
+      snapshot.model.predictBatch(inputs, inputs.length, outputs);
+      for (n = 0; n < inputs.length; n++)
+      {
+         for (i = 0; i < outputs[n].length; i++)
+         {
+            error += 0.5 * (targets[n][i] - outputs[n][i]) * (targets[n][i] - outputs[n][i]);
+         }
+      }
+      return error;
+   } // public double validate(Snapshot snapshot)
+
+} // public class Validator
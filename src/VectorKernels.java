@@ -0,0 +1,190 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class contains SIMD versions of the per-pattern layer kernels of WeightMatrix, written with the incubating Java
+ * Vector API (jdk.incubator.vector). They use the widest double vectors the host supports (4 lanes on AVX2, 8 on AVX-512)
+ * and finish every row with a scalar loop over the lanes left over.
+ *
+ * backpropagateColumns performs exactly the same roundings as the scalar kernel, so its omega values and weight updates are
+ * bit-identical. multiplyRows keeps one partial sum per lane and adds the lanes together at the end of each row, so its
+ * theta values can differ from the scalar ones in the last bits.
+ *
+ * The Vector API module has to be added to both javac and java (--add-modules jdk.incubator.vector). Running this class
+ * directly compares the SIMD and scalar kernels on a random layer and reports the largest difference and the timings:
+ *
+ * java --add-modules jdk.incubator.vector VectorKernels numFrom numTo
+ *
+ * Merely loading this class fails when the module is missing, so callers check Network.isVectorApiAvailable() first.
+ *
+ * Methods contained in file:
+ *
+ * public static void multiplyRows(WeightMatrix w, double[] in, double[] out, int toStart, int toEnd)
+ * public static void backpropagateColumns(WeightMatrix w, double[] in, double[] psi, double[] omega, double lambda,
+ *       int fromStart, int fromEnd)
+ * public static void main(String[] args)
+ */
+public class VectorKernels
+{
+   static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+/**
+ * SIMD version of WeightMatrix.multiplyRows, computes the theta values of the nodes toStart to toEnd of the later layer
+ */
+   public static void multiplyRows(WeightMatrix w, double[] in, double[] out, int toStart, int toEnd)
+   {
+      double[] data = w.data;
+      int numFrom = w.numFrom;
+      int upper = SPECIES.loopBound(numFrom);
+      DoubleVector sum;
+      double theta;
+      int to;
+      int from;
+      int base;
+
+      for (to = toStart; to < toEnd; to++)
+      {
+         base = to * numFrom;
+         sum = DoubleVector.zero(SPECIES);
+         for (from = 0; from < upper; from += SPECIES.length())
+         {
+            sum = DoubleVector.fromArray(SPECIES, in, from).fma(DoubleVector.fromArray(SPECIES, data, base + from), sum);
+         }
+         theta = sum.reduceLanes(VectorOperators.ADD);
+         for (; from < numFrom; from++)
+         {
+            theta += in[from] * data[base + from];
+         }
+         out[to] = theta;
+      } // for (to = toStart; to < toEnd; to++)
+   } // public static void multiplyRows(WeightMatrix w, double[] in, double[] out, int toStart, int toEnd)
+
+/**
+ * SIMD version of WeightMatrix.backpropagateColumns, accumulates the omega values of the nodes fromStart to fromEnd of the
+ * earlier layer and applies the rank-1 weight update lambda * in[from] * psi[to] to their outgoing weights
+ */
+   public static void backpropagateColumns(WeightMatrix w, double[] in, double[] psi, double[] omega, double lambda,
+         int fromStart, int fromEnd)
+   {
+      double[] data = w.data;
+      int numFrom = w.numFrom;
+      int upper = fromStart + SPECIES.loopBound(fromEnd - fromStart);
+      DoubleVector weight;
+      double psiTo;
+      int to;
+      int from;
+      int base;
+
+      if (omega != null)
+      {
+         for (from = fromStart; from < fromEnd; from++)
+         {
+            omega[from] = 0.0;
+         }
+      }
+
+      for (to = 0; to < w.numTo; to++)
+      {
+         base = to * numFrom;
+         psiTo = psi[to];
+         for (from = fromStart; from < upper; from += SPECIES.length())
+         {
+            weight = DoubleVector.fromArray(SPECIES, data, base + from);
+            if (omega != null)
+            {
+               weight.mul(psiTo).add(DoubleVector.fromArray(SPECIES, omega, from)).intoArray(omega, from);
+            }
+            DoubleVector.fromArray(SPECIES, in, from).mul(lambda).mul(psiTo).add(weight).intoArray(data, base + from);
+         }
+         for (; from < fromEnd; from++)
+         {
+            if (omega != null)
+            {
+               omega[from] += psiTo * data[base + from];
+            }
+            data[base + from] += lambda * in[from] * psiTo;
+         }
+      } // for (to = 0; to < w.numTo; to++)
+   } // public static void backpropagateColumns(...)
+
+/**
+ * compares the SIMD and scalar kernels on a random layer of the given shape, printing the largest differences in theta,
+ * omega and the updated weights and the time taken by each kernel
+ * @param args numFrom and numTo of the layer, 10000 and 1000 if not given
+ */
+   public static void main(String[] args)
+   {
+      int numFrom = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+      int numTo = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+      int repeats = 10;
+      WeightMatrix scalar = new WeightMatrix(numFrom, numTo);
+      WeightMatrix simd = new WeightMatrix(numFrom, numTo);
+      double[] in = new double[numFrom];
+      double[] psi = new double[numTo];
+      double[] thetaScalar = new double[numTo];
+      double[] thetaSimd = new double[numTo];
+      double[] omegaScalar = new double[numFrom];
+      double[] omegaSimd = new double[numFrom];
+      long scalarForward = 0;
+      long simdForward = 0;
+      long scalarBackward = 0;
+      long simdBackward = 0;
+      long start;
+      int n;
+      int r;
+
+      for (n = 0; n < scalar.data.length; n++)
+      {
+         scalar.data[n] = Math.random() * 3.0 - 1.5;
+         simd.data[n] = scalar.data[n];
+      }
+      for (n = 0; n < numFrom; n++)
+      {
+         in[n] = Math.random();
+      }
+      for (n = 0; n < numTo; n++)
+      {
+         psi[n] = Math.random() * 0.02 - 0.01;
+      }
+
+      for (r = 0; r < repeats; r++) // the first repeats also warm up the JIT
+      {
+         start = System.nanoTime();
+         scalar.multiplyRows(in, thetaScalar, 0, numTo);
+         scalarForward = System.nanoTime() - start;
+         start = System.nanoTime();
+         multiplyRows(simd, in, thetaSimd, 0, numTo);
+         simdForward = System.nanoTime() - start;
+         start = System.nanoTime();
+         scalar.backpropagateColumns(in, psi, omegaScalar, 0.01, 0, numFrom);
+         scalarBackward = System.nanoTime() - start;
+         start = System.nanoTime();
+         backpropagateColumns(simd, in, psi, omegaSimd, 0.01, 0, numFrom);
+         simdBackward = System.nanoTime() - start;
+      } // for (r = 0; r < repeats; r++)
+
+      System.out.println("Layer " + numFrom + "x" + numTo + ", " + SPECIES.length() + " doubles per vector:");
+      System.out.println("\tMaximum theta difference: " + maxDifference(thetaScalar, thetaSimd));
+      System.out.println("\tMaximum omega difference: " + maxDifference(omegaScalar, omegaSimd));
+      System.out.println("\tMaximum weight difference: " + maxDifference(scalar.data, simd.data));
+      System.out.println("\tForward: scalar " + scalarForward / 1e6 + "ms, SIMD " + simdForward / 1e6 + "ms");
+      System.out.println("\tBackward: scalar " + scalarBackward / 1e6 + "ms, SIMD " + simdBackward / 1e6 + "ms");
+   } // public static void main(String[] args)
+
+/**
+ * returns the largest absolute difference between matching entries of two arrays
+ */
+   static double maxDifference(double[] x, double[] y)
+   {
+      double max = 0.0;
+      int i;
+
+      for (i = 0; i < x.length; i++)
+      {
+         max = Math.max(max, Math.abs(x[i] - y[i]));
+      }
+      return max;
+   }
+
+} // public class VectorKernels
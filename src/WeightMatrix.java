@@ -0,0 +1,163 @@
+/**
+ * This class stores the weights connecting one activation layer of the network to the next in a single flat array
+ * of doubles rather than a jagged double[][].
+ *
+ * The weight connecting node "from" of the earlier layer to node "to" of the later layer is stored at
+ * data[to * numFrom + from]. Every node of the later layer therefore owns one contiguous row holding all of its
+ * incoming weights. The forward pass (a dot product of that row with the previous layer's activations) and the
+ * backpropagation step (which visits the same row to accumulate omega and apply the weight deltas) both walk the
+ * array sequentially, so each cache line loaded from memory is fully used.
+ *
+ * Both operations can also be restricted to part of the matrix so that a wide layer can be split across threads: the
+ * forward pass by ranges of rows (nodes of the later layer), backpropagation by ranges of columns (nodes of the earlier
+ * layer). Each omega value is then still summed by a single thread in the same order as the serial loop, so a split
+ * layer produces exactly the same results as an unsplit one.
+ *
+ * Methods contained in file:
+ *
+ * public WeightMatrix(int numFrom, int numTo)
+ * public int index(int from, int to)
+ * public double get(int from, int to)
+ * public void set(int from, int to, double value)
+ * public void multiply(double[] in, double[] out)
+ * public void multiplyRows(double[] in, double[] out, int toStart, int toEnd)
+ * public void backpropagate(double[] in, double[] psi, double[] omega, double lambda)
+ * public void backpropagateColumns(double[] in, double[] psi, double[] omega, double lambda, int fromStart, int fromEnd)
+ */
+public class WeightMatrix
+{
+   final int numFrom;
+   final int numTo;
+   final double[] data;
+
+/**
+ * allocates a zeroed weight matrix connecting a layer of numFrom nodes to a layer of numTo nodes
+ */
+   public WeightMatrix(int numFrom, int numTo)
+   {
+      this.numFrom = numFrom;
+      this.numTo = numTo;
+      data = new double[numFrom * numTo];
+   }
+
+/**
+ * returns the position of weight (from, to) inside the flat data array
+ */
+   public int index(int from, int to)
+   {
+      return to * numFrom + from;
+   }
+
+/**
+ * returns the weight connecting node from of the earlier layer to node to of the later layer
+ */
+   public double get(int from, int to)
+   {
+      return data[to * numFrom + from];
+   }
+
+/**
+ * sets the weight connecting node from of the earlier layer to node to of the later layer
+ */
+   public void set(int from, int to, double value)
+   {
+      data[to * numFrom + from] = value;
+   }
+
+/**
+ * computes the weighted sums (theta values) of the later layer, out[to] = sum over from of in[from] * w(from, to)
+ * @param in activations of the earlier layer, length numFrom
+ * @param out receives the theta values of the later layer, length numTo
+ */
+   public void multiply(double[] in, double[] out)
+   {
+      multiplyRows(in, out, 0, numTo);
+   }
+
+/**
+ * computes the theta values of the nodes toStart (inclusive) to toEnd (exclusive) of the later layer
+ * @param in activations of the earlier layer, length numFrom
+ * @param out receives the theta values of the later layer, only indices toStart to toEnd are written
+ * @param toStart first node of the later layer to compute
+ * @param toEnd one past the last node of the later layer to compute
+ */
+   public void multiplyRows(double[] in, double[] out, int toStart, int toEnd)
+   {
+      int to;
+      int from;
+      int base;
+      double theta;
+
+      for (to = toStart; to < toEnd; to++)
+      {
+         base = to * numFrom;
+         theta = 0.0;
+         for (from = 0; from < numFrom; from++)
+         {
+            theta += in[from] * data[base + from];
+         }
+         out[to] = theta;
+      }
+   } // public void multiplyRows(double[] in, double[] out, int toStart, int toEnd)
+
+/**
+ * performs one backpropagation step through this matrix. Accumulates omega[from] = sum over to of psi[to] * w(from, to)
+ * using the weights as they were before this step, and changes each weight by lambda * in[from] * psi[to]
+ * @param in activations of the earlier layer from the last forward pass
+ * @param psi psi values of the later layer
+ * @param omega receives the omega values of the earlier layer, may be null when they are not needed (input layer)
+ * @param lambda learning rate
+ */
+   public void backpropagate(double[] in, double[] psi, double[] omega, double lambda)
+   {
+      backpropagateColumns(in, psi, omega, lambda, 0, numFrom);
+   }
+
+/**
+ * performs the backpropagation step of backpropagate restricted to the nodes fromStart (inclusive) to fromEnd (exclusive)
+ * of the earlier layer: only their omega values and their outgoing weights are touched
+ * @param in activations of the earlier layer from the last forward pass
+ * @param psi psi values of the later layer
+ * @param omega receives the omega values of the earlier layer, may be null when they are not needed (input layer)
+ * @param lambda learning rate
+ * @param fromStart first node of the earlier layer to process
+ * @param fromEnd one past the last node of the earlier layer to process
+ */
+   public void backpropagateColumns(double[] in, double[] psi, double[] omega, double lambda, int fromStart, int fromEnd)
+   {
+      int to;
+      int from;
+      int base;
+      double psiTo;
+
+      if (omega != null)
+      {
+         for (from = fromStart; from < fromEnd; from++)
+         {
+            omega[from] = 0.0;
+         }
+      }
+
+      for (to = 0; to < numTo; to++)
+      {
+         base = to * numFrom;
+         psiTo = psi[to];
+         if (omega != null)
+         {
+            for (from = fromStart; from < fromEnd; from++)
+            {
+               omega[from] += psiTo * data[base + from];
+               data[base + from] += lambda * in[from] * psiTo;
+            }
+         }
+         else
+         {
+            for (from = fromStart; from < fromEnd; from++)
+            {
+               data[base + from] += lambda * in[from] * psiTo;
+            }
+         }
+      } // for (to = 0; to < numTo; to++)
+   } // public void backpropagateColumns(double[] in, double[] psi, double[] omega, double lambda, int fromStart, int fromEnd)
+
+} // public class WeightMatrix